@@ -0,0 +1,113 @@
+package ma.emsi.elboudadi.benchmarks;
+
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.model.embedding.onnx.HuggingFaceTokenCountEstimator;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Données communes aux bancs d'essai.
+ *
+ * Tout ce qui est aléatoire part d'une graine fixe : deux exécutions sur la même
+ * machine mesurent exactement les mêmes données.
+ */
+public final class BenchmarkData {
+
+    public static final long SEED = 42L;
+
+    /** Dimension du modèle BGE small utilisé par l'application */
+    public static final int DIMENSION = 384;
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * @return Le répertoire des PDF ({@code docs/}, ou la propriété système {@code rag.docs})
+     */
+    public static Path docs() {
+        Path docs = Path.of(System.getProperty("rag.docs", "docs"));
+        if (!Files.isDirectory(docs)) {
+            throw new IllegalStateException("Répertoire des documents introuvable : " + docs.toAbsolutePath()
+                    + " (lancer depuis la racine du dépôt ou définir -Drag.docs=...)");
+        }
+        return docs;
+    }
+
+    /**
+     * Même découpage que le pipeline d'ingestion.
+     */
+    public static DocumentSplitter splitter() {
+        return DocumentSplitters.recursive(300, 30, new HuggingFaceTokenCountEstimator());
+    }
+
+    /**
+     * @return {@code count} vecteurs unitaires pseudo-aléatoires, reproductibles pour une graine donnée
+     */
+    public static List<Embedding> randomEmbeddings(int count, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Embedding> embeddings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            float[] vector = new float[DIMENSION];
+            double norm = 0;
+            for (int j = 0; j < DIMENSION; j++) {
+                vector[j] = (float) (random.nextDouble() * 2 - 1);
+                norm += vector[j] * vector[j];
+            }
+            float inverse = (float) (1 / Math.sqrt(norm));
+            for (int j = 0; j < DIMENSION; j++) {
+                vector[j] *= inverse;
+            }
+            embeddings.add(Embedding.from(vector));
+        }
+        return embeddings;
+    }
+
+    /**
+     * Vecteurs regroupés autour de {@code clusters} centres : plus proche de la structure
+     * d'un corpus réel (thèmes) que des vecteurs uniformes, sur lesquels aucun index
+     * approché ne peut exploiter de voisinage.
+     *
+     * @param spread Écart-type du bruit autour du centre, par composante (centres de variance 1)
+     */
+    public static List<Embedding> clusteredEmbeddings(int count, int clusters, double spread, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        float[][] centers = new float[clusters][DIMENSION];
+        for (float[] center : centers) {
+            for (int j = 0; j < DIMENSION; j++) {
+                center[j] = (float) random.nextGaussian();
+            }
+        }
+        List<Embedding> embeddings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            float[] center = centers[random.nextInt(clusters)];
+            float[] vector = new float[DIMENSION];
+            for (int j = 0; j < DIMENSION; j++) {
+                vector[j] = center[j] + (float) (random.nextGaussian() * spread);
+            }
+            embeddings.add(Embedding.from(vector));
+        }
+        return embeddings;
+    }
+
+    /**
+     * @return Des requêtes proches de points du jeu de données, mais distinctes d'eux
+     */
+    public static List<Embedding> perturbedQueries(List<Embedding> data, int count, double spread, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Embedding> queries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            float[] vector = data.get(random.nextInt(data.size())).vector().clone();
+            for (int j = 0; j < vector.length; j++) {
+                vector[j] += (float) (random.nextGaussian() * spread);
+            }
+            queries.add(Embedding.from(vector));
+        }
+        return queries;
+    }
+}
@@ -0,0 +1,68 @@
+package ma.emsi.elboudadi.benchmarks;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import ma.emsi.elboudadi.model.CachingEmbeddingModel;
+import ma.emsi.elboudadi.model.EmbeddingModels;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Débit d'embedding de questions isolées envoyées par plusieurs sessions à la fois.
+ *
+ * Chaque opération demande l'embedding d'une question jamais vue (le cache ne sert
+ * pas) : seul le regroupement des appels concurrents est mesuré. {@code windowMillis = 0}
+ * appelle le modèle une fois par question ; au-delà, les questions arrivées pendant
+ * la fenêtre partagent un appel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Threads(16)
+public class EmbeddingBatchingBenchmark {
+
+    @Param({"0", "2", "5"})
+    public int windowMillis;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private CachingEmbeddingModel model;
+
+    @Setup
+    public void setUp() {
+        EmbeddingModel onnx = EmbeddingModels.uncached();
+        model = CachingEmbeddingModel.builder()
+                .delegate(onnx)
+                .batchWindow(Duration.ofMillis(windowMillis))
+                .maxEntries(1_000)
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        model.close();
+    }
+
+    @Benchmark
+    public Embedding embedQuestion() {
+        long n = sequence.incrementAndGet();
+        return model.embed("Question " + n + " : comment le retriever choisit-il les segments du document ?").content();
+    }
+}
@@ -0,0 +1,76 @@
+package ma.emsi.elboudadi.benchmarks;
+
+import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import ma.emsi.elboudadi.model.EmbeddingModels;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Débit du modèle d'embedding local selon la taille des lots.
+ *
+ * Le compteur auxiliaire {@code segments} donne le débit en segments par seconde,
+ * comparable d'une taille de lot à l'autre (le score principal compte des lots).
+ * Les segments sont ceux de {@code docs/RAG.pdf}, découpés comme à l'ingestion.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class EmbeddingBenchmark {
+
+    @Param({"1", "8", "32", "64"})
+    public int batchSize;
+
+    private EmbeddingModel model;
+    private List<TextSegment> batch;
+
+    @Setup
+    public void setUp() {
+        model = EmbeddingModels.uncached();
+        List<TextSegment> segments = BenchmarkData.splitter()
+                .split(FileSystemDocumentLoader.loadDocument(BenchmarkData.docs().resolve("RAG.pdf")));
+        batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            batch.add(segments.get(i % segments.size()));
+        }
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long segments;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            segments = 0;
+        }
+    }
+
+    @Benchmark
+    public Response<List<Embedding>> embedAll(Counters counters) {
+        Response<List<Embedding>> response = model.embedAll(batch);
+        counters.segments += batch.size();
+        return response;
+    }
+}
@@ -0,0 +1,288 @@
+package ma.emsi.elboudadi.benchmarks;
+
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.service.AiServices;
+import dev.langchain4j.service.Result;
+import ma.emsi.elboudadi.engine.RagConfig;
+import ma.emsi.elboudadi.engine.RagEngine;
+import ma.emsi.elboudadi.metrics.LatencyHistogram;
+import ma.emsi.elboudadi.metrics.RagMetrics;
+import ma.emsi.elboudadi.model.FakeChatModel;
+import ma.emsi.elboudadi.web.StubWebSearchEngine;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rapport qualité / latence des pipelines de {@link RagEngine}, hors ligne.
+ *
+ * Rejoue un jeu de questions (source attendue et mots-clés attendus, voir
+ * {@code eval/questions.tsv}) à plusieurs niveaux de concurrence, pour chaque variante
+ * de configuration. Le LLM est un {@link FakeChatModel} (latence fixe), le Web un
+ * {@link StubWebSearchEngine} ; l'ingestion, les index, le routage et le retrieval sont
+ * ceux de l'application. Par variante et par concurrence :
+ * - rappel@k : part des mots-clés attendus présents dans les k premiers segments ;
+ * - routage : part des questions envoyées vers la source attendue (aucune source pour "none") ;
+ * - latences p50 / p95 / p99, débit, appels au LLM par question et erreurs.
+ * Le LLM simulé ne répond jamais "non" : les questions que le classifieur local juge
+ * ambiguës gardent le RAG, ce qui minore la précision du routage LLM par rapport à Gemini.
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar ma.emsi.elboudadi.benchmarks.EvaluationReport \
+ *      [--questions=fichier.tsv] [--concurrency=1,8,32] [--rounds=3] [--k=5] [--llmLatencyMillis=200] \
+ *      [--webLatencyMillis=300] [--variant=nom:clé=valeur;clé=valeur ...]
+ * </pre>
+ * Chaque {@code --variant} remplace la liste par défaut ; ses clés sont celles de {@link RagConfig}.
+ */
+public class EvaluationReport {
+
+    private static final String DEFAULT_QUESTIONS = "eval/questions.tsv";
+    private static final String NO_SOURCE = "none";
+
+    private static final List<Variant> DEFAULT_VARIANTS = List.of(
+            Variant.parse("naive:mode=naive"),
+            Variant.parse("llm-routed:mode=llm-routed"),
+            Variant.parse("llm-routed-top5:mode=llm-routed;retrieval.maxResults=5"),
+            Variant.parse("llm-routed-rerank:mode=llm-routed;retrieval.maxResults=8;rerank=true;rerank.maxResults=3"),
+            Variant.parse("embedding-routed:mode=embedding-routed"),
+            Variant.parse("embedding-marge5:mode=embedding-routed;routing.margin=0.05"),
+            Variant.parse("web:mode=web"));
+
+    interface Assistant {
+        Result<String> chat(String question);
+    }
+
+    /**
+     * @param source   Source attendue, ou {@code none}
+     * @param keywords Éléments attendus dans les segments retrouvés, chacun avec ses variantes
+     */
+    record Question(String source, List<List<String>> keywords, String text) {
+    }
+
+    /**
+     * @param overrides Arguments {@code --clé=valeur} passés à {@link RagConfig#load}
+     */
+    record Variant(String name, String[] overrides) {
+
+        /**
+         * @param spec {@code nom:clé=valeur;clé=valeur}
+         */
+        static Variant parse(String spec) {
+            int colon = spec.indexOf(':');
+            if (colon < 0) {
+                return new Variant(spec, new String[0]);
+            }
+            String[] overrides = Arrays.stream(spec.substring(colon + 1).split(";"))
+                    .filter(entry -> !entry.isBlank())
+                    .map(entry -> "--" + entry.trim())
+                    .toArray(String[]::new);
+            return new Variant(spec.substring(0, colon), overrides);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String questionsFile = null;
+        int[] concurrencies = {1, 8, 32};
+        int rounds = 3;
+        int k = 5;
+        Duration llmLatency = Duration.ofMillis(200);
+        Duration webLatency = Duration.ofMillis(300);
+        List<Variant> variants = new ArrayList<>();
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--questions=")) {
+                questionsFile = value;
+            } else if (arg.startsWith("--concurrency=")) {
+                concurrencies = Arrays.stream(value.split(",")).mapToInt(c -> Integer.parseInt(c.trim())).toArray();
+            } else if (arg.startsWith("--rounds=")) {
+                rounds = Integer.parseInt(value);
+            } else if (arg.startsWith("--k=")) {
+                k = Integer.parseInt(value);
+            } else if (arg.startsWith("--llmLatencyMillis=")) {
+                llmLatency = Duration.ofMillis(Long.parseLong(value));
+            } else if (arg.startsWith("--webLatencyMillis=")) {
+                webLatency = Duration.ofMillis(Long.parseLong(value));
+            } else if (arg.startsWith("--variant=")) {
+                variants.add(Variant.parse(value));
+            } else {
+                throw new IllegalArgumentException("Argument inattendu : " + arg);
+            }
+        }
+        if (variants.isEmpty()) {
+            variants = DEFAULT_VARIANTS;
+        }
+        List<Question> questions = questions(questionsFile);
+        System.out.printf("%d questions, %d tours mesurés, LLM simulé à %d ms, Web simulé à %d ms%n%n",
+                questions.size(), rounds, llmLatency.toMillis(), webLatency.toMillis());
+
+        System.out.printf("%-18s %5s %9s %8s %8s %8s %8s %8s %7s %7s%n", "variante", "conc.", "rappel@" + k,
+                "routage", "p50 ms", "p95 ms", "p99 ms", "q/s", "LLM/q", "erreurs");
+        for (Variant variant : variants) {
+            evaluate(variant, questions, concurrencies, rounds, k, llmLatency, webLatency);
+        }
+    }
+
+    private static void evaluate(Variant variant, List<Question> questions, int[] concurrencies, int rounds,
+                                 int k, Duration llmLatency, Duration webLatency) throws Exception {
+        FakeChatModel fake = FakeChatModel.builder().latency(llmLatency).build();
+        // Dernières sources choisies pour chaque question (liste vide : pas de RAG)
+        Map<String, List<String>> routes = new ConcurrentHashMap<>();
+        RagConfig config = RagConfig.load(variant.overrides(), RagConfig.builder().maxConcurrentCalls(256));
+        long start = System.nanoTime();
+        try (RagEngine engine = RagEngine.builder()
+                .config(config)
+                .chatModel(fake)
+                .webSearchEngine(new StubWebSearchEngine(webLatency))
+                .webCachePersistence(null)
+                .routingListener(routes::put)
+                .metrics(new RagMetrics())
+                .build()) {
+            Assistant assistant = AiServices.builder(Assistant.class)
+                    .chatModel(engine.chatModel())
+                    .retrievalAugmentor(engine.retrievalAugmentor())
+                    .build();
+
+            // Premier tour non mesuré : chargement des index et compilation JIT
+            assistant.chat(questions.get(0).text());
+            double readyMillis = (System.nanoTime() - start) / 1e6;
+            replay(assistant, questions, 1, Math.max(1, concurrencies[0]), k, routes);
+
+            for (int concurrency : concurrencies) {
+                long callsBefore = fake.calls();
+                long t = System.nanoTime();
+                Outcome outcome = replay(assistant, questions, rounds, concurrency, k, routes);
+                double seconds = (System.nanoTime() - t) / 1e9;
+                long answered = (long) questions.size() * rounds;
+                LatencyHistogram.Snapshot latency = outcome.latency().snapshot();
+                System.out.printf(Locale.ROOT, "%-18s %5d %9.3f %8.3f %8.1f %8.1f %8.1f %8.1f %7.2f %7d%n",
+                        variant.name(), concurrency, outcome.recall().sum() / answered,
+                        (double) outcome.routed().sum() / answered, latency.p50(),
+                        outcome.latency().percentileMicros(0.95) / 1000.0, latency.p99(),
+                        answered / seconds, (double) (fake.calls() - callsBefore) / answered,
+                        outcome.errors().sum());
+            }
+            System.out.printf("%-18s (%s ; première réponse après %.0f ms)%n", "", engine.config(), readyMillis);
+        }
+    }
+
+    private record Outcome(LatencyHistogram latency, DoubleAdder recall, LongAdder routed, LongAdder errors) {
+    }
+
+    private static Outcome replay(Assistant assistant, List<Question> questions, int rounds, int concurrency,
+                                  int k, Map<String, List<String>> routes) throws Exception {
+        Outcome outcome = new Outcome(new LatencyHistogram(), new DoubleAdder(), new LongAdder(), new LongAdder());
+        try (ExecutorService executor = Executors.newFixedThreadPool(concurrency)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int round = 0; round < rounds; round++) {
+                for (Question question : questions) {
+                    futures.add(executor.submit(() -> {
+                        long t = System.nanoTime();
+                        try {
+                            Result<String> result = assistant.chat(question.text());
+                            outcome.latency().recordNanos(System.nanoTime() - t);
+                            outcome.recall().add(recall(question, result.sources(), k));
+                            if (routedCorrectly(question, routes.get(question.text()))) {
+                                outcome.routed().increment();
+                            }
+                        } catch (RuntimeException e) {
+                            outcome.latency().recordNanos(System.nanoTime() - t);
+                            outcome.errors().increment();
+                        }
+                    }));
+                }
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        return outcome;
+    }
+
+    /**
+     * @return La part des mots-clés attendus retrouvés dans les k premiers segments
+     * (1 pour une question sans source attendue et sans segment, 0 si des segments ont été ajoutés)
+     */
+    static double recall(Question question, List<Content> sources, int k) {
+        List<Content> top = sources == null ? List.of() : sources.subList(0, Math.min(k, sources.size()));
+        if (question.keywords().isEmpty()) {
+            return top.isEmpty() ? 1 : 0;
+        }
+        int found = 0;
+        for (List<String> alternatives : question.keywords()) {
+            boolean present = top.stream()
+                    .map(content -> content.textSegment().text().toLowerCase(Locale.ROOT))
+                    .anyMatch(text -> alternatives.stream().anyMatch(text::contains));
+            if (present) {
+                found++;
+            }
+        }
+        return (double) found / question.keywords().size();
+    }
+
+    static boolean routedCorrectly(Question question, List<String> routed) {
+        if (routed == null || routed.isEmpty()) {
+            return NO_SOURCE.equals(question.source());
+        }
+        return routed.contains(question.source());
+    }
+
+    /**
+     * Lit le jeu de questions : {@code source<TAB>mots-clés<TAB>question}, lignes {@code #} ignorées.
+     */
+    static List<Question> questions(String file) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(open(file), StandardCharsets.UTF_8))) {
+            List<Question> questions = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] columns = line.split("\t", 3);
+                if (columns.length < 3) {
+                    throw new IllegalArgumentException("Ligne attendue : source<TAB>mots-clés<TAB>question, reçu : " + line);
+                }
+                List<List<String>> keywords = Arrays.stream(columns[1].split(","))
+                        .filter(item -> !item.isBlank())
+                        .map(item -> Arrays.stream(item.split("\\|"))
+                                .map(alternative -> alternative.trim().toLowerCase(Locale.ROOT))
+                                .toList())
+                        .toList();
+                questions.add(new Question(columns[0].trim(), keywords, columns[2].trim()));
+            }
+            if (questions.isEmpty()) {
+                throw new IllegalArgumentException("Aucune question dans " + (file != null ? file : DEFAULT_QUESTIONS));
+            }
+            return questions;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Impossible de lire les questions", e);
+        }
+    }
+
+    private static InputStream open(String file) throws IOException {
+        if (file != null) {
+            return Files.newInputStream(Path.of(file));
+        }
+        InputStream resource = EvaluationReport.class.getClassLoader().getResourceAsStream(DEFAULT_QUESTIONS);
+        if (resource == null) {
+            throw new IllegalStateException("Ressource introuvable : " + DEFAULT_QUESTIONS);
+        }
+        return resource;
+    }
+}
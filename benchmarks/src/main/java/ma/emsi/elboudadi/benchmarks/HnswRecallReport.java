@@ -0,0 +1,77 @@
+package ma.emsi.elboudadi.benchmarks;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import ma.emsi.elboudadi.metrics.LatencyHistogram;
+import ma.emsi.elboudadi.store.HnswEmbeddingStore;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Rapport rappel / latence de {@link HnswEmbeddingStore} face au parcours exact.
+ *
+ * Pour chaque valeur de {@code efSearch}, mesure sur les mêmes requêtes le rappel@k
+ * (part des k vrais plus proches voisins retrouvés) et la distribution des latences.
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar ma.emsi.elboudadi.benchmarks.HnswRecallReport [taille] [requêtes] [k]
+ * </pre>
+ */
+public class HnswRecallReport {
+
+    private static final int[] EF_VALUES = {10, 16, 32, 64, 128, 256};
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int queryCount = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+        int k = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        List<Embedding> data = BenchmarkData.clusteredEmbeddings(size, Math.max(1, size / 500), 0.5, BenchmarkData.SEED);
+        List<Embedding> queries = BenchmarkData.perturbedQueries(data, queryCount, 0.3, BenchmarkData.SEED + 1);
+
+        long start = System.nanoTime();
+        HnswEmbeddingStore store = HnswEmbeddingStore.builder().build();
+        store.addAll(data);
+        System.out.printf("Index HNSW : %d vecteurs en %.1f s%n", size, (System.nanoTime() - start) / 1e9);
+
+        // Vérité terrain et latence du parcours exact
+        LatencyHistogram exactLatency = new LatencyHistogram();
+        List<Set<String>> truth = queries.stream().map(query -> {
+            long t = System.nanoTime();
+            Set<String> ids = ids(store.exactSearch(request(query, k)).matches());
+            exactLatency.recordNanos(System.nanoTime() - t);
+            return ids;
+        }).toList();
+        System.out.printf("%-8s %10s   %s%n", "ef", "rappel@" + k, "latence");
+        System.out.printf("%-8s %10.4f   %s%n", "exact", 1.0, exactLatency.snapshot());
+
+        for (int ef : EF_VALUES) {
+            store.efSearch(ef);
+            // Premier passage non mesuré : compilation JIT du chemin de recherche
+            queries.forEach(query -> store.search(request(query, k)));
+            LatencyHistogram latency = new LatencyHistogram();
+            long found = 0;
+            for (int i = 0; i < queries.size(); i++) {
+                long t = System.nanoTime();
+                List<EmbeddingMatch<TextSegment>> matches = store.search(request(queries.get(i), k)).matches();
+                latency.recordNanos(System.nanoTime() - t);
+                Set<String> expected = truth.get(i);
+                found += matches.stream().filter(match -> expected.contains(match.embeddingId())).count();
+            }
+            System.out.printf("%-8d %10.4f   %s%n", ef, (double) found / ((long) k * queries.size()), latency.snapshot());
+        }
+    }
+
+    private static EmbeddingSearchRequest request(Embedding query, int k) {
+        return EmbeddingSearchRequest.builder().queryEmbedding(query).maxResults(k).build();
+    }
+
+    private static Set<String> ids(List<EmbeddingMatch<TextSegment>> matches) {
+        Set<String> ids = new HashSet<>();
+        matches.forEach(match -> ids.add(match.embeddingId()));
+        return ids;
+    }
+}
@@ -0,0 +1,66 @@
+package ma.emsi.elboudadi.benchmarks;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import ma.emsi.elboudadi.store.HnswEmbeddingStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latence d'une recherche top-3 dans {@link HnswEmbeddingStore}, à comparer avec
+ * {@link StoreSearchBenchmark} (parcours exact). Le rappel correspondant à chaque
+ * {@code efSearch} est donné par {@link HnswRecallReport}.
+ *
+ * La construction de l'index fait partie de la préparation : compter plusieurs
+ * minutes pour un million de vecteurs ({@code -p size=1000000}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class HnswSearchBenchmark {
+
+    private static final int QUERIES = 1024;
+
+    @Param({"10000", "100000"})
+    public int size;
+
+    @Param({"16", "64", "256"})
+    public int efSearch;
+
+    private HnswEmbeddingStore store;
+    private List<Embedding> queries;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        List<Embedding> data = BenchmarkData.clusteredEmbeddings(size, Math.max(1, size / 500), 0.5, BenchmarkData.SEED);
+        store = HnswEmbeddingStore.builder().efSearch(efSearch).build();
+        store.addAll(data);
+        queries = BenchmarkData.perturbedQueries(data, QUERIES, 0.3, BenchmarkData.SEED + 1);
+    }
+
+    @Benchmark
+    public EmbeddingSearchResult<TextSegment> search() {
+        return store.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(queries.get(next++ & (QUERIES - 1)))
+                .maxResults(3)
+                .build());
+    }
+}
@@ -0,0 +1,76 @@
+package ma.emsi.elboudadi.benchmarks;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
+import dev.langchain4j.data.segment.TextSegment;
+import ma.emsi.elboudadi.ingestion.PdfSplitter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chargement et découpage des PDF de {@code docs/}.
+ *
+ * {@code load} mesure l'analyse du PDF seule, {@code split} le découpage en segments
+ * d'un document déjà chargé, {@code loadAndSplit} l'étape complète de l'ancien pipeline
+ * et {@code pageSplit} celle du pipeline actuel : extraction parallèle des pages et
+ * découpage au fil de la lecture ({@link PdfSplitter}), sans document complet en mémoire.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class IngestionBenchmark {
+
+    @Param({"RAG.pdf", "LangChain4j.pdf"})
+    public String document;
+
+    private Path path;
+    private DocumentSplitter splitter;
+    private Document loaded;
+    private PdfSplitter pdfSplitter;
+
+    @Setup
+    public void setUp() {
+        path = BenchmarkData.docs().resolve(document);
+        splitter = BenchmarkData.splitter();
+        loaded = FileSystemDocumentLoader.loadDocument(path);
+        pdfSplitter = PdfSplitter.builder().build();
+    }
+
+    @Benchmark
+    public Document load() {
+        return FileSystemDocumentLoader.loadDocument(path);
+    }
+
+    @Benchmark
+    public List<TextSegment> split() {
+        return splitter.split(loaded);
+    }
+
+    @Benchmark
+    public List<TextSegment> loadAndSplit() {
+        return splitter.split(FileSystemDocumentLoader.loadDocument(path));
+    }
+
+    @Benchmark
+    public int pageSplit(Blackhole blackhole) {
+        return pdfSplitter.split(path, blackhole::consume);
+    }
+}
@@ -0,0 +1,100 @@
+package ma.emsi.elboudadi.benchmarks;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import ma.emsi.elboudadi.metrics.LatencyHistogram;
+import ma.emsi.elboudadi.store.MappedEmbeddingStore;
+import ma.emsi.elboudadi.store.QuantizedEmbeddingStore;
+import ma.emsi.elboudadi.store.QuantizedEmbeddingStore.Quantization;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Rapport mémoire / rappel / latence de {@link QuantizedEmbeddingStore} face à la
+ * recherche exacte de {@link MappedEmbeddingStore}, pour chaque quantification et
+ * plusieurs facteurs de rescoring.
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar ma.emsi.elboudadi.benchmarks.QuantizationReport [taille] [requêtes] [k]
+ * </pre>
+ */
+public class QuantizationReport {
+
+    private static final int[] RESCORE_FACTORS = {1, 3, 10, 30};
+
+    public static void main(String[] args) throws IOException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int queryCount = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int k = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        List<Embedding> data = BenchmarkData.clusteredEmbeddings(size, Math.max(1, size / 500), 0.5, BenchmarkData.SEED);
+        List<Embedding> queries = BenchmarkData.perturbedQueries(data, queryCount, 0.3, BenchmarkData.SEED + 1);
+
+        Path directory = Files.createTempDirectory("rag-quantization");
+        MappedEmbeddingStore building = new MappedEmbeddingStore();
+        building.addAll(data);
+        building.save(directory);
+        MappedEmbeddingStore exact = MappedEmbeddingStore.open(directory);
+
+        LatencyHistogram exactLatency = new LatencyHistogram();
+        List<Set<String>> truth = queries.stream().map(query -> {
+            long t = System.nanoTime();
+            Set<String> ids = ids(exact.search(request(query, k)).matches());
+            exactLatency.recordNanos(System.nanoTime() - t);
+            return ids;
+        }).toList();
+
+        long floatBytes = (long) size * BenchmarkData.DIMENSION * Float.BYTES;
+        System.out.printf("%-8s %8s %12s %10s   %s%n", "codes", "rescore", "mémoire", "rappel@" + k, "latence");
+        System.out.printf("%-8s %8s %9d Ko %10.4f   %s%n", "float32", "-", floatBytes / 1024, 1.0, exactLatency.snapshot());
+
+        for (Quantization quantization : Quantization.values()) {
+            for (int factor : RESCORE_FACTORS) {
+                QuantizedEmbeddingStore store = QuantizedEmbeddingStore.builder()
+                        .source(exact)
+                        .quantization(quantization)
+                        .rescoreFactor(factor)
+                        .build();
+                queries.forEach(query -> store.search(request(query, k))); // chauffe du JIT
+                LatencyHistogram latency = new LatencyHistogram();
+                double recall = recall(store, queries, truth, k, latency);
+                System.out.printf("%-8s %8d %9d Ko %10.4f   %s (%.0fx moins)%n", quantization, factor,
+                        store.offHeapBytes() / 1024, recall, latency.snapshot(), store.compressionRatio());
+            }
+        }
+        try (var files = Files.list(directory)) {
+            files.forEach(file -> file.toFile().delete());
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    private static double recall(EmbeddingStore<TextSegment> store, List<Embedding> queries,
+                                 List<Set<String>> truth, int k, LatencyHistogram latency) {
+        long found = 0;
+        for (int i = 0; i < queries.size(); i++) {
+            long t = System.nanoTime();
+            List<EmbeddingMatch<TextSegment>> matches = store.search(request(queries.get(i), k)).matches();
+            latency.recordNanos(System.nanoTime() - t);
+            Set<String> expected = truth.get(i);
+            found += matches.stream().filter(match -> expected.contains(match.embeddingId())).count();
+        }
+        return (double) found / ((long) k * queries.size());
+    }
+
+    private static EmbeddingSearchRequest request(Embedding query, int k) {
+        return EmbeddingSearchRequest.builder().queryEmbedding(query).maxResults(k).build();
+    }
+
+    private static Set<String> ids(List<EmbeddingMatch<TextSegment>> matches) {
+        Set<String> ids = new HashSet<>();
+        matches.forEach(match -> ids.add(match.embeddingId()));
+        return ids;
+    }
+}
@@ -0,0 +1,125 @@
+package ma.emsi.elboudadi.benchmarks;
+
+import dev.langchain4j.model.chat.ChatModel;
+import ma.emsi.elboudadi.metrics.LatencyHistogram;
+import ma.emsi.elboudadi.metrics.RagMetrics;
+import ma.emsi.elboudadi.model.FakeChatModel;
+import ma.emsi.elboudadi.model.ResilientChatModel;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rapport latence / erreurs de {@link ResilientChatModel} face à un {@link FakeChatModel}
+ * dont 5 % des appels sont lents et 5 % échouent de façon passagère.
+ *
+ * Compare l'appel direct, les nouvelles tentatives seules, puis avec couverture ;
+ * vérifie ensuite le plafond d'appels simultanés et le débit du seau à jetons, et
+ * enfin le comportement du disjoncteur pendant une panne puis au rétablissement.
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar ma.emsi.elboudadi.benchmarks.ResilienceReport [requêtes] [sessions]
+ * </pre>
+ */
+public class ResilienceReport {
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        int sessions = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+
+        System.out.printf("%-22s %8s %8s   %s%n", "configuration", "erreurs", "appels", "latence");
+        run("direct", requests, sessions, fake -> fake);
+        run("tentatives", requests, sessions, fake -> resilient(fake, false).build());
+        run("tentatives+couverture", requests, sessions, fake -> resilient(fake, true).build());
+
+        // Plafond d'appels simultanés et débit lissé
+        FakeChatModel fake = FakeChatModel.builder().latency(Duration.ofMillis(20)).build();
+        ResilientChatModel limited = ResilientChatModel.builder()
+                .delegate(fake)
+                .maxConcurrentCalls(4)
+                .rateLimit(100, 5)
+                .acquireTimeout(Duration.ofSeconds(30))
+                .metrics(new RagMetrics())
+                .build();
+        long start = System.nanoTime();
+        load(limited, 300, sessions, new LatencyHistogram(), new LongAdder());
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%nLimitation : 300 appels en %.2f s (%.0f/s pour 100/s autorisés), au plus %d simultanés (4 autorisés)%n",
+                seconds, 300 / seconds, fake.maxInFlight());
+        limited.close();
+
+        // Panne franche : le disjoncteur épargne le fournisseur, puis laisse passer un essai
+        RagMetrics metrics = new RagMetrics();
+        FakeChatModel down = FakeChatModel.builder().latency(Duration.ofMillis(5)).build();
+        ResilientChatModel breaker = ResilientChatModel.builder()
+                .delegate(down)
+                .retries(1, Duration.ofMillis(5), Duration.ofMillis(20))
+                .circuitBreaker(5, Duration.ofMillis(500))
+                .metrics(metrics)
+                .build();
+        down.failing(true);
+        LongAdder errors = new LongAdder();
+        load(breaker, 200, sessions, new LatencyHistogram(), errors);
+        System.out.printf("Panne : %d appels en échec, %d reçus par le modèle, %d rejetés par le disjoncteur%n",
+                errors.sum(), down.calls(), metrics.count(ResilientChatModel.CIRCUIT_REJECTED));
+        down.failing(false);
+        Thread.sleep(600);
+        breaker.chat("Le modèle est-il revenu ?");
+        System.out.printf("Rétablissement : disjoncteur %s après un appel d'essai%n", breaker.circuitOpen() ? "ouvert" : "fermé");
+        breaker.close();
+    }
+
+    private static ResilientChatModel.Builder resilient(ChatModel fake, boolean hedging) {
+        return ResilientChatModel.builder()
+                .delegate(fake)
+                .maxConcurrentCalls(64)
+                .timeout(Duration.ofSeconds(5))
+                .retries(2, Duration.ofMillis(20), Duration.ofMillis(200))
+                .circuitBreaker(50, Duration.ofSeconds(1))
+                .hedging(hedging)
+                .metrics(new RagMetrics());
+    }
+
+    private static void run(String name, int requests, int sessions,
+                            java.util.function.Function<FakeChatModel, ChatModel> wrap) throws Exception {
+        FakeChatModel fake = FakeChatModel.builder()
+                .latency(Duration.ofMillis(40))
+                .slowCalls(0.05, Duration.ofMillis(800))
+                .failures(0.05, 0.5)
+                .build();
+        ChatModel model = wrap.apply(fake);
+        LatencyHistogram latency = new LatencyHistogram();
+        LongAdder errors = new LongAdder();
+        load(model, requests, sessions, latency, errors);
+        System.out.printf("%-22s %8d %8d   %s%n", name, errors.sum(), fake.calls(), latency.snapshot());
+        if (model instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    private static void load(ChatModel model, int requests, int sessions,
+                             LatencyHistogram latency, LongAdder errors) throws Exception {
+        try (ExecutorService executor = Executors.newFixedThreadPool(sessions)) {
+            List<Future<?>> futures = new ArrayList<>(requests);
+            for (int i = 0; i < requests; i++) {
+                int n = i;
+                futures.add(executor.submit(() -> {
+                    long t = System.nanoTime();
+                    try {
+                        model.chat("Question " + n + " : qu'est-ce que le RAG ?");
+                    } catch (RuntimeException e) {
+                        errors.increment();
+                    }
+                    latency.recordNanos(System.nanoTime() - t);
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+    }
+}
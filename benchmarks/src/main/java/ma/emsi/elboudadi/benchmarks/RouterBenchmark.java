@@ -0,0 +1,93 @@
+package ma.emsi.elboudadi.benchmarks;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import ma.emsi.elboudadi.model.EmbeddingModels;
+import ma.emsi.elboudadi.routing.NoRagQueryRouter;
+import ma.emsi.elboudadi.routing.PrototypeClassifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Surcoût de {@code NoRagQueryRouter.route}, hors temps de réponse du LLM.
+ *
+ * Le modèle de langage est remplacé par un modèle factice qui répond immédiatement :
+ * {@code llm} mesure donc la construction du prompt et l'analyse de la réponse,
+ * {@code local} la décision par le classifieur d'embeddings (calcul de l'embedding
+ * de la question compris : modèle sans cache, les quatre questions reviendraient
+ * sinon du cache dès le préchauffage).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class RouterBenchmark {
+
+    private static final List<String> QUESTIONS = List.of(
+            "Qu'est-ce que le RAG ?",
+            "Comment fonctionne un embedding dans LangChain4j ?",
+            "Quelle est la capitale du Maroc ?",
+            "Bonjour, comment vas-tu ?");
+
+    @Param({"llm", "local"})
+    public String decision;
+
+    private NoRagQueryRouter router;
+    private List<Query> queries;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        // Le routeur journalise chaque décision : sans cela, on mesurerait surtout la console
+        Logger.getLogger(NoRagQueryRouter.class.getName()).setLevel(Level.WARNING);
+
+        PrototypeClassifier classifier = "local".equals(decision)
+                ? PrototypeClassifier.intelligenceArtificielle(EmbeddingModels.uncached())
+                : null;
+        ContentRetriever retriever = query -> List.of();
+        router = new NoRagQueryRouter(new StubChatModel("oui"), classifier, List.of(retriever, retriever));
+        queries = QUESTIONS.stream().map(Query::from).toList();
+    }
+
+    @Benchmark
+    public Collection<ContentRetriever> route() {
+        return router.route(queries.get(Math.floorMod(next++, queries.size())));
+    }
+
+    /**
+     * Modèle de langage factice : renvoie toujours la même réponse, sans réseau.
+     */
+    static final class StubChatModel implements ChatModel {
+        private final ChatResponse response;
+
+        StubChatModel(String answer) {
+            this.response = ChatResponse.builder().aiMessage(AiMessage.from(answer)).build();
+        }
+
+        @Override
+        public ChatResponse doChat(ChatRequest chatRequest) {
+            return response;
+        }
+    }
+}
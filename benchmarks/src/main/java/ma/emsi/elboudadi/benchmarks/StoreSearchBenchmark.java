@@ -0,0 +1,112 @@
+package ma.emsi.elboudadi.benchmarks;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import ma.emsi.elboudadi.store.MappedEmbeddingStore;
+import ma.emsi.elboudadi.store.QuantizedEmbeddingStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Latence d'une recherche top-3 (valeur par défaut d'{@code EmbeddingStoreContentRetriever})
+ * en fonction du nombre de vecteurs, sur des vecteurs synthétiques de dimension 384.
+ *
+ * {@code InMemory} est le magasin de LangChain4j ; {@code Mapped} est l'index
+ * persistant de l'application, relu depuis le disque par projection mémoire ;
+ * {@code Int8} et {@code Binary} sont ses vues quantifiées hors tas (rescoring par défaut).
+ * Le tas est fixé à 8 Go pour que le million de vecteurs tienne sans bruit du GC.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class StoreSearchBenchmark {
+
+    private static final int QUERIES = 1024;
+    private static final int CHUNK = 10_000;
+
+    @Param({"10000", "100000", "1000000"})
+    public int size;
+
+    @Param({"InMemory", "Mapped", "Int8", "Binary"})
+    public String implementation;
+
+    private EmbeddingStore<TextSegment> store;
+    private List<Embedding> queries;
+    private Path directory;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        store = switch (implementation) {
+            case "InMemory" -> new InMemoryEmbeddingStore<>();
+            case "Mapped", "Int8", "Binary" -> new MappedEmbeddingStore();
+            default -> throw new IllegalArgumentException("Implémentation inconnue : " + implementation);
+        };
+        // Remplissage par tranches : un seul tableau de 1M vecteurs doublerait le tas nécessaire
+        for (int start = 0; start < size; start += CHUNK) {
+            store.addAll(BenchmarkData.randomEmbeddings(Math.min(CHUNK, size - start), BenchmarkData.SEED + start));
+        }
+        if (store instanceof MappedEmbeddingStore mapped) {
+            directory = Files.createTempDirectory("rag-bench");
+            mapped.save(directory);
+            store = MappedEmbeddingStore.open(directory);
+            if (!"Mapped".equals(implementation)) {
+                store = QuantizedEmbeddingStore.builder()
+                        .source((MappedEmbeddingStore) store)
+                        .quantization("Int8".equals(implementation)
+                                ? QuantizedEmbeddingStore.Quantization.INT8
+                                : QuantizedEmbeddingStore.Quantization.BINARY)
+                        .build();
+            }
+        }
+        queries = BenchmarkData.randomEmbeddings(QUERIES, BenchmarkData.SEED - 1);
+    }
+
+    @Benchmark
+    public EmbeddingSearchResult<TextSegment> search() {
+        Embedding query = queries.get(next++ & (QUERIES - 1));
+        return store.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(query)
+                .maxResults(3)
+                .build());
+    }
+
+    @TearDown
+    public void tearDown() {
+        store = null;
+        if (directory == null) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package ma.emsi.elboudadi;
+
+import dev.langchain4j.rag.RetrievalAugmentor;
+import dev.langchain4j.service.AiServices;
+import ma.emsi.elboudadi.engine.RagConfig;
+import ma.emsi.elboudadi.engine.RagEngine;
+import ma.emsi.elboudadi.memory.SummarizingChatMemory;
+import ma.emsi.elboudadi.metrics.RagMetrics;
+import ma.emsi.elboudadi.server.AssistantServer;
+import ma.emsi.elboudadi.server.SessionChatMemoryProvider;
+import ma.emsi.elboudadi.store.MappedEmbeddingStore;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Mode serveur - plusieurs utilisateurs simultanés
+ *
+ * Même pipeline que TestRoutageNo (routage RAG / pas de RAG sur Doc A + Doc B, ou tout
+ * autre mode de {@link RagEngine} choisi par configuration), mais exposé en HTTP :
+ * - une mémoire de conversation par session (en-tête X-Session-Id), bornée en jetons,
+ *   résumée et journalisée sur disque, libérée après inactivité ;
+ * - un thread virtuel par requête ;
+ * - un nombre borné de questions traitées simultanément (503 au-delà) ;
+ * - les questions autonomes déjà posées par une session servies aux autres depuis un
+ *   cache sémantique, sans appel au modèle ;
+ * - une variante en flux, jeton par jeton, sur /chat/stream ;
+ * - les latences par étape et les compteurs sur /metrics (et en JMX) ;
+ * - le serveur répond dès le démarrage : les index se chargent en arrière-plan.
+ *
+ * Lancement : ServeurRag [port] [--clé=valeur...] (voir {@link RagConfig}).
+ * Exemple : curl -H "X-Session-Id: alice" -d "Qu'est-ce que le RAG ?" http://localhost:8080/chat
+ *           curl -N -H "X-Session-Id: alice" -d "Et LangChain4j ?" http://localhost:8080/chat/stream
+ */
+public class ServeurRag {
+
+    public static void main(String[] args) throws Exception {
+
+        // === 1. API Key ===
+        String apiKey = System.getenv("GEMINI-API-KEY");
+        if (apiKey == null) {
+            System.err.println("Définissez la variable d'environnement GEMINI_API_KEY");
+            return;
+        }
+        boolean portGiven = args.length > 0 && !args[0].startsWith("--");
+        int port = portGiven ? Integer.parseInt(args[0]) : 8080;
+        RagMetrics metrics = RagMetrics.global().registerMBean();
+
+        // === 2. Moteur RAG (modèle, ingestion, index, routeur) ===
+        // Débit lissé sous le quota, appels simultanés bornés, nouvelles tentatives espacées,
+        // disjoncteur, et requête de couverture au-delà du 95e centile des latences
+        RagConfig config = RagConfig.load(portGiven ? Arrays.copyOfRange(args, 1, args.length) : args,
+                RagConfig.builder()
+                        .mode(RagConfig.Mode.LLM_ROUTED)
+                        .rateLimit(20, 10)
+                        .maxConcurrentCalls(32)
+                        .hedging(true));
+        RagEngine engine = RagEngine.builder()
+                .config(config)
+                .apiKey(apiKey)
+                .metrics(metrics)
+                .build();
+        // Utilisable tout de suite : les premières questions attendent la fin du chargement
+        RetrievalAugmentor retrievalAugmentor = engine.retrievalAugmentor();
+
+        // === 3. Mémoire par session (bornée en jetons, anciens tours résumés, journal sur disque),
+        //        libérée après 30 minutes d'inactivité et relue au retour de la session ===
+        Path sessionsDirectory = MappedEmbeddingStore.DEFAULT_INDEX_ROOT.resolve("sessions");
+        SessionChatMemoryProvider memories = new SessionChatMemoryProvider(
+                sessionId -> SummarizingChatMemory.builder()
+                        .id(sessionId)
+                        .maxTokens(config.memoryMaxTokens())
+                        .summarizer(engine.chatModel())
+                        .directory(sessionsDirectory)
+                        .build(),
+                Duration.ofMinutes(30));
+
+        // === 4. Assistant multi-sessions, derrière le cache sémantique partagé par les sessions ===
+        SessionAssistant assistant = engine.cached(AiServices.builder(SessionAssistant.class)
+                .chatModel(engine.chatModel())
+                .retrievalAugmentor(retrievalAugmentor)
+                .chatMemoryProvider(memories)
+                .build());
+
+        // Même pipeline (retrieval compris), mais réponse diffusée au fil de la génération
+        SessionStreamingAssistant streamingAssistant = AiServices.builder(SessionStreamingAssistant.class)
+                .streamingChatModel(engine.streamingChatModel())
+                .retrievalAugmentor(retrievalAugmentor)
+                .chatMemoryProvider(memories)
+                .build();
+
+        // === 5. Serveur HTTP ===
+        AssistantServer server = AssistantServer.builder()
+                .port(port)
+                .assistant(assistant)
+                .streamingAssistant(streamingAssistant)
+                .memories(memories)
+                .metrics(metrics)
+                .maxConcurrentRequests(64)
+                .admissionTimeout(Duration.ofSeconds(2))
+                .build()
+                .start();
+        engine.timings().interactive();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            System.out.println(engine.timings());
+            System.out.println(engine.retrievalStats());
+            engine.close();
+        }));
+        System.out.println("=== Serveur RAG (" + config.mode().key() + ") sur http://localhost:" + port
+                + "/chat - Ctrl+C pour arrêter ===");
+    }
+}
\ No newline at end of file
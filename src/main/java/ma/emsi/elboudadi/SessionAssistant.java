@@ -0,0 +1,21 @@
+package ma.emsi.elboudadi;
+
+import dev.langchain4j.service.MemoryId;
+import dev.langchain4j.service.UserMessage;
+
+/**
+ * Variante multi-utilisateurs de {@link Assistant}.
+ *
+ * Chaque session dispose de sa propre mémoire de conversation, fournie par le
+ * {@code ChatMemoryProvider} configuré dans AiServices à partir de l'identifiant de session.
+ */
+public interface SessionAssistant {
+    /**
+     * Envoie un message à l'assistant dans le contexte d'une session.
+     *
+     * @param sessionId L'identifiant de la session (clé de la mémoire de conversation)
+     * @param userMessage Le message de l'utilisateur
+     * @return La réponse générée par l'assistant
+     */
+    String chat(@MemoryId String sessionId, @UserMessage String userMessage);
+}
@@ -0,0 +1,19 @@
+package ma.emsi.elboudadi;
+
+import dev.langchain4j.service.MemoryId;
+import dev.langchain4j.service.TokenStream;
+import dev.langchain4j.service.UserMessage;
+
+/**
+ * Variante multi-utilisateurs de {@link StreamingAssistant}, une mémoire par session.
+ */
+public interface SessionStreamingAssistant {
+    /**
+     * Envoie un message à l'assistant dans le contexte d'une session et reçoit la réponse en flux.
+     *
+     * @param sessionId L'identifiant de la session (clé de la mémoire de conversation)
+     * @param userMessage Le message de l'utilisateur
+     * @return Le flux de la réponse, à démarrer avec {@link TokenStream#start()}
+     */
+    TokenStream chat(@MemoryId String sessionId, @UserMessage String userMessage);
+}
@@ -0,0 +1,19 @@
+package ma.emsi.elboudadi;
+
+import dev.langchain4j.service.TokenStream;
+
+/**
+ * Variante en flux de {@link Assistant} : la réponse est transmise jeton par jeton.
+ *
+ * La recherche de contenu (RAG) est effectuée avant le début du flux ; seule la
+ * génération par le modèle est diffusée au fur et à mesure.
+ */
+public interface StreamingAssistant {
+    /**
+     * Envoie un message à l'assistant et reçoit la réponse sous forme de flux.
+     *
+     * @param userMessage Le message de l'utilisateur
+     * @return Le flux de la réponse, à démarrer avec {@link TokenStream#start()}
+     */
+    TokenStream chat(String userMessage);
+}
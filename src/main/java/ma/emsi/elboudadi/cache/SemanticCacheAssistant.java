@@ -0,0 +1,303 @@
+package ma.emsi.elboudadi.cache;
+
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import ma.emsi.elboudadi.Assistant;
+import ma.emsi.elboudadi.SessionAssistant;
+import ma.emsi.elboudadi.metrics.RagMetrics;
+import ma.emsi.elboudadi.store.Vectors;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Cache sémantique placé devant un {@link Assistant} ou un {@link SessionAssistant}
+ * (partagé alors entre toutes les sessions).
+ *
+ * Chaque question est convertie en embedding ; si une question déjà posée lui est
+ * suffisamment similaire (cosinus supérieur au seuil) et a été routée vers les mêmes
+ * sources, la réponse mémorisée est renvoyée sans appeler le modèle. La mémoire est
+ * bornée : éviction LRU au-delà de {@code maxEntries} et expiration après {@code ttl}.
+ *
+ * Une réponse servie depuis le cache n'est pas ajoutée à la mémoire de conversation
+ * de l'assistant délégué, et ne tient pas compte de l'échange en cours. Une question
+ * autonome se réutilise quelle que soit la conversation ; une question de suivi
+ * ("Et pour le second ?", "Pourquoi cela ?"), qui n'a de sens qu'avec les échanges
+ * précédents, va directement au délégué sans consulter ni alimenter le cache (par
+ * défaut, {@link #looksLikeFollowUp(String)}). Le seuil par défaut reste élevé pour ne
+ * pas confondre deux questions qui ne se ressemblent qu'en apparence.
+ */
+public class SemanticCacheAssistant implements Assistant, SessionAssistant {
+
+    /** Tournures qui renvoient à un échange précédent */
+    private static final Pattern FOLLOW_UP_START = Pattern.compile(
+            "^(et|mais|alors|donc|ensuite|encore|plus de détails|and|but|so|then|also|what about|how about|more details)\\b.*");
+    private static final Set<String> ANAPHORS = Set.of(
+            "il", "elle", "ils", "elles", "ça", "cela", "celui", "celle", "ceux", "celles", "lui", "leur",
+            "précédent", "précédente", "ci-dessus", "là-dessus", "dessus",
+            "it", "its", "this", "that", "these", "those", "they", "them", "previous", "above");
+    private static final int MIN_STANDALONE_WORDS = 3;
+
+    private final SessionAssistant delegate;
+    private final EmbeddingModel embeddingModel;
+    private final double similarityThreshold;
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final Function<String, String> scope;
+    private final Predicate<String> followUp;
+    private final RagMetrics metrics;
+
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder bypassed = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder missNanos = new LongAdder();
+    private final LongAdder savedNanos = new LongAdder();
+
+    private SemanticCacheAssistant(Builder builder) {
+        this.delegate = Objects.requireNonNull(builder.delegate, "L'assistant délégué ne peut pas être null");
+        this.embeddingModel = Objects.requireNonNull(builder.embeddingModel, "Le modèle d'embedding ne peut pas être null");
+        this.similarityThreshold = builder.similarityThreshold;
+        this.maxEntries = builder.maxEntries;
+        this.ttlNanos = builder.ttl.toNanos();
+        this.scope = builder.scope;
+        this.followUp = builder.followUp;
+        this.metrics = builder.metrics;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public String chat(String userMessage) {
+        return chat(null, userMessage);
+    }
+
+    /**
+     * @param sessionId Session transmise au délégué (ignorée par un {@link Assistant})
+     */
+    @Override
+    public String chat(String sessionId, String userMessage) {
+        // Question de suivi : sa réponse dépend de la conversation, elle ne se partage pas
+        if (followUp.test(userMessage)) {
+            bypassed.increment();
+            return delegate.chat(sessionId, userMessage);
+        }
+        float[] question = Vectors.normalized(embeddingModel.embed(userMessage).content().vector());
+        String questionScope = scope.apply(userMessage);
+
+        Entry cached = lookup(question, questionScope);
+        if (cached != null) {
+            hits.increment();
+            metrics.increment(RagMetrics.CACHE_HITS);
+            // Latence économisée estimée par la latence moyenne d'un appel réel
+            long missCount = misses.sum();
+            if (missCount > 0) {
+                savedNanos.add(missNanos.sum() / missCount);
+            }
+            return cached.answer;
+        }
+
+        misses.increment();
+        metrics.increment(RagMetrics.CACHE_MISSES);
+        long start = System.nanoTime();
+        String answer = delegate.chat(sessionId, userMessage);
+        missNanos.add(System.nanoTime() - start);
+        store(new Entry(question, questionScope, answer, System.nanoTime()));
+        return answer;
+    }
+
+    /**
+     * @return Les compteurs du cache depuis sa création
+     */
+    public Stats stats() {
+        synchronized (entries) {
+            return new Stats(hits.sum(), misses.sum(), bypassed.sum(), evictions.sum(), entries.size(),
+                    Duration.ofNanos(misses.sum() == 0 ? 0 : missNanos.sum() / misses.sum()),
+                    Duration.ofNanos(savedNanos.sum()));
+        }
+    }
+
+    /**
+     * Reconnaît une question qui ne se comprend qu'avec les échanges précédents : très
+     * courte, ouverte par une conjonction ("Et pour...", "Mais alors...") ou reprenant un
+     * pronom ("il", "cela", "ceux"...). Dans le doute, la question contourne le cache :
+     * c'est un appel de plus au modèle, jamais une réponse hors contexte.
+     */
+    public static boolean looksLikeFollowUp(String question) {
+        String normalized = question.strip().toLowerCase(Locale.ROOT);
+        if (FOLLOW_UP_START.matcher(normalized).matches()) {
+            return true;
+        }
+        String[] words = normalized.split("[^\\p{L}\\p{N}-]+");
+        int count = 0;
+        for (String word : words) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            count++;
+            if (ANAPHORS.contains(word)) {
+                return true;
+            }
+        }
+        return count < MIN_STANDALONE_WORDS;
+    }
+
+    private Entry lookup(float[] question, String questionScope) {
+        long now = System.nanoTime();
+        synchronized (entries) {
+            Long bestKey = null;
+            double bestSimilarity = similarityThreshold;
+            Iterator<Map.Entry<Long, Entry>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Long, Entry> candidate = iterator.next();
+                Entry entry = candidate.getValue();
+                if (now - entry.createdAt > ttlNanos) {
+                    iterator.remove();
+                    evictions.increment();
+                    continue;
+                }
+                if (!entry.scope.equals(questionScope)) {
+                    continue;
+                }
+                double similarity = Vectors.dot(question, entry.question);
+                if (similarity >= bestSimilarity) {
+                    bestSimilarity = similarity;
+                    bestKey = candidate.getKey();
+                }
+            }
+            // get() met à jour l'ordre d'accès (LRU)
+            return bestKey == null ? null : entries.get(bestKey);
+        }
+    }
+
+    private void store(Entry entry) {
+        synchronized (entries) {
+            entries.put(sequence.incrementAndGet(), entry);
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (entries.size() > maxEntries && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    private record Entry(float[] question, String scope, String answer, long createdAt) {
+    }
+
+    /**
+     * Instantané des compteurs du cache.
+     *
+     * @param bypassed              Questions de suivi transmises sans consulter le cache
+     * @param averageModelLatency   Latence moyenne d'un appel réellement transmis au modèle
+     * @param estimatedSavedLatency Latence cumulée évitée grâce aux réponses servies par le cache
+     */
+    public record Stats(long hits, long misses, long bypassed, long evictions, int size,
+                        Duration averageModelLatency, Duration estimatedSavedLatency) {
+
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Cache sémantique : %d succès / %d échecs (%.1f %%), %d hors cache, %d entrées, " +
+                            "%d évictions, latence modèle moyenne %d ms, ~%d ms et %d appels au modèle économisés",
+                    hits, misses, hitRate() * 100, bypassed, size, evictions,
+                    averageModelLatency.toMillis(), estimatedSavedLatency.toMillis(), hits);
+        }
+    }
+
+    public static class Builder {
+        private SessionAssistant delegate;
+        private EmbeddingModel embeddingModel;
+        private double similarityThreshold = 0.95;
+        private int maxEntries = 256;
+        private Duration ttl = Duration.ofMinutes(30);
+        private Function<String, String> scope = question -> "";
+        private Predicate<String> followUp = SemanticCacheAssistant::looksLikeFollowUp;
+        private RagMetrics metrics = RagMetrics.global();
+
+        public Builder delegate(Assistant delegate) {
+            Objects.requireNonNull(delegate, "L'assistant délégué ne peut pas être null");
+            this.delegate = (sessionId, userMessage) -> delegate.chat(userMessage);
+            return this;
+        }
+
+        /**
+         * @param delegate Assistant multi-sessions : le cache est partagé par toutes les sessions
+         */
+        public Builder delegate(SessionAssistant delegate) {
+            this.delegate = delegate;
+            return this;
+        }
+
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        /**
+         * @param similarityThreshold Similarité cosinus minimale (entre -1 et 1) pour servir une réponse
+         */
+        public Builder similarityThreshold(double similarityThreshold) {
+            this.similarityThreshold = similarityThreshold;
+            return this;
+        }
+
+        public Builder maxEntries(int maxEntries) {
+            this.maxEntries = Math.max(1, maxEntries);
+            return this;
+        }
+
+        public Builder ttl(Duration ttl) {
+            this.ttl = Objects.requireNonNull(ttl);
+            return this;
+        }
+
+        /**
+         * @param scope Calcule, pour une question, la clé des sources vers lesquelles elle est
+         *              routée ; seules les entrées de même clé peuvent être servies
+         */
+        public Builder scope(Function<String, String> scope) {
+            this.scope = Objects.requireNonNull(scope);
+            return this;
+        }
+
+        /**
+         * @param followUp Reconnaît les questions qui dépendent de la conversation et
+         *                 contournent le cache (par défaut {@link #looksLikeFollowUp(String)})
+         */
+        public Builder followUp(Predicate<String> followUp) {
+            this.followUp = Objects.requireNonNull(followUp);
+            return this;
+        }
+
+        /**
+         * @param metrics Registre où compter les succès et échecs du cache
+         */
+        public Builder metrics(RagMetrics metrics) {
+            this.metrics = Objects.requireNonNull(metrics);
+            return this;
+        }
+
+        public SemanticCacheAssistant build() {
+            return new SemanticCacheAssistant(this);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package ma.emsi.elboudadi.engine;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Composant construit une seule fois, au premier besoin ou en arrière-plan.
+ *
+ * {@link #get()} construit le composant dans le thread appelant s'il n'a pas encore
+ * été demandé, ou attend la construction déjà lancée ; {@link #start(Executor)} la
+ * lance sans attendre. Une construction en échec est mémorisée : l'erreur est
+ * renvoyée à chaque demande.
+ */
+final class Lazy<T> implements Supplier<T> {
+
+    private final Supplier<T> factory;
+    private final AtomicReference<CompletableFuture<T>> future = new AtomicReference<>();
+
+    Lazy(Supplier<T> factory) {
+        this.factory = factory;
+    }
+
+    @Override
+    public T get() {
+        try {
+            return start(Runnable::run).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Lance la construction sur {@code executor} si elle n'a pas commencé.
+     */
+    CompletableFuture<T> start(Executor executor) {
+        CompletableFuture<T> created = new CompletableFuture<>();
+        if (!future.compareAndSet(null, created)) {
+            return future.get();
+        }
+        executor.execute(() -> {
+            try {
+                created.complete(factory.get());
+            } catch (Throwable t) {
+                created.completeExceptionally(t);
+            }
+        });
+        return created;
+    }
+
+    /**
+     * @return true si le composant est construit (ou en échec)
+     */
+    boolean isDone() {
+        CompletableFuture<T> current = future.get();
+        return current != null && current.isDone();
+    }
+
+    /**
+     * Applique {@code action} au composant s'il a été construit, sans jamais le construire.
+     */
+    void ifBuilt(Consumer<T> action) {
+        CompletableFuture<T> current = future.get();
+        if (current != null && current.isDone() && !current.isCompletedExceptionally()) {
+            action.accept(current.join());
+        }
+    }
+}
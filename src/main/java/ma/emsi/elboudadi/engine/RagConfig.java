@@ -0,0 +1,683 @@
+package ma.emsi.elboudadi.engine;
+
+import ma.emsi.elboudadi.store.QuantizedEmbeddingStore.Quantization;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Properties;
+
+/**
+ * Configuration de {@link RagEngine} : mode, documents, modèle et budgets.
+ *
+ * Lue dans un fichier de propriétés ({@code rag.properties} du répertoire courant
+ * s'il existe, ou celui désigné par {@code --config=chemin}), puis complétée par la
+ * ligne de commande : {@code --clé=valeur} remplace la valeur du fichier, et
+ * {@code --stream} équivaut à {@code --stream=true}. Exemple :
+ * <pre>
+ * mode=llm-routed
+ * documents=Doc A=docs/RAG.pdf;Doc B=docs/LangChain4j.pdf
+ * document.Doc\ A.description=RAG et Intelligence Artificielle
+ * context.maxTokens=1500
+ * retrieval.maxResults=8
+ * index.quantization=int8
+ * rerank=true
+ * rerank.model=models/ms-marco-MiniLM/model.onnx
+ * rerank.maxResults=3
+ * </pre>
+ * (dans un fichier de propriétés, l'espace d'une clé s'écrit {@code \ }).
+ * Les clés d'API restent dans l'environnement ({@code GEMINI-API-KEY}, {@code TAVILY_KEY}).
+ */
+public final class RagConfig {
+
+    public static final Path DEFAULT_FILE = Path.of("rag.properties");
+
+    /**
+     * Pipeline assemblé par le moteur.
+     */
+    public enum Mode {
+        /** Un seul document, retriever vectoriel par défaut, mémoire à fenêtre fixe : la référence */
+        NAIVE("naive"),
+        /** Tous les documents ; le RAG est activé ou non (classifieur local, LLM pour les cas ambigus) */
+        LLM_ROUTED("llm-routed"),
+        /** Tous les documents ; la source est choisie par similarité avec les centroïdes de chaque document */
+        EMBEDDING_ROUTED("embedding-routed"),
+        /** Comme LLM_ROUTED, avec la recherche Web en source supplémentaire */
+        WEB("web");
+
+        private final String key;
+
+        Mode(String key) {
+            this.key = key;
+        }
+
+        public String key() {
+            return key;
+        }
+
+        public static Mode of(String key) {
+            for (Mode mode : values()) {
+                if (mode.key.equalsIgnoreCase(key.trim()) || mode.name().equalsIgnoreCase(key.trim())) {
+                    return mode;
+                }
+            }
+            throw new IllegalArgumentException("Mode inconnu : " + key + " (naive, llm-routed, embedding-routed ou web)");
+        }
+    }
+
+    /**
+     * @param name        Nom de la source (clé de routage et d'étiquetage des segments)
+     * @param path        Fichier à indexer
+     * @param description Thème du document, pour le routage par similarité
+     */
+    public record Document(String name, Path path, String description) {
+        public Document {
+            Objects.requireNonNull(name, "Le nom du document ne peut pas être null");
+            Objects.requireNonNull(path, "Le chemin du document ne peut pas être null");
+        }
+
+        /**
+         * @return L'étiquette de la source dans le routeur ("Doc A : RAG et ...")
+         */
+        public String label() {
+            return description == null || description.isBlank() ? name : name + " : " + description;
+        }
+    }
+
+    private final Mode mode;
+    private final List<Document> documents;
+    private final String modelName;
+    private final double temperature;
+    private final int maxConcurrentCalls;
+    private final double requestsPerSecond;
+    private final int burst;
+    private final boolean hedging;
+    private final boolean stream;
+    private final boolean warmup;
+    private final int contextMaxTokens;
+    private final int memoryMaxTokens;
+    private final String memoryId;
+    private final Duration retrievalDeadline;
+    private final int maxResults;
+    private final double minScore;
+    private final int efSearch;
+    private final Quantization quantization;
+    private final double routingMargin;
+    private final double routingMinSimilarity;
+    private final boolean rerank;
+    private final Path rerankModel;
+    private final Path rerankTokenizer;
+    private final double rerankMinScore;
+    private final int rerankMaxResults;
+    private final Duration rerankCpuBudget;
+    private final int webMaxResults;
+    private final Duration webDeadline;
+
+    private RagConfig(Builder builder) {
+        this.mode = builder.mode;
+        this.documents = List.copyOf(builder.documents);
+        this.modelName = builder.modelName;
+        this.temperature = builder.temperature;
+        this.maxConcurrentCalls = builder.maxConcurrentCalls;
+        this.requestsPerSecond = builder.requestsPerSecond;
+        this.burst = builder.burst;
+        this.hedging = builder.hedging;
+        this.stream = builder.stream;
+        this.warmup = builder.warmup;
+        this.contextMaxTokens = builder.contextMaxTokens;
+        this.memoryMaxTokens = builder.memoryMaxTokens;
+        this.memoryId = builder.memoryId != null ? builder.memoryId : builder.mode.key();
+        this.retrievalDeadline = builder.retrievalDeadline;
+        this.maxResults = builder.maxResults;
+        this.minScore = builder.minScore;
+        this.efSearch = builder.efSearch;
+        this.quantization = builder.quantization;
+        this.routingMargin = builder.routingMargin;
+        this.routingMinSimilarity = builder.routingMinSimilarity;
+        this.rerank = builder.rerank;
+        this.rerankModel = builder.rerankModel;
+        this.rerankTokenizer = builder.rerankTokenizer;
+        this.rerankMinScore = builder.rerankMinScore;
+        this.rerankMaxResults = builder.rerankMaxResults;
+        this.rerankCpuBudget = builder.rerankCpuBudget;
+        this.webMaxResults = builder.webMaxResults;
+        this.webDeadline = builder.webDeadline;
+        if (documents.isEmpty()) {
+            throw new IllegalArgumentException("Aucun document à indexer");
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Lit le fichier de configuration puis applique la ligne de commande.
+     *
+     * @param defaultMode Mode retenu si ni le fichier ni la ligne de commande n'en donnent
+     */
+    public static RagConfig load(String[] args, Mode defaultMode) {
+        return load(args, builder().mode(defaultMode));
+    }
+
+    /**
+     * @param defaults Valeurs retenues pour les clés absentes du fichier et de la ligne de commande
+     */
+    public static RagConfig load(String[] args, Builder defaults) {
+        Properties properties = new Properties();
+        Path file = DEFAULT_FILE;
+        List<String> overrides = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--config=")) {
+                file = Path.of(arg.substring("--config=".length()));
+                if (!Files.exists(file)) {
+                    throw new IllegalArgumentException("Fichier de configuration introuvable : " + file);
+                }
+            } else if (arg.startsWith("--")) {
+                overrides.add(arg.substring(2));
+            } else {
+                throw new IllegalArgumentException("Argument inattendu : " + arg + " (attendu : --clé=valeur)");
+            }
+        }
+        if (Files.exists(file)) {
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Impossible de lire la configuration " + file, e);
+            }
+        }
+        for (String override : overrides) {
+            int equals = override.indexOf('=');
+            if (equals < 0) {
+                properties.setProperty(override, "true");
+            } else {
+                properties.setProperty(override.substring(0, equals), override.substring(equals + 1));
+            }
+        }
+        return defaults.apply(properties).build();
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    public List<Document> documents() {
+        return documents;
+    }
+
+    public String modelName() {
+        return modelName;
+    }
+
+    public double temperature() {
+        return temperature;
+    }
+
+    public int maxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    public double requestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    public int burst() {
+        return burst;
+    }
+
+    public boolean hedging() {
+        return hedging;
+    }
+
+    public boolean stream() {
+        return stream;
+    }
+
+    public boolean warmup() {
+        return warmup;
+    }
+
+    public int contextMaxTokens() {
+        return contextMaxTokens;
+    }
+
+    public int memoryMaxTokens() {
+        return memoryMaxTokens;
+    }
+
+    public String memoryId() {
+        return memoryId;
+    }
+
+    public Duration retrievalDeadline() {
+        return retrievalDeadline;
+    }
+
+    public int maxResults() {
+        return maxResults;
+    }
+
+    public double minScore() {
+        return minScore;
+    }
+
+    public int efSearch() {
+        return efSearch;
+    }
+
+    /**
+     * @return La quantification de l'index vectoriel, null pour le graphe HNSW en float32
+     */
+    public Quantization quantization() {
+        return quantization;
+    }
+
+    public double routingMargin() {
+        return routingMargin;
+    }
+
+    public double routingMinSimilarity() {
+        return routingMinSimilarity;
+    }
+
+    /**
+     * @return true si le reclassement est demandé et qu'un cross-encoder est fourni
+     */
+    public boolean rerank() {
+        return rerank && rerankModel != null;
+    }
+
+    /**
+     * @return Le cross-encoder ONNX du reclassement, null s'il n'est pas fourni
+     */
+    public Path rerankModel() {
+        return rerankModel;
+    }
+
+    public Path rerankTokenizer() {
+        return rerankTokenizer;
+    }
+
+    public double rerankMinScore() {
+        return rerankMinScore;
+    }
+
+    public int rerankMaxResults() {
+        return rerankMaxResults;
+    }
+
+    public Duration rerankCpuBudget() {
+        return rerankCpuBudget;
+    }
+
+    public int webMaxResults() {
+        return webMaxResults;
+    }
+
+    public Duration webDeadline() {
+        return webDeadline;
+    }
+
+    @Override
+    public String toString() {
+        return "mode=" + mode.key() + ", documents=" + documents.stream().map(Document::name).toList()
+                + ", modèle=" + modelName
+                + (quantization != null ? ", index " + quantization.name().toLowerCase(Locale.ROOT) : "")
+                + (rerank ? ", reclassement" : "") + (stream ? ", flux" : "") + (warmup ? "" : ", sans préchargement");
+    }
+
+    public static class Builder {
+        private Mode mode = Mode.LLM_ROUTED;
+        private List<Document> documents = List.of(
+                new Document("Doc A", Path.of("docs/RAG.pdf"), "RAG et Intelligence Artificielle"),
+                new Document("Doc B", Path.of("docs/LangChain4j.pdf"), "LangChain4j"));
+        private String modelName = "gemini-2.5-flash";
+        private double temperature = 0.1;
+        private int maxConcurrentCalls = 4;
+        private double requestsPerSecond;
+        private int burst = 1;
+        private boolean hedging;
+        private boolean stream;
+        private boolean warmup = true;
+        private int contextMaxTokens = 1_500;
+        private int memoryMaxTokens = 2_000;
+        private String memoryId;
+        private Duration retrievalDeadline = Duration.ofSeconds(2);
+        private int maxResults = 3;
+        private double minScore;
+        private int efSearch = 64;
+        private Quantization quantization;
+        private double routingMargin = 0.02;
+        private double routingMinSimilarity = 0.5;
+        private boolean rerank;
+        private Path rerankModel;
+        private Path rerankTokenizer;
+        private double rerankMinScore = 0.5;
+        private int rerankMaxResults = 3;
+        private Duration rerankCpuBudget = Duration.ofMillis(200);
+        private int webMaxResults = 3;
+        private Duration webDeadline = Duration.ofSeconds(3);
+
+        public Builder mode(Mode mode) {
+            this.mode = Objects.requireNonNull(mode);
+            return this;
+        }
+
+        public Builder documents(List<Document> documents) {
+            this.documents = List.copyOf(documents);
+            return this;
+        }
+
+        public Builder modelName(String modelName) {
+            this.modelName = Objects.requireNonNull(modelName);
+            return this;
+        }
+
+        public Builder temperature(double temperature) {
+            this.temperature = temperature;
+            return this;
+        }
+
+        public Builder maxConcurrentCalls(int maxConcurrentCalls) {
+            this.maxConcurrentCalls = Math.max(1, maxConcurrentCalls);
+            return this;
+        }
+
+        /**
+         * @param requestsPerSecond Débit maximal vers le modèle (0 : pas de limite)
+         * @param burst             Appels possibles d'un coup après une période calme
+         */
+        public Builder rateLimit(double requestsPerSecond, int burst) {
+            this.requestsPerSecond = Math.max(0, requestsPerSecond);
+            this.burst = Math.max(1, burst);
+            return this;
+        }
+
+        /**
+         * @param hedging true pour doubler un appel qui dépasse le 95e centile des latences
+         */
+        public Builder hedging(boolean hedging) {
+            this.hedging = hedging;
+            return this;
+        }
+
+        /**
+         * @param stream true pour afficher les réponses au fil de la génération
+         */
+        public Builder stream(boolean stream) {
+            this.stream = stream;
+            return this;
+        }
+
+        /**
+         * @param warmup true pour charger modèles et index en arrière-plan dès le démarrage ;
+         *               false pour attendre la première question
+         */
+        public Builder warmup(boolean warmup) {
+            this.warmup = warmup;
+            return this;
+        }
+
+        public Builder contextMaxTokens(int contextMaxTokens) {
+            this.contextMaxTokens = Math.max(1, contextMaxTokens);
+            return this;
+        }
+
+        public Builder memoryMaxTokens(int memoryMaxTokens) {
+            this.memoryMaxTokens = Math.max(1, memoryMaxTokens);
+            return this;
+        }
+
+        /**
+         * @param memoryId Identifiant de la session console (nom du journal) ; par défaut, le mode
+         */
+        public Builder memoryId(String memoryId) {
+            this.memoryId = memoryId;
+            return this;
+        }
+
+        public Builder retrievalDeadline(Duration retrievalDeadline) {
+            this.retrievalDeadline = Objects.requireNonNull(retrievalDeadline);
+            return this;
+        }
+
+        /**
+         * @param maxResults Segments retenus par question (top-k), avant le budget de contexte
+         */
+        public Builder maxResults(int maxResults) {
+            this.maxResults = Math.max(1, maxResults);
+            return this;
+        }
+
+        /**
+         * @param minScore Similarité minimale d'un segment retenu par la recherche vectorielle
+         */
+        public Builder minScore(double minScore) {
+            this.minScore = minScore;
+            return this;
+        }
+
+        /**
+         * @param efSearch Largeur de recherche dans le graphe HNSW (rappel contre latence)
+         */
+        public Builder efSearch(int efSearch) {
+            this.efSearch = Math.max(1, efSearch);
+            return this;
+        }
+
+        /**
+         * @param quantization {@link Quantization#INT8} ou {@link Quantization#BINARY} pour
+         *                     chercher sur des codes compacts hors du tas, sans graphe HNSW
+         *                     (vecteurs complets lus dans le fichier projeté pour le score
+         *                     final) ; null pour le graphe HNSW en float32
+         */
+        public Builder quantization(Quantization quantization) {
+            this.quantization = quantization;
+            return this;
+        }
+
+        /**
+         * Seuils du routage par similarité ({@link Mode#EMBEDDING_ROUTED}).
+         *
+         * @param margin        Écart de score toléré avec la meilleure source pour interroger aussi une autre source
+         * @param minSimilarity Similarité en dessous de laquelle toutes les sources sont interrogées
+         */
+        public Builder routing(double margin, double minSimilarity) {
+            this.routingMargin = margin;
+            this.routingMinSimilarity = minSimilarity;
+            return this;
+        }
+
+        /**
+         * @param rerank true pour reclasser les segments retrouvés avant de les injecter
+         *               (modes routés ; le mode naïf reste la référence sans reclassement).
+         *               Sans {@link #rerankModel(Path, Path)}, sans effet : un bi-encodeur
+         *               recalculerait le score que la recherche vectorielle vient de donner
+         */
+        public Builder rerank(boolean rerank) {
+            this.rerank = rerank;
+            return this;
+        }
+
+        /**
+         * @param model     Cross-encoder ONNX ({@code model.onnx}), nécessaire au reclassement
+         * @param tokenizer Son {@code tokenizer.json}
+         */
+        public Builder rerankModel(Path model, Path tokenizer) {
+            this.rerankModel = model;
+            this.rerankTokenizer = tokenizer;
+            return this;
+        }
+
+        /**
+         * @param rerankMinScore Score de reclassement en dessous duquel un segment est écarté
+         */
+        public Builder rerankMinScore(double rerankMinScore) {
+            this.rerankMinScore = rerankMinScore;
+            return this;
+        }
+
+        /**
+         * @param rerankMaxResults Segments gardés après reclassement
+         */
+        public Builder rerankMaxResults(int rerankMaxResults) {
+            this.rerankMaxResults = Math.max(1, rerankMaxResults);
+            return this;
+        }
+
+        /**
+         * @param rerankCpuBudget Temps de calcul du reclassement par question
+         */
+        public Builder rerankCpuBudget(Duration rerankCpuBudget) {
+            this.rerankCpuBudget = Objects.requireNonNull(rerankCpuBudget);
+            return this;
+        }
+
+        public Builder webMaxResults(int webMaxResults) {
+            this.webMaxResults = Math.max(1, webMaxResults);
+            return this;
+        }
+
+        public Builder webDeadline(Duration webDeadline) {
+            this.webDeadline = Objects.requireNonNull(webDeadline);
+            return this;
+        }
+
+        /**
+         * Applique les propriétés reconnues ; les autres sont ignorées.
+         */
+        public Builder apply(Properties properties) {
+            String value;
+            if ((value = properties.getProperty("mode")) != null) {
+                mode(Mode.of(value));
+            }
+            if ((value = properties.getProperty("documents")) != null) {
+                documents(parseDocuments(value, properties));
+            }
+            if ((value = properties.getProperty("model.name")) != null) {
+                modelName(value.trim());
+            }
+            if ((value = properties.getProperty("model.temperature")) != null) {
+                temperature(Double.parseDouble(value.trim()));
+            }
+            if ((value = properties.getProperty("model.maxConcurrentCalls")) != null) {
+                maxConcurrentCalls(Integer.parseInt(value.trim()));
+            }
+            if ((value = properties.getProperty("model.requestsPerSecond")) != null) {
+                rateLimit(Double.parseDouble(value.trim()), burst);
+            }
+            if ((value = properties.getProperty("model.burst")) != null) {
+                rateLimit(requestsPerSecond, Integer.parseInt(value.trim()));
+            }
+            if ((value = properties.getProperty("model.hedging")) != null) {
+                hedging(Boolean.parseBoolean(value.trim()));
+            }
+            if ((value = properties.getProperty("stream")) != null) {
+                stream(Boolean.parseBoolean(value.trim()));
+            }
+            if ((value = properties.getProperty("warmup")) != null) {
+                warmup(Boolean.parseBoolean(value.trim()));
+            }
+            if ((value = properties.getProperty("context.maxTokens")) != null) {
+                contextMaxTokens(Integer.parseInt(value.trim()));
+            }
+            if ((value = properties.getProperty("memory.maxTokens")) != null) {
+                memoryMaxTokens(Integer.parseInt(value.trim()));
+            }
+            if ((value = properties.getProperty("memory.id")) != null) {
+                memoryId(value.trim());
+            }
+            if ((value = properties.getProperty("retrieval.deadlineMillis")) != null) {
+                retrievalDeadline(Duration.ofMillis(Long.parseLong(value.trim())));
+            }
+            if ((value = properties.getProperty("retrieval.maxResults")) != null) {
+                maxResults(Integer.parseInt(value.trim()));
+            }
+            if ((value = properties.getProperty("retrieval.minScore")) != null) {
+                minScore(Double.parseDouble(value.trim()));
+            }
+            if ((value = properties.getProperty("index.efSearch")) != null) {
+                efSearch(Integer.parseInt(value.trim()));
+            }
+            if ((value = properties.getProperty("index.quantization")) != null) {
+                quantization(quantizationOf(value.trim()));
+            }
+            if ((value = properties.getProperty("routing.margin")) != null) {
+                routing(Double.parseDouble(value.trim()), routingMinSimilarity);
+            }
+            if ((value = properties.getProperty("routing.minSimilarity")) != null) {
+                routing(routingMargin, Double.parseDouble(value.trim()));
+            }
+            if ((value = properties.getProperty("rerank")) != null) {
+                rerank(Boolean.parseBoolean(value.trim()));
+            }
+            if ((value = properties.getProperty("rerank.model")) != null) {
+                String tokenizer = properties.getProperty("rerank.tokenizer");
+                Path model = Path.of(value.trim());
+                rerankModel(model, tokenizer != null
+                        ? Path.of(tokenizer.trim())
+                        : model.resolveSibling("tokenizer.json"));
+            }
+            if ((value = properties.getProperty("rerank.minScore")) != null) {
+                rerankMinScore(Double.parseDouble(value.trim()));
+            }
+            if ((value = properties.getProperty("rerank.maxResults")) != null) {
+                rerankMaxResults(Integer.parseInt(value.trim()));
+            }
+            if ((value = properties.getProperty("rerank.cpuBudgetMillis")) != null) {
+                rerankCpuBudget(Duration.ofMillis(Long.parseLong(value.trim())));
+            }
+            if ((value = properties.getProperty("web.maxResults")) != null) {
+                webMaxResults(Integer.parseInt(value.trim()));
+            }
+            if ((value = properties.getProperty("web.deadlineMillis")) != null) {
+                webDeadline(Duration.ofMillis(Long.parseLong(value.trim())));
+            }
+            return this;
+        }
+
+        /**
+         * "Doc A=docs/RAG.pdf;Doc B=docs/LangChain4j.pdf" ; un chemin seul prend son nom de fichier.
+         */
+        private static List<Document> parseDocuments(String value, Properties properties) {
+            List<Document> documents = new ArrayList<>();
+            for (String entry : value.split(";")) {
+                if (entry.isBlank()) {
+                    continue;
+                }
+                int equals = entry.indexOf('=');
+                Path path = Path.of((equals < 0 ? entry : entry.substring(equals + 1)).trim());
+                String name = equals < 0 ? path.getFileName().toString() : entry.substring(0, equals).trim();
+                String description = properties.getProperty("document." + name + ".description");
+                documents.add(new Document(name, path, description));
+            }
+            return documents;
+        }
+
+        /**
+         * "none", "int8" ou "binary".
+         */
+        private static Quantization quantizationOf(String value) {
+            if (value.equalsIgnoreCase("none")) {
+                return null;
+            }
+            try {
+                return Quantization.valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Quantification inconnue : " + value + " (none, int8 ou binary)");
+            }
+        }
+
+        public RagConfig build() {
+            return new RagConfig(this);
+        }
+    }
+}
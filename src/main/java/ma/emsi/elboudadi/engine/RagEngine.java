@@ -0,0 +1,733 @@
+package ma.emsi.elboudadi.engine;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.googleai.GoogleAiGeminiChatModel;
+import dev.langchain4j.model.googleai.GoogleAiGeminiStreamingChatModel;
+import dev.langchain4j.model.scoring.ScoringModel;
+import dev.langchain4j.rag.DefaultRetrievalAugmentor;
+import dev.langchain4j.rag.RetrievalAugmentor;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.rag.query.router.DefaultQueryRouter;
+import dev.langchain4j.rag.query.router.QueryRouter;
+import dev.langchain4j.service.AiServices;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.web.search.WebSearchEngine;
+import dev.langchain4j.web.search.tavily.TavilyWebSearchEngine;
+import ma.emsi.elboudadi.Assistant;
+import ma.emsi.elboudadi.SessionAssistant;
+import ma.emsi.elboudadi.StreamingAssistant;
+import ma.emsi.elboudadi.cache.SemanticCacheAssistant;
+import ma.emsi.elboudadi.ingestion.IngestionPipeline;
+import ma.emsi.elboudadi.lexical.Bm25Index;
+import ma.emsi.elboudadi.memory.SummarizingChatMemory;
+import ma.emsi.elboudadi.metrics.RagMetrics;
+import ma.emsi.elboudadi.model.EmbeddingModels;
+import ma.emsi.elboudadi.model.ResilientChatModel;
+import ma.emsi.elboudadi.model.ScoringModels;
+import ma.emsi.elboudadi.retrieval.BudgetedContentAggregator;
+import ma.emsi.elboudadi.retrieval.ContentReranker;
+import ma.emsi.elboudadi.retrieval.FanOutRetrieval;
+import ma.emsi.elboudadi.retrieval.MultiSourceRetriever;
+import ma.emsi.elboudadi.retrieval.RetrievalStats;
+import ma.emsi.elboudadi.routing.EmbeddingQueryRouter;
+import ma.emsi.elboudadi.routing.NoRagQueryRouter;
+import ma.emsi.elboudadi.routing.PrototypeClassifier;
+import ma.emsi.elboudadi.store.HnswEmbeddingStore;
+import ma.emsi.elboudadi.store.MappedEmbeddingStore;
+import ma.emsi.elboudadi.store.MultiSourceEmbeddingStore;
+import ma.emsi.elboudadi.store.QuantizedEmbeddingStore;
+import ma.emsi.elboudadi.streaming.StreamTiming;
+import ma.emsi.elboudadi.streaming.StreamingStats;
+import ma.emsi.elboudadi.streaming.TokenStreams;
+import ma.emsi.elboudadi.web.CachingWebSearchEngine;
+import ma.emsi.elboudadi.web.StubWebSearchEngine;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+import java.util.logging.ConsoleHandler;
+import java.util.stream.Collectors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pipeline RAG complet, assemblé selon {@link RagConfig} : modèle Gemini protégé,
+ * ingestion incrémentale, index, routage, recherche Web et assistant console.
+ *
+ * Seuls les modèles de chat sont construits tout de suite. Le modèle d'embedding,
+ * l'ingestion, les index et le routeur sont des composants {@link Lazy} : avec
+ * {@code warmup} (par défaut), ils se chargent en parallèle sur des threads virtuels
+ * pendant que la console ou le serveur accepte déjà les questions ; la première
+ * question attend seulement ce qui manque encore. Sans {@code warmup}, ils sont
+ * construits à la première question.
+ *
+ * La durée de chaque phase est mesurée ({@link #timings()}), journalisée quand le
+ * pipeline est prêt et affichée en fin de session.
+ *
+ * Le modèle de chat et le moteur de recherche Web peuvent être remplacés (modèle
+ * factice, moteur hors ligne) pour évaluer le pipeline sans réseau. Sans moteur
+ * fourni, le mode {@code web} exige {@code TAVILY_KEY} : aucun résultat inventé
+ * n'atteint le modèle réel.
+ */
+public final class RagEngine implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(RagEngine.class.getName());
+
+    /** Nombre de centroïdes résumant chaque document pour le routage par similarité */
+    private static final int CENTROIDS_PER_SOURCE = 4;
+    private static final String WEB_SOURCE = "Web (Tavily)";
+    private static final String TAVILY_KEY = "TAVILY_KEY";
+
+    private final RagConfig config;
+    private final RagMetrics metrics;
+    private final StartupTimings timings;
+    private final WebSearchEngine webSearchEngine;
+    private final Path webCachePersistence;
+    private final BiConsumer<String, List<String>> routingListener;
+    private final ExecutorService background = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final ResilientChatModel model;
+    private final StreamingChatModel streamingModel;
+    private final FanOutRetrieval fanOut;
+
+    private final Lazy<EmbeddingModel> embeddingModel;
+    private final Lazy<Map<Path, MappedEmbeddingStore>> stores;
+    private final Lazy<MultiSourceRetriever> documents;
+    private final Lazy<CachingWebSearchEngine> webCache;
+    private final Lazy<QueryRouter> router;
+    private final Lazy<ContentReranker> reranker;
+    private final Lazy<RetrievalAugmentor> augmentor;
+    /** Nom de chaque source routable, pour {@code routingListener} et la portée du cache */
+    private final Map<ContentRetriever, String> sourceNames = new IdentityHashMap<>();
+    /** Routage calculé pour la portée du cache, repris par l'augmenteur pour la même question */
+    private final ThreadLocal<RoutingDecision> routedAhead = new ThreadLocal<>();
+
+    private RagEngine(Builder builder) {
+        this.config = Objects.requireNonNull(builder.config, "La configuration ne peut pas être null");
+        this.metrics = builder.metrics != null ? builder.metrics : RagMetrics.global();
+        this.timings = new StartupTimings(metrics);
+        this.webSearchEngine = builder.webSearchEngine;
+        this.webCachePersistence = builder.webCachePersistence;
+        this.routingListener = builder.routingListener;
+        String apiKey = builder.apiKey;
+        if (apiKey == null && builder.chatModel == null) {
+            throw new IllegalArgumentException("Une clé d'API Gemini ou un modèle de chat est nécessaire");
+        }
+        if (config.mode() == RagConfig.Mode.WEB && webSearchEngine == null && System.getenv(TAVILY_KEY) == null) {
+            throw new IllegalStateException("Mode web : définissez la variable d'environnement " + TAVILY_KEY);
+        }
+
+        // Appels limités et protégés : délai, nouvelles tentatives espacées, disjoncteur
+        this.model = timings.phase("model", () -> ResilientChatModel.builder()
+                .delegate(builder.chatModel != null ? builder.chatModel : GoogleAiGeminiChatModel.builder()
+                        .apiKey(apiKey)
+                        .modelName(config.modelName())
+                        .temperature(config.temperature())
+                        .logRequestsAndResponses(RagMetrics.payloadLogging())
+                        .listeners(List.of(metrics.chatModelListener()))
+                        .maxRetries(0)
+                        .build())
+                .rateLimit(config.requestsPerSecond(), config.burst())
+                .maxConcurrentCalls(config.maxConcurrentCalls())
+                .timeout(Duration.ofSeconds(60))
+                .hedging(config.hedging())
+                .build());
+        // Même seau, même sémaphore et même disjoncteur que les réponses complètes
+        StreamingChatModel streaming = builder.streamingChatModel != null || apiKey == null
+                ? builder.streamingChatModel
+                : GoogleAiGeminiStreamingChatModel.builder()
+                        .apiKey(apiKey)
+                        .modelName(config.modelName())
+                        .temperature(config.temperature())
+                        .listeners(List.of(metrics.chatModelListener()))
+                        .build();
+        this.streamingModel = streaming != null ? model.streaming(streaming) : null;
+        this.fanOut = FanOutRetrieval.withDefaultDeadline(config.retrievalDeadline());
+
+        this.embeddingModel = new Lazy<>(() -> timings.phase("embedding-model", EmbeddingModels::local));
+        // Seuls les documents modifiés depuis le dernier lancement sont recalculés
+        this.stores = new Lazy<>(() -> timings.phase("ingestion", () -> IngestionPipeline.builder().build()
+                .ingest(indexedDocuments().stream().map(RagConfig.Document::path).toList())));
+        this.documents = new Lazy<>(this::buildDocuments);
+        this.webCache = new Lazy<>(this::buildWebCache);
+        this.router = new Lazy<>(this::buildRouter);
+        this.reranker = new Lazy<>(this::buildReranker);
+        this.augmentor = new Lazy<>(this::buildAugmentor);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Point d'entrée des programmes console : configuration, moteur, puis console interactive.
+     *
+     * @param defaultMode Mode retenu si ni {@code rag.properties} ni {@code --mode=...} n'en donnent
+     */
+    public static void run(RagConfig.Mode defaultMode, String[] args) {
+        // Échanges complets avec le modèle : seulement en diagnostic (-Drag.debug=true)
+        if (RagMetrics.payloadLogging()) {
+            configureLogger();
+        }
+        // Latences par étape et compteurs, consultables en JMX pendant l'exécution
+        RagMetrics metrics = RagMetrics.global().registerMBean();
+
+        String apiKey = System.getenv("GEMINI-API-KEY");
+        if (apiKey == null) {
+            System.err.println("Définissez la variable d'environnement GEMINI-API-KEY");
+            return;
+        }
+        RagConfig config = RagConfig.load(args, defaultMode);
+        if (config.mode() == RagConfig.Mode.WEB && System.getenv(TAVILY_KEY) == null) {
+            System.err.println("Définissez la variable d'environnement " + TAVILY_KEY);
+            return;
+        }
+        try (RagEngine engine = builder().config(config).apiKey(apiKey).metrics(metrics).build()) {
+            engine.console();
+        }
+    }
+
+    private static void configureLogger() {
+        Logger packageLogger = Logger.getLogger("dev.langchain4j");
+        packageLogger.setLevel(Level.FINE);
+        ConsoleHandler handler = new ConsoleHandler();
+        handler.setLevel(Level.FINE);
+        packageLogger.addHandler(handler);
+    }
+
+    /**
+     * @return Les documents à indexer : le premier seul en mode naïf, sinon tous
+     */
+    private List<RagConfig.Document> indexedDocuments() {
+        return config.mode() == RagConfig.Mode.NAIVE ? config.documents().subList(0, 1) : config.documents();
+    }
+
+    /**
+     * Lance en parallèle la construction de tous les composants paresseux.
+     */
+    private void warmup() {
+        embeddingModel.start(background);
+        stores.start(background);
+        if (config.mode() == RagConfig.Mode.WEB) {
+            webCache.start(background);
+        }
+        if (config.rerank() && config.mode() != RagConfig.Mode.NAIVE) {
+            reranker.start(background);
+        }
+        augmentor.start(background).exceptionally(e -> {
+            LOGGER.log(Level.SEVERE, "Échec du chargement du pipeline RAG : " + e.getMessage(), e);
+            return null;
+        });
+    }
+
+    public ChatModel chatModel() {
+        return model;
+    }
+
+    public StreamingChatModel streamingChatModel() {
+        return streamingModel;
+    }
+
+    /**
+     * @return L'augmenteur du mode configuré, utilisable tout de suite : un appel
+     * reçu avant la fin du chargement attend que le pipeline soit prêt
+     */
+    public RetrievalAugmentor retrievalAugmentor() {
+        return request -> augmentor.get().augment(request);
+    }
+
+    /**
+     * Place le cache sémantique des réponses devant un assistant multi-sessions : une
+     * question autonome déjà posée par une session est servie aux autres sans appel au
+     * modèle. Les questions de suivi vont directement à l'assistant.
+     *
+     * @return L'assistant derrière un cache partagé par toutes les sessions
+     */
+    public SessionAssistant cached(SessionAssistant assistant) {
+        Objects.requireNonNull(assistant, "L'assistant ne peut pas être null");
+        Lazy<SemanticCacheAssistant> cache = new Lazy<>(() -> semanticCache(
+                SemanticCacheAssistant.builder().delegate(assistant)));
+        if (config.warmup()) {
+            cache.start(background);
+        }
+        return (sessionId, question) -> {
+            try {
+                return cache.get().chat(sessionId, question);
+            } finally {
+                // Décision non reprise (réponse servie par le cache) : elle ne doit pas survivre
+                routedAhead.remove();
+            }
+        };
+    }
+
+    private SemanticCacheAssistant semanticCache(SemanticCacheAssistant.Builder builder) {
+        builder.embeddingModel(embeddingModel.get()).metrics(metrics);
+        if (config.mode() != RagConfig.Mode.NAIVE) {
+            // Une réponse n'est réutilisée que pour une question routée vers les mêmes sources
+            // (sans RAG compris) ; le routage calculé ici sert ensuite à l'augmenteur
+            builder.scope(this::scopeOf);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return true si tous les composants sont construits
+     */
+    public boolean ready() {
+        return augmentor.isDone();
+    }
+
+    public StartupTimings timings() {
+        return timings;
+    }
+
+    public RetrievalStats retrievalStats() {
+        return fanOut.stats();
+    }
+
+    public RagConfig config() {
+        return config;
+    }
+
+    /**
+     * Mémoire de la session console : fenêtre de 10 messages en mode naïf (la référence),
+     * sinon bornée en jetons, résumée en arrière-plan et relue au redémarrage.
+     */
+    public ChatMemory consoleMemory() {
+        if (config.mode() == RagConfig.Mode.NAIVE) {
+            return MessageWindowChatMemory.withMaxMessages(10);
+        }
+        return timings.phase("memory", () -> SummarizingChatMemory.builder()
+                .id(config.memoryId())
+                .maxTokens(config.memoryMaxTokens())
+                .summarizer(model)
+                .directory(MappedEmbeddingStore.DEFAULT_INDEX_ROOT.resolve("sessions"))
+                .build());
+    }
+
+    /**
+     * Console interactive (en flux si {@code stream}) ; les questions sont acceptées
+     * pendant le chargement.
+     */
+    public void console() {
+        ChatMemory memory = consoleMemory();
+        try {
+            if (config.stream()) {
+                streamingConsole(memory);
+            } else {
+                blockingConsole(memory);
+            }
+        } finally {
+            if (memory instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception e) {
+                    LOGGER.log(Level.WARNING, "Fermeture de la mémoire impossible : " + e.getMessage(), e);
+                }
+            }
+        }
+        System.out.println(timings);
+        System.out.println(fanOut.stats());
+        System.out.println(metrics);
+    }
+
+    private void blockingConsole(ChatMemory memory) {
+        Assistant assistant = AiServices.builder(Assistant.class)
+                .chatModel(model)
+                .retrievalAugmentor(retrievalAugmentor())
+                .chatMemory(memory)
+                .build();
+        // Cache sémantique devant l'assistant, construit avec le modèle d'embedding
+        Lazy<SemanticCacheAssistant> cached = new Lazy<>(() -> semanticCache(
+                SemanticCacheAssistant.builder().delegate(assistant)));
+        if (config.warmup()) {
+            cached.start(background);
+        }
+
+        try (Scanner scanner = new Scanner(System.in)) {
+            System.out.println("=== Assistant RAG (" + config.mode().key() + ") - tapez 'exit' pour quitter ===");
+            timings.interactive();
+            while (true) {
+                System.out.print("\nVotre question : ");
+                if (!scanner.hasNextLine()) break;
+                String question = scanner.nextLine();
+                if (question.equalsIgnoreCase("exit")) break;
+
+                try {
+                    System.out.println("→ Réponse : " + cached.get().chat(question));
+                } catch (RuntimeException e) {
+                    System.out.println("[Erreur : " + e.getMessage() + "]");
+                } finally {
+                    // Décision non reprise (réponse servie par le cache) : elle ne doit pas survivre
+                    routedAhead.remove();
+                }
+            }
+        }
+        cached.ifBuilt(cache -> System.out.println(cache.stats()));
+    }
+
+    /**
+     * Les fragments de la réponse sont affichés dès leur réception.
+     * Le cache sémantique n'intervient pas ici (il mémorise des réponses complètes).
+     */
+    private void streamingConsole(ChatMemory memory) {
+        if (streamingModel == null) {
+            throw new IllegalStateException("Aucun modèle en flux : fournir une clé d'API ou streamingChatModel(...)");
+        }
+        StreamingAssistant assistant = AiServices.builder(StreamingAssistant.class)
+                .streamingChatModel(streamingModel)
+                .retrievalAugmentor(retrievalAugmentor())
+                .chatMemory(memory)
+                .build();
+
+        StreamingStats stats = new StreamingStats();
+        try (Scanner scanner = new Scanner(System.in)) {
+            System.out.println("=== Assistant RAG (" + config.mode().key() + ", flux) - tapez 'exit' pour quitter ===");
+            timings.interactive();
+            while (true) {
+                System.out.print("\nVotre question : ");
+                if (!scanner.hasNextLine()) break;
+                String question = scanner.nextLine();
+                if (question.equalsIgnoreCase("exit")) break;
+
+                long debut = System.nanoTime();
+                System.out.print("→ Réponse : ");
+                try {
+                    StreamTiming timing = TokenStreams.consume(debut, assistant.chat(question), fragment -> {
+                        System.out.print(fragment);
+                        System.out.flush();
+                    }, stats);
+                    System.out.println("\n   (" + timing + ")");
+                } catch (RuntimeException e) {
+                    System.out.println("\n[Erreur : " + e.getMessage() + "]");
+                }
+            }
+        }
+        System.out.println(stats);
+    }
+
+    /**
+     * Index partagé par tous les documents (un seul graphe HNSW, chaque segment marqué
+     * de sa source) et retrieval hybride vecteurs + BM25 : un seul embedding et une
+     * seule recherche pour toutes les sources routées. Avec {@code index.quantization},
+     * codes compacts hors du tas à la place du graphe.
+     */
+    private MultiSourceRetriever buildDocuments() {
+        EmbeddingModel embeddings = embeddingModel.get();
+        Map<Path, MappedEmbeddingStore> ingested = stores.get();
+        return timings.phase("index", () -> {
+            MultiSourceEmbeddingStore.Builder shared = MultiSourceEmbeddingStore.builder();
+            for (RagConfig.Document document : config.documents()) {
+                shared.source(document.name(), ingested.get(document.path()));
+            }
+            MultiSourceEmbeddingStore sharedStore = shared
+                    .index(HnswEmbeddingStore.builder().efSearch(config.efSearch()))
+                    .quantization(config.quantization())
+                    .build();
+            return MultiSourceRetriever.builder()
+                    .store(sharedStore)
+                    .embeddingModel(embeddings)
+                    .lexical(Bm25Index.of(sharedStore))
+                    .maxResults(config.maxResults())
+                    .minScore(config.minScore())
+                    .decorator(retriever -> fanOut.withDeadline(retriever.toString(),
+                            metrics.retriever(retriever.toString(), retriever)))
+                    .build();
+        });
+    }
+
+    /**
+     * Résultats Web gardés en cache par question (les échecs aussi, brièvement), conservés
+     * sur disque entre deux lancements et indexés localement : une question proche est
+     * servie sans appel distant. Les résultats d'un {@link StubWebSearchEngine} restent
+     * en mémoire, ni persistés ni indexés.
+     */
+    private CachingWebSearchEngine buildWebCache() {
+        EmbeddingModel embeddings = embeddingModel.get();
+        return timings.phase("web-cache", () -> {
+            WebSearchEngine engine = webSearchEngine != null
+                    ? webSearchEngine
+                    : TavilyWebSearchEngine.builder()
+                            .apiKey(System.getenv(TAVILY_KEY))
+                            .build();
+            CachingWebSearchEngine.Builder cache = CachingWebSearchEngine.builder()
+                    .delegate(engine)
+                    .ttl(Duration.ofHours(6));
+            if (!(engine instanceof StubWebSearchEngine)) {
+                cache.localIndex(embeddings);
+                if (webCachePersistence != null) {
+                    cache.persistence(webCachePersistence);
+                }
+            }
+            return cache.build();
+        });
+    }
+
+    /**
+     * Routeur du mode configuré (hors mode naïf, qui interroge toujours son unique document).
+     */
+    private QueryRouter buildRouter() {
+        MultiSourceRetriever retriever = documents.get();
+        List<ContentRetriever> sources = new ArrayList<>();
+        for (RagConfig.Document document : config.documents()) {
+            ContentRetriever source = retriever.source(document.name());
+            sources.add(source);
+            sourceNames.put(source, document.name());
+        }
+        if (config.mode() == RagConfig.Mode.EMBEDDING_ROUTED) {
+            // Chaque document est résumé par quelques centroïdes : le choix de la source
+            // ne coûte pas d'appel au LLM
+            Map<Path, MappedEmbeddingStore> ingested = stores.get();
+            EmbeddingModel embeddings = embeddingModel.get();
+            return timings.phase("router", () -> {
+                EmbeddingQueryRouter.Builder builder = EmbeddingQueryRouter.builder()
+                        .embeddingModel(embeddings)
+                        .margin(config.routingMargin())
+                        .minSimilarity(config.routingMinSimilarity());
+                for (int i = 0; i < sources.size(); i++) {
+                    RagConfig.Document document = config.documents().get(i);
+                    builder.source(document.label(), sources.get(i), ingested.get(document.path()), CENTROIDS_PER_SOURCE);
+                }
+                return builder.build();
+            });
+        }
+        if (config.mode() == RagConfig.Mode.WEB) {
+            // Le Web a la latence la plus dispersée : passé son délai, la réponse est construite sans lui
+            ContentRetriever web = fanOut.withDeadline(WEB_SOURCE,
+                    metrics.retriever(WEB_SOURCE, webCache.get().retriever(config.webMaxResults())),
+                    config.webDeadline());
+            sources.add(web);
+            sourceNames.put(web, WEB_SOURCE);
+        }
+        // RAG ou pas : décision locale par embeddings, le LLM n'est consulté que pour les questions ambiguës
+        EmbeddingModel embeddings = embeddingModel.get();
+        return timings.phase("router", () -> new NoRagQueryRouter(model,
+                PrototypeClassifier.intelligenceArtificielle(embeddings), sources));
+    }
+
+    /**
+     * Route la question et mémorise la décision pour l'augmenteur (même thread).
+     *
+     * @return Les sources choisies, triées ("" : pas de RAG)
+     */
+    private String scopeOf(String question) {
+        Collection<ContentRetriever> routed = router.get().route(Query.from(question));
+        routedAhead.set(new RoutingDecision(question, routed));
+        return routed.stream().map(sourceNames::get).sorted().collect(Collectors.joining("+"));
+    }
+
+    /**
+     * Reprend la décision de {@link #scopeOf} pour la même question plutôt que de router
+     * une seconde fois (le routage peut coûter un appel au LLM).
+     */
+    private QueryRouter reusingDecision(QueryRouter router) {
+        return query -> {
+            RoutingDecision decision = routedAhead.get();
+            if (decision != null && decision.question().equals(query.text())) {
+                routedAhead.remove();
+                return decision.routed();
+            }
+            return router.route(query);
+        };
+    }
+
+    private record RoutingDecision(String question, Collection<ContentRetriever> routed) {
+    }
+
+    private RetrievalAugmentor buildAugmentor() {
+        RetrievalAugmentor built;
+        if (config.mode() == RagConfig.Mode.NAIVE) {
+            built = buildNaiveAugmentor();
+        } else {
+            QueryRouter queryRouter = observed(reusingDecision(router.get()));
+            if (config.mode() == RagConfig.Mode.WEB) {
+                // La recherche Web démarre dès l'arrivée de la question, en parallèle du routage
+                queryRouter = webCache.get().prefetching(queryRouter, config.webMaxResults());
+            }
+            // Doublons écartés, segments reclassés si demandé, et contexte plafonné avant l'appel au modèle
+            BudgetedContentAggregator.Builder aggregator = BudgetedContentAggregator.builder()
+                    .maxTokens(config.contextMaxTokens());
+            if (config.rerank()) {
+                aggregator.reranker(reranker.get());
+            }
+            built = DefaultRetrievalAugmentor.builder()
+                    .queryRouter(metrics.router(documents.get().router(queryRouter)))
+                    .contentAggregator(aggregator.build())
+                    .executor(fanOut.executor())
+                    .build();
+        }
+        timings.ready();
+        LOGGER.info(timings.toString());
+        return metrics.augmentor(built);
+    }
+
+    /**
+     * Reclassement par le cross-encoder ONNX configuré ({@code rerank.model}).
+     */
+    private ContentReranker buildReranker() {
+        ScoringModel scoringModel = timings.phase("reranker",
+                () -> ScoringModels.crossEncoder(config.rerankModel(), config.rerankTokenizer()));
+        return ContentReranker.builder()
+                .scoringModel(scoringModel)
+                .minScore(config.rerankMinScore())
+                .maxResults(config.rerankMaxResults())
+                .cpuBudget(config.rerankCpuBudget())
+                .metrics(metrics)
+                .build();
+    }
+
+    /**
+     * Référence : premier document seul, retriever vectoriel par défaut sur un graphe HNSW
+     * (ou sur l'index quantifié avec {@code index.quantization}).
+     */
+    private RetrievalAugmentor buildNaiveAugmentor() {
+        RagConfig.Document document = config.documents().get(0);
+        EmbeddingModel embeddings = embeddingModel.get();
+        MappedEmbeddingStore store = stores.get().get(document.path());
+        EmbeddingStore<TextSegment> index = timings.phase("index", () -> {
+            if (config.quantization() != null) {
+                return QuantizedEmbeddingStore.builder()
+                        .source(store)
+                        .quantization(config.quantization())
+                        .build();
+            }
+            HnswEmbeddingStore graph = HnswEmbeddingStore.indexOf(store);
+            graph.efSearch(config.efSearch());
+            return graph;
+        });
+        ContentRetriever retriever = metrics.retriever(document.path().getFileName().toString(),
+                EmbeddingStoreContentRetriever.builder()
+                        .embeddingStore(index)
+                        .embeddingModel(embeddings)
+                        .maxResults(config.maxResults())
+                        .minScore(config.minScore())
+                        .build());
+        sourceNames.put(retriever, document.name());
+        return DefaultRetrievalAugmentor.builder()
+                .queryRouter(observed(new DefaultQueryRouter(retriever)))
+                .build();
+    }
+
+    /**
+     * Transmet à {@code routingListener} les sources choisies pour chaque question.
+     */
+    private QueryRouter observed(QueryRouter router) {
+        if (routingListener == null) {
+            return router;
+        }
+        return query -> {
+            Collection<ContentRetriever> routed = router.route(query);
+            routingListener.accept(query.text(), routed.stream().map(sourceNames::get).toList());
+            return routed;
+        };
+    }
+
+    @Override
+    public void close() {
+        background.shutdownNow();
+        webCache.ifBuilt(CachingWebSearchEngine::close);
+        reranker.ifBuilt(ContentReranker::close);
+        fanOut.close();
+        model.close();
+    }
+
+    public static class Builder {
+        private RagConfig config;
+        private String apiKey;
+        private ChatModel chatModel;
+        private StreamingChatModel streamingChatModel;
+        private WebSearchEngine webSearchEngine;
+        private Path webCachePersistence = MappedEmbeddingStore.DEFAULT_INDEX_ROOT.resolve("web-cache.bin");
+        private BiConsumer<String, List<String>> routingListener;
+        private RagMetrics metrics;
+
+        public Builder config(RagConfig config) {
+            this.config = config;
+            return this;
+        }
+
+        /**
+         * @param apiKey Clé Gemini, pour les modèles non fournis explicitement
+         */
+        public Builder apiKey(String apiKey) {
+            this.apiKey = apiKey;
+            return this;
+        }
+
+        /**
+         * @param chatModel Modèle remplaçant Gemini (toujours protégé par {@link ResilientChatModel})
+         */
+        public Builder chatModel(ChatModel chatModel) {
+            this.chatModel = chatModel;
+            return this;
+        }
+
+        /**
+         * @param streamingChatModel Modèle en flux remplaçant Gemini (protégé par le même
+         *                           {@link ResilientChatModel} que le modèle de chat)
+         */
+        public Builder streamingChatModel(StreamingChatModel streamingChatModel) {
+            this.streamingChatModel = streamingChatModel;
+            return this;
+        }
+
+        /**
+         * @param webSearchEngine Moteur remplaçant Tavily en mode {@code web} (seul moyen
+         *                        d'utiliser {@link StubWebSearchEngine})
+         */
+        public Builder webSearchEngine(WebSearchEngine webSearchEngine) {
+            this.webSearchEngine = webSearchEngine;
+            return this;
+        }
+
+        /**
+         * @param webCachePersistence Fichier du cache Web (null : cache en mémoire seulement)
+         */
+        public Builder webCachePersistence(Path webCachePersistence) {
+            this.webCachePersistence = webCachePersistence;
+            return this;
+        }
+
+        /**
+         * @param routingListener Reçoit chaque question et le nom des sources choisies
+         *                        (liste vide : réponse sans RAG)
+         */
+        public Builder routingListener(BiConsumer<String, List<String>> routingListener) {
+            this.routingListener = routingListener;
+            return this;
+        }
+
+        public Builder metrics(RagMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Crée le moteur et, si la configuration le demande, lance le chargement en arrière-plan.
+         */
+        public RagEngine build() {
+            RagEngine engine = new RagEngine(this);
+            LOGGER.info("Moteur RAG : " + engine.config);
+            if (engine.config.warmup()) {
+                engine.warmup();
+            }
+            return engine;
+        }
+    }
+}
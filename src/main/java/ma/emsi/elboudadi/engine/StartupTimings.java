@@ -0,0 +1,80 @@
+package ma.emsi.elboudadi.engine;
+
+import ma.emsi.elboudadi.metrics.RagMetrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Durée de chaque phase du démarrage (modèles, ingestion, index, routeur...).
+ *
+ * Les phases s'exécutent en parallèle : leur somme dépasse le temps écoulé, que
+ * {@link #toString()} affiche à part, avec l'instant où la console a été ouverte.
+ * Chaque phase est aussi enregistrée dans {@link RagMetrics} sous {@code startup.<phase>}.
+ */
+public final class StartupTimings {
+
+    public static final String PREFIX = "startup.";
+
+    private final long startedAt = System.nanoTime();
+    private final RagMetrics metrics;
+    /** Fin de chaque phase, relative au démarrage, et durée */
+    private final Map<String, long[]> phases = new ConcurrentHashMap<>();
+    private volatile long interactiveAt;
+    private volatile long readyAt;
+
+    StartupTimings(RagMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    <T> T phase(String name, Supplier<T> action) {
+        long start = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            long end = System.nanoTime();
+            phases.put(name, new long[]{end - startedAt, end - start});
+            metrics.latency(PREFIX + name).recordNanos(end - start);
+        }
+    }
+
+    /**
+     * La console (ou le serveur) accepte des questions.
+     */
+    public void interactive() {
+        interactiveAt = System.nanoTime() - startedAt;
+    }
+
+    /**
+     * Tous les composants sont construits.
+     */
+    void ready() {
+        readyAt = System.nanoTime() - startedAt;
+    }
+
+    /**
+     * @return La durée d'une phase, en millisecondes (-1 si elle n'a pas eu lieu)
+     */
+    public double millis(String phase) {
+        long[] timing = phases.get(phase);
+        return timing == null ? -1 : timing[1] / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        String detail = phases.entrySet().stream()
+                .sorted(Map.Entry.comparingByValue((a, b) -> Long.compare(a[0], b[0])))
+                .map(e -> String.format("%s %.0f ms", e.getKey(), e.getValue()[1] / 1e6))
+                .collect(Collectors.joining(", "));
+        StringBuilder report = new StringBuilder("Démarrage : ").append(detail);
+        if (interactiveAt > 0) {
+            report.append(String.format(" | questions acceptées après %.0f ms", interactiveAt / 1e6));
+        }
+        if (readyAt > 0) {
+            report.append(String.format(" | prêt après %.0f ms", readyAt / 1e6));
+        }
+        return report.toString();
+    }
+}
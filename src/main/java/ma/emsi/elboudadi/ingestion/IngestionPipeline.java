@@ -0,0 +1,481 @@
+package ma.emsi.elboudadi.ingestion;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.HuggingFaceTokenCountEstimator;
+import ma.emsi.elboudadi.model.EmbeddingModels;
+import ma.emsi.elboudadi.store.CorpusFingerprint;
+import ma.emsi.elboudadi.store.MappedEmbeddingStore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Pipeline d'ingestion incrémental et parallèle du corpus {@code docs/}.
+ *
+ * Les étapes sont découplées par des files bornées :
+ * <pre>
+ *  chargement + découpage (N threads) → [lots de segments] → embeddings (2 threads)
+ *                                      → [lots calculés]    → écriture (1 thread)
+ * </pre>
+ * Les PDF sont analysés en parallèle, page par page ({@link PdfSplitter}) : leurs
+ * segments partent vers les embeddings dès qu'un lot est complet, sans charger le
+ * document entier. Les autres formats (ou un {@code documentSplitter} explicite)
+ * passent par le chargeur et le découpeur de LangChain4j. Les segments sont calculés
+ * par lots : la session ONNX du modèle répartit déjà chaque lot sur tous les cœurs,
+ * deux threads suffisent à l'alimenter sans interruption. Chaque lot est numéroté et
+ * l'écriture remet les lots dans l'ordre du document, quel que soit l'ordre de fin
+ * des calculs.
+ *
+ * Chaque document dispose de son propre index persistant ({@link MappedEmbeddingStore})
+ * nommé d'après son empreinte, le paramétrage du découpage et le modèle d'embedding
+ * (classe et dimension). Un fichier {@value #MANIFEST_FILE} mémorise l'empreinte de
+ * chaque document au dernier passage : seuls les documents dont le contenu a changé
+ * sont ré-ingérés, et l'index périmé est supprimé une fois le nouveau écrit.
+ */
+public class IngestionPipeline {
+
+    private static final Logger LOGGER = Logger.getLogger(IngestionPipeline.class.getName());
+
+    public static final String MANIFEST_FILE = "manifest.properties";
+
+    private final Path indexRoot;
+    private final EmbeddingModel embeddingModel;
+    private final DocumentSplitter documentSplitter;
+    private final PdfSplitter pdfSplitter;
+    private final int parserThreads;
+    private final int embedderThreads;
+    private final int batchSize;
+    private final int queueCapacity;
+
+    private IngestionPipeline(Builder builder) {
+        this.indexRoot = Objects.requireNonNull(builder.indexRoot, "Le répertoire des index ne peut pas être null");
+        this.embeddingModel = builder.embeddingModel != null ? builder.embeddingModel : EmbeddingModels.uncached();
+        this.documentSplitter = builder.documentSplitter != null
+                ? builder.documentSplitter
+                : DocumentSplitters.recursive(300, 30, new HuggingFaceTokenCountEstimator());
+        this.pdfSplitter = builder.pdfSplitter != null || builder.documentSplitter != null
+                ? builder.pdfSplitter
+                : PdfSplitter.builder().build();
+        this.parserThreads = builder.parserThreads;
+        this.embedderThreads = builder.embedderThreads;
+        this.batchSize = builder.batchSize;
+        this.queueCapacity = builder.queueCapacity;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Ouvre l'index de chaque document, en ré-ingérant uniquement ceux qui ont changé.
+     *
+     * @param documents Les documents du corpus
+     * @return Un magasin par document, dans l'ordre des documents donnés
+     */
+    public Map<Path, MappedEmbeddingStore> ingest(List<Path> documents) {
+        long start = System.nanoTime();
+        Properties manifest = readManifest();
+        Map<Path, MappedEmbeddingStore> stores = new LinkedHashMap<>();
+        List<Job> jobs = new ArrayList<>();
+        List<Path> stale = new ArrayList<>();
+        String model = modelSignature();
+
+        for (Path document : documents) {
+            String key = manifestKey(document);
+            String fingerprint = pageSplit(document)
+                    ? CorpusFingerprint.of(document) + "-" + pdfSplitter.signature() + "-" + model
+                    : CorpusFingerprint.of(document) + "-" + model;
+            Path directory = indexRoot.resolve(fingerprint);
+            String previous = manifest.getProperty(key);
+            if (previous != null && !previous.equals(fingerprint)) {
+                stale.add(indexRoot.resolve(previous));
+            }
+            manifest.setProperty(key, fingerprint);
+
+            if (MappedEmbeddingStore.exists(directory)) {
+                stores.put(document, MappedEmbeddingStore.open(directory));
+            } else {
+                Job job = new Job(document, directory);
+                jobs.add(job);
+                stores.put(document, job.store);
+            }
+        }
+
+        if (!jobs.isEmpty()) {
+            LOGGER.info("Ingestion de " + jobs.size() + " document(s) modifié(s) sur " + documents.size());
+            run(jobs);
+        }
+        // L'ancien index n'est supprimé qu'une fois le nouveau écrit : un échec le laisse intact
+        stale.forEach(IngestionPipeline::deleteIndex);
+        writeManifest(manifest);
+        LOGGER.info(String.format("Corpus prêt en %d ms (%d document(s) ré-ingéré(s))",
+                (System.nanoTime() - start) / 1_000_000, jobs.size()));
+        return stores;
+    }
+
+    private void run(List<Job> jobs) {
+        BlockingQueue<Batch> toEmbed = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Batch> toStore = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        ExecutorService parsers = Executors.newFixedThreadPool(Math.min(parserThreads, jobs.size()));
+        ExecutorService embedders = Executors.newFixedThreadPool(embedderThreads);
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        try {
+            List<CompletableFuture<Void>> parsing = new ArrayList<>();
+            for (Job job : jobs) {
+                parsing.add(CompletableFuture.runAsync(() -> parse(job, toEmbed, failure), parsers));
+            }
+            for (int i = 0; i < embedderThreads; i++) {
+                embedders.execute(() -> embed(toEmbed, toStore, failure));
+            }
+            Future<?> writing = writer.submit(() -> write(toStore, failure));
+
+            CompletableFuture.allOf(parsing.toArray(CompletableFuture[]::new)).join();
+            for (int i = 0; i < embedderThreads; i++) {
+                putUninterruptibly(toEmbed, Batch.POISON);
+            }
+            await(writing);
+        } finally {
+            parsers.shutdownNow();
+            embedders.shutdownNow();
+            writer.shutdownNow();
+        }
+
+        if (failure.get() != null) {
+            throw new IllegalStateException("Échec de l'ingestion : " + failure.get().getMessage(), failure.get());
+        }
+    }
+
+    /**
+     * Identifie le modèle d'embedding (classe et dimension) : des vecteurs calculés par
+     * un autre modèle ne sont pas comparables, l'index doit être reconstruit.
+     */
+    private String modelSignature() {
+        return embeddingModel.getClass().getSimpleName() + "-" + embeddingModel.dimension();
+    }
+
+    private boolean pageSplit(Path document) {
+        return pdfSplitter != null && document.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".pdf");
+    }
+
+    /**
+     * Étape 1 : chargement et découpage d'un document, envoyé par lots à l'étape suivante.
+     */
+    private void parse(Job job, BlockingQueue<Batch> toEmbed, AtomicReference<Throwable> failure) {
+        try {
+            if (pageSplit(job.source)) {
+                parsePages(job, toEmbed, failure);
+                return;
+            }
+            Document document = FileSystemDocumentLoader.loadDocument(job.source);
+            List<TextSegment> segments = documentSplitter.split(document);
+            for (int from = 0; from < segments.size() && failure.get() == null; from += batchSize) {
+                List<TextSegment> batch = segments.subList(from, Math.min(from + batchSize, segments.size()));
+                job.pending.incrementAndGet();
+                putUninterruptibly(toEmbed, new Batch(job, job.batches++, new ArrayList<>(batch), null));
+            }
+        } catch (RuntimeException | Error e) {
+            // Une erreur non signalée laisserait release() persister un index tronqué
+            LOGGER.log(Level.SEVERE, "Erreur lors de l'analyse de " + job.source, e);
+            failure.compareAndSet(null, e);
+        } finally {
+            release(job, failure);
+        }
+    }
+
+    /**
+     * Découpage d'un PDF au fil des pages : chaque lot part dès qu'il est complet.
+     */
+    private void parsePages(Job job, BlockingQueue<Batch> toEmbed, AtomicReference<Throwable> failure) {
+        List<TextSegment> batch = new ArrayList<>(batchSize);
+        pdfSplitter.split(job.source, segment -> {
+            if (failure.get() != null) {
+                throw new IllegalStateException("Ingestion abandonnée après une erreur");
+            }
+            batch.add(segment);
+            if (batch.size() == batchSize) {
+                job.pending.incrementAndGet();
+                putUninterruptibly(toEmbed, new Batch(job, job.batches++, new ArrayList<>(batch), null));
+                batch.clear();
+            }
+        });
+        if (!batch.isEmpty() && failure.get() == null) {
+            job.pending.incrementAndGet();
+            putUninterruptibly(toEmbed, new Batch(job, job.batches++, batch, null));
+        }
+    }
+
+    /**
+     * Étape 2 : calcul des embeddings d'un lot complet en un seul appel au modèle.
+     * Le thread d'écriture attend la fin de chaque embedder : elle lui est signalée
+     * quoi qu'il arrive, même si le thread s'arrête sur une erreur inattendue.
+     */
+    private void embed(BlockingQueue<Batch> toEmbed, BlockingQueue<Batch> toStore, AtomicReference<Throwable> failure) {
+        try {
+            while (true) {
+                Batch batch = takeUninterruptibly(toEmbed);
+                if (batch == Batch.POISON) {
+                    return;
+                }
+                try {
+                    if (failure.get() == null) {
+                        List<Embedding> embeddings = embeddingModel.embedAll(batch.segments).content();
+                        putUninterruptibly(toStore, new Batch(batch.job, batch.sequence, batch.segments, embeddings));
+                        continue;
+                    }
+                } catch (RuntimeException | Error e) {
+                    LOGGER.log(Level.SEVERE, "Erreur lors du calcul des embeddings de " + batch.job.source, e);
+                    failure.compareAndSet(null, e);
+                }
+                // Lot abandonné : on libère quand même le document pour ne pas bloquer la fin du pipeline
+                release(batch.job, failure);
+            }
+        } finally {
+            putUninterruptibly(toStore, Batch.POISON);
+        }
+    }
+
+    /**
+     * Étape 3 : écriture des lots dans le magasin de leur document, dans l'ordre de leur
+     * numéro, puis persistance du document dès que son dernier lot est écrit.
+     *
+     * Un lot calculé avant un lot précédent du même document attend son tour. Après
+     * l'abandon d'un lot, les suivants ne sont plus écrits : l'ingestion a échoué et le
+     * document ne sera pas persisté.
+     */
+    private void write(BlockingQueue<Batch> toStore, AtomicReference<Throwable> failure) {
+        int remainingEmbedders = embedderThreads;
+        while (remainingEmbedders > 0) {
+            Batch batch = takeUninterruptibly(toStore);
+            if (batch == Batch.POISON) {
+                remainingEmbedders--;
+                continue;
+            }
+            Job job = batch.job;
+            job.early.put(batch.sequence, batch);
+            for (Batch next; (next = job.early.remove(job.written)) != null; job.written++) {
+                try {
+                    job.store.addAll(next.embeddings, next.segments);
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.SEVERE, "Erreur lors de l'écriture de " + job.source, e);
+                    failure.compareAndSet(null, e);
+                }
+                release(job, failure);
+            }
+        }
+    }
+
+    /**
+     * Libère un jeton du document ; le dernier jeton libéré persiste son index.
+     */
+    private static void release(Job job, AtomicReference<Throwable> failure) {
+        if (job.pending.decrementAndGet() != 0 || failure.get() != null) {
+            return;
+        }
+        try {
+            job.store.save(job.directory);
+            LOGGER.info(job.store.size() + " segments indexés pour " + job.source.getFileName());
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Erreur lors de la persistance de " + job.source, e);
+            failure.compareAndSet(null, e);
+        }
+    }
+
+    private static String manifestKey(Path document) {
+        return document.toAbsolutePath().normalize().toString();
+    }
+
+    private Properties readManifest() {
+        Properties manifest = new Properties();
+        Path file = indexRoot.resolve(MANIFEST_FILE);
+        if (Files.isRegularFile(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                manifest.load(in);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Manifeste illisible, ré-ingestion complète", e);
+            }
+        }
+        return manifest;
+    }
+
+    private void writeManifest(Properties manifest) {
+        try {
+            Files.createDirectories(indexRoot);
+            try (OutputStream out = Files.newOutputStream(indexRoot.resolve(MANIFEST_FILE))) {
+                manifest.store(out, "Empreinte SHA-256 de chaque document au dernier passage");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Impossible d'écrire le manifeste", e);
+        }
+    }
+
+    private static void deleteIndex(Path directory) {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+            LOGGER.info("Index périmé supprimé : " + directory);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Impossible de supprimer l'index périmé " + directory, e);
+        }
+    }
+
+    private static void await(Future<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ingestion interrompue", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Échec de l'écriture des index", e.getCause());
+        }
+    }
+
+    private static <T> void putUninterruptibly(BlockingQueue<T> queue, T element) {
+        try {
+            queue.put(element);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ingestion interrompue", e);
+        }
+    }
+
+    private static <T> T takeUninterruptibly(BlockingQueue<T> queue) {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ingestion interrompue", e);
+        }
+    }
+
+    /**
+     * Un document à ré-ingérer. {@code pending} compte les lots non encore écrits,
+     * plus un jeton tenu par l'étape de découpage tant qu'elle n'est pas terminée.
+     */
+    private static final class Job {
+        final Path source;
+        final Path directory;
+        final MappedEmbeddingStore store = new MappedEmbeddingStore();
+        final AtomicInteger pending = new AtomicInteger(1);
+        /** Numéro du prochain lot découpé (étape de découpage) */
+        int batches;
+        /** Numéro du prochain lot à écrire (thread d'écriture) */
+        int written;
+        /** Lots calculés avant l'un de leurs prédécesseurs (thread d'écriture) */
+        final Map<Integer, Batch> early = new HashMap<>();
+
+        Job(Path source, Path directory) {
+            this.source = source;
+            this.directory = directory;
+        }
+    }
+
+    /**
+     * @param sequence Rang du lot dans son document
+     */
+    private record Batch(Job job, int sequence, List<TextSegment> segments, List<Embedding> embeddings) {
+        static final Batch POISON = new Batch(null, -1, List.of(), List.of());
+    }
+
+    public static class Builder {
+        private Path indexRoot = MappedEmbeddingStore.DEFAULT_INDEX_ROOT;
+        private EmbeddingModel embeddingModel;
+        private DocumentSplitter documentSplitter;
+        private PdfSplitter pdfSplitter;
+        private int parserThreads = Runtime.getRuntime().availableProcessors();
+        private int embedderThreads = 2;
+        private int batchSize = 32;
+        private int queueCapacity = 64;
+
+        public Builder indexRoot(Path indexRoot) {
+            this.indexRoot = indexRoot;
+            return this;
+        }
+
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        /**
+         * @param documentSplitter Découpeur de tous les documents, PDF compris (sauf {@link #pdfSplitter} explicite)
+         */
+        public Builder documentSplitter(DocumentSplitter documentSplitter) {
+            this.documentSplitter = documentSplitter;
+            return this;
+        }
+
+        /**
+         * @param pdfSplitter Découpeur des PDF, page par page ; par défaut 300 jetons, 30 de recouvrement
+         */
+        public Builder pdfSplitter(PdfSplitter pdfSplitter) {
+            this.pdfSplitter = pdfSplitter;
+            return this;
+        }
+
+        public Builder parserThreads(int parserThreads) {
+            this.parserThreads = Math.max(1, parserThreads);
+            return this;
+        }
+
+        /**
+         * @param embedderThreads Lots calculés simultanément ; chaque appel au modèle ONNX
+         *                        occupe déjà tous les cœurs, au-delà de 2 les threads se
+         *                        disputent les mêmes cœurs
+         */
+        public Builder embedderThreads(int embedderThreads) {
+            this.embedderThreads = Math.max(1, embedderThreads);
+            return this;
+        }
+
+        public Builder batchSize(int batchSize) {
+            this.batchSize = Math.max(1, batchSize);
+            return this;
+        }
+
+        public Builder queueCapacity(int queueCapacity) {
+            this.queueCapacity = Math.max(1, queueCapacity);
+            return this;
+        }
+
+        public IngestionPipeline build() {
+            return new IngestionPipeline(this);
+        }
+    }
+}
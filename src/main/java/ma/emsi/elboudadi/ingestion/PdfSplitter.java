@@ -0,0 +1,508 @@
+package ma.emsi.elboudadi.ingestion;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.TokenCountEstimator;
+import dev.langchain4j.model.embedding.onnx.HuggingFaceTokenCountEstimator;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.text.BreakIterator;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Découpe un PDF en segments au fil de la lecture, page par page.
+ *
+ * Le texte des pages est extrait en parallèle avec PDFBox, par plages de
+ * {@code pagesPerTask} pages. PDFBox n'est pas sûr entre threads : chaque thread
+ * d'extraction ouvre sa propre instance du document, une seule fois, et la garde pour
+ * toutes ses plages ; l'instance ouverte pour compter les pages sert au premier
+ * d'entre eux. Les plages sont consommées dans l'ordre, avec au plus deux plages
+ * d'avance par thread : seul ce texte est en mémoire, jamais le document entier, et
+ * chaque segment est transmis dès qu'il est complet.
+ *
+ * Le découpage suit la structure : un titre (ligne courte numérotée ou en capitales)
+ * ferme le segment en cours et ouvre une section ; les paragraphes sont regroupés
+ * jusqu'à {@code maxTokens} jetons, un paragraphe trop long est coupé aux fins de
+ * phrase. Deux segments consécutifs d'une même section partagent leurs dernières
+ * phrases, dans la limite de {@code overlapTokens} jetons.
+ *
+ * Chaque segment porte le nom du fichier, ses pages de début et de fin, le titre
+ * de sa section et son rang dans le document.
+ */
+public class PdfSplitter {
+
+    public static final String FILE_NAME = "file_name";
+    public static final String PAGE = "page_number";
+    public static final String LAST_PAGE = "page_end";
+    public static final String SECTION = "section";
+    public static final String INDEX = "index";
+
+    /** Titre numéroté ("2.3 Architecture", "IV. Résultats", "Chapitre 3 ...") */
+    private static final Pattern NUMBERED_HEADING = Pattern.compile(
+            "^(\\d+(\\.\\d+)*\\.?|[IVXLC]+\\.|(?i:chapitre|chapter|partie|part|section|annexe|appendix)\\s+\\S+)\\s+\\p{Lu}.*");
+    private static final Pattern BLANK_LINES = Pattern.compile("\\n\\s*\\n");
+    private static final int MAX_HEADING_LENGTH = 80;
+    private static final int MAX_HEADING_WORDS = 12;
+
+    private final int maxTokens;
+    private final int overlapTokens;
+    private final TokenCountEstimator tokenCountEstimator;
+    private final int threads;
+    private final int pagesPerTask;
+
+    private PdfSplitter(Builder builder) {
+        this.maxTokens = builder.maxTokens;
+        this.overlapTokens = Math.min(builder.overlapTokens, builder.maxTokens / 2);
+        this.tokenCountEstimator = builder.tokenCountEstimator != null
+                ? builder.tokenCountEstimator
+                : new HuggingFaceTokenCountEstimator();
+        this.threads = builder.threads;
+        this.pagesPerTask = builder.pagesPerTask;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Découpe un PDF et transmet les segments, dans l'ordre du document, au fur et à mesure.
+     *
+     * @param pdf  Le fichier à découper
+     * @param sink Destinataire des segments, appelé dans le thread appelant
+     * @return Le nombre de segments produits
+     */
+    public int split(Path pdf, Consumer<TextSegment> sink) {
+        Objects.requireNonNull(pdf, "Le fichier ne peut pas être null");
+        Objects.requireNonNull(sink, "Le destinataire des segments ne peut pas être null");
+        try (Documents documents = new Documents(pdf)) {
+            int pages = documents.pages();
+            Segmenter segmenter = new Segmenter(pdf.getFileName().toString(), sink);
+            int tasks = (pages + pagesPerTask - 1) / pagesPerTask;
+            if (tasks <= 1 || threads == 1) {
+                for (int first = 1; first <= pages; first += pagesPerTask) {
+                    segmenter.pages(first, extract(documents, first, Math.min(pages, first + pagesPerTask - 1)));
+                }
+                return segmenter.finish();
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, tasks));
+            try {
+                Deque<Future<List<String>>> window = new ArrayDeque<>();
+                int next = 1;
+                int ahead = 2 * Math.min(threads, tasks);
+                for (int first = 1; first <= pages; first += pagesPerTask) {
+                    while (window.size() < ahead && next <= pages) {
+                        int from = next;
+                        int to = Math.min(pages, next + pagesPerTask - 1);
+                        window.add(executor.submit(() -> extract(documents, from, to)));
+                        next = to + 1;
+                    }
+                    segmenter.pages(first, await(window.poll(), pdf));
+                }
+                return segmenter.finish();
+            } finally {
+                // Les documents ne sont fermés qu'une fois toutes les extractions arrêtées
+                executor.shutdownNow();
+                executor.close();
+            }
+        }
+    }
+
+    /**
+     * Identifie le paramétrage : un index produit avec d'autres réglages doit être reconstruit.
+     */
+    public String signature() {
+        return "pdf" + maxTokens + "-" + overlapTokens;
+    }
+
+    /**
+     * @return Le texte de chaque page de la plage, extrait par l'instance du document
+     *         propre au thread courant
+     */
+    private static List<String> extract(Documents documents, int from, int to) {
+        try {
+            PDDocument document = documents.current();
+            PDFTextStripper stripper = new PDFTextStripper();
+            stripper.setSortByPosition(true);
+            stripper.setLineSeparator("\n");
+            // Une ligne vide entre deux paragraphes détectés par PDFBox
+            stripper.setParagraphEnd("\n");
+            List<String> texts = new ArrayList<>(to - from + 1);
+            for (int page = from; page <= to; page++) {
+                stripper.setStartPage(page);
+                stripper.setEndPage(page);
+                texts.add(stripper.getText(document));
+            }
+            return texts;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Impossible d'extraire les pages " + from + "-" + to + " de " + documents.pdf, e);
+        }
+    }
+
+    /**
+     * Instances ouvertes d'un même PDF, une par thread d'extraction.
+     */
+    private static final class Documents implements AutoCloseable {
+        private final Path pdf;
+        private final int pages;
+        /** Instance ouverte pour compter les pages, en attente d'un premier thread */
+        private final AtomicReference<PDDocument> spare;
+        private final ThreadLocal<PDDocument> perThread = new ThreadLocal<>();
+        private final Queue<PDDocument> opened = new ConcurrentLinkedQueue<>();
+
+        Documents(Path pdf) {
+            this.pdf = pdf;
+            PDDocument first = open();
+            this.pages = first.getNumberOfPages();
+            this.spare = new AtomicReference<>(first);
+        }
+
+        int pages() {
+            return pages;
+        }
+
+        PDDocument current() {
+            PDDocument document = perThread.get();
+            if (document == null) {
+                document = spare.getAndSet(null);
+                if (document == null) {
+                    document = open();
+                }
+                perThread.set(document);
+            }
+            return document;
+        }
+
+        private PDDocument open() {
+            try {
+                PDDocument document = Loader.loadPDF(pdf.toFile());
+                opened.add(document);
+                return document;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Impossible d'ouvrir " + pdf, e);
+            }
+        }
+
+        @Override
+        public void close() {
+            IOException failure = null;
+            for (PDDocument document : opened) {
+                try {
+                    document.close();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            if (failure != null) {
+                throw new UncheckedIOException("Impossible de fermer " + pdf, failure);
+            }
+        }
+    }
+
+    private static List<String> await(Future<List<String>> future, Path pdf) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Découpage interrompu : " + pdf, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException("Échec de l'extraction de " + pdf, e.getCause());
+        }
+    }
+
+    static boolean isHeading(String line) {
+        if (line.length() < 3 || line.length() > MAX_HEADING_LENGTH) {
+            return false;
+        }
+        char last = line.charAt(line.length() - 1);
+        if (".,;:!?".indexOf(last) >= 0 || line.split("\\s+").length > MAX_HEADING_WORDS) {
+            return false;
+        }
+        if (NUMBERED_HEADING.matcher(line).matches()) {
+            return true;
+        }
+        int letters = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (Character.isLetter(c)) {
+                if (Character.isLowerCase(c)) {
+                    return false;
+                }
+                letters++;
+            }
+        }
+        return letters >= 3;
+    }
+
+    /**
+     * Assemble les paragraphes en segments ; utilisé par un seul thread, dans l'ordre des pages.
+     */
+    private final class Segmenter {
+        private final String fileName;
+        private final Consumer<TextSegment> sink;
+        private final List<String> parts = new ArrayList<>();
+        private int tokens;
+        /** Le segment en cours contient autre chose que le recouvrement et le titre */
+        private boolean fresh;
+        private int firstPage;
+        private int lastPage;
+        private String section;
+        private int index;
+
+        Segmenter(String fileName, Consumer<TextSegment> sink) {
+            this.fileName = fileName;
+            this.sink = sink;
+        }
+
+        void pages(int first, List<String> texts) {
+            for (int i = 0; i < texts.size(); i++) {
+                page(first + i, texts.get(i));
+            }
+        }
+
+        private void page(int page, String text) {
+            for (String block : BLANK_LINES.split(text)) {
+                StringBuilder paragraph = new StringBuilder();
+                for (String rawLine : block.split("\\n")) {
+                    String line = rawLine.strip();
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    if (isHeading(line)) {
+                        paragraph(paragraph, page);
+                        heading(line, page);
+                        continue;
+                    }
+                    if (paragraph.length() > 0 && paragraph.charAt(paragraph.length() - 1) == '-'
+                            && Character.isLowerCase(line.charAt(0))) {
+                        // Mot coupé en fin de ligne
+                        paragraph.setLength(paragraph.length() - 1);
+                    } else if (paragraph.length() > 0) {
+                        paragraph.append(' ');
+                    }
+                    paragraph.append(line);
+                }
+                paragraph(paragraph, page);
+            }
+        }
+
+        private void heading(String line, int page) {
+            emit(false);
+            section = line;
+            parts.add(line);
+            tokens = count(line);
+            firstPage = page;
+            lastPage = page;
+        }
+
+        private void paragraph(StringBuilder paragraph, int page) {
+            if (paragraph.length() > 0) {
+                add(paragraph.toString(), page);
+                paragraph.setLength(0);
+            }
+        }
+
+        private void add(String text, int page) {
+            int size = count(text);
+            if (size > maxTokens) {
+                for (String piece : pieces(text)) {
+                    add(piece, page);
+                }
+                return;
+            }
+            if (tokens + size > maxTokens && fresh) {
+                emit(true);
+            }
+            if (tokens + size > maxTokens) {
+                // Le recouvrement (ou le titre) ne laisse pas la place au paragraphe
+                parts.clear();
+                tokens = 0;
+            }
+            if (parts.isEmpty()) {
+                firstPage = page;
+            }
+            parts.add(text);
+            tokens += size;
+            lastPage = page;
+            fresh = true;
+        }
+
+        /**
+         * Coupe un paragraphe trop long aux fins de phrase (aux espaces pour une phrase trop longue).
+         */
+        private List<String> pieces(String text) {
+            List<String> pieces = new ArrayList<>();
+            StringBuilder current = new StringBuilder();
+            int currentTokens = 0;
+            for (String sentence : sentences(text)) {
+                int size = count(sentence);
+                if (size > maxTokens) {
+                    for (String word : sentence.split("\\s+")) {
+                        int wordTokens = count(word) + 1;
+                        if (currentTokens + wordTokens > maxTokens && current.length() > 0) {
+                            pieces.add(current.toString().strip());
+                            current.setLength(0);
+                            currentTokens = 0;
+                        }
+                        current.append(word).append(' ');
+                        currentTokens += wordTokens;
+                    }
+                    continue;
+                }
+                if (currentTokens + size > maxTokens && current.length() > 0) {
+                    pieces.add(current.toString().strip());
+                    current.setLength(0);
+                    currentTokens = 0;
+                }
+                current.append(sentence);
+                currentTokens += size;
+            }
+            if (!current.isEmpty()) {
+                pieces.add(current.toString().strip());
+            }
+            return pieces;
+        }
+
+        /**
+         * Transmet le segment en cours ; avec {@code overlap}, ses dernières phrases ouvrent le suivant.
+         */
+        private void emit(boolean overlap) {
+            if (!fresh) {
+                parts.clear();
+                tokens = 0;
+                return;
+            }
+            Metadata metadata = new Metadata()
+                    .put(FILE_NAME, fileName)
+                    .put(PAGE, firstPage)
+                    .put(LAST_PAGE, lastPage)
+                    .put(INDEX, String.valueOf(index++));
+            if (section != null) {
+                metadata.put(SECTION, section);
+            }
+            sink.accept(TextSegment.from(String.join("\n\n", parts), metadata));
+
+            String tail = overlap ? tail(parts.get(parts.size() - 1)) : "";
+            parts.clear();
+            tokens = 0;
+            fresh = false;
+            if (!tail.isEmpty()) {
+                parts.add(tail);
+                tokens = count(tail);
+                firstPage = lastPage;
+            }
+        }
+
+        /**
+         * @return Les dernières phrases du texte qui tiennent dans {@code overlapTokens}
+         */
+        private String tail(String text) {
+            if (overlapTokens == 0) {
+                return "";
+            }
+            List<String> sentences = sentences(text);
+            int budget = overlapTokens;
+            int start = sentences.size();
+            while (start > 0) {
+                int size = count(sentences.get(start - 1));
+                if (size > budget) {
+                    break;
+                }
+                budget -= size;
+                start--;
+            }
+            return String.join("", sentences.subList(start, sentences.size())).strip();
+        }
+
+        int finish() {
+            emit(false);
+            return index;
+        }
+
+        private int count(String text) {
+            return tokenCountEstimator.estimateTokenCountInText(text);
+        }
+    }
+
+    private static List<String> sentences(String text) {
+        BreakIterator iterator = BreakIterator.getSentenceInstance(Locale.FRENCH);
+        iterator.setText(text);
+        List<String> sentences = new ArrayList<>();
+        int start = iterator.first();
+        for (int end = iterator.next(); end != BreakIterator.DONE; start = end, end = iterator.next()) {
+            sentences.add(text.substring(start, end));
+        }
+        return sentences;
+    }
+
+    public static class Builder {
+        private int maxTokens = 300;
+        private int overlapTokens = 30;
+        private TokenCountEstimator tokenCountEstimator;
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private int pagesPerTask = 8;
+
+        /**
+         * @param maxTokens Taille maximale d'un segment, en jetons
+         */
+        public Builder maxTokens(int maxTokens) {
+            this.maxTokens = Math.max(16, maxTokens);
+            return this;
+        }
+
+        /**
+         * @param overlapTokens Jetons repris du segment précédent de la même section (au plus la moitié d'un segment)
+         */
+        public Builder overlapTokens(int overlapTokens) {
+            this.overlapTokens = Math.max(0, overlapTokens);
+            return this;
+        }
+
+        public Builder tokenCountEstimator(TokenCountEstimator tokenCountEstimator) {
+            this.tokenCountEstimator = tokenCountEstimator;
+            return this;
+        }
+
+        /**
+         * @param threads Threads d'extraction des pages pour un même document
+         */
+        public Builder threads(int threads) {
+            this.threads = Math.max(1, threads);
+            return this;
+        }
+
+        /**
+         * @param pagesPerTask Pages lues par tâche
+         */
+        public Builder pagesPerTask(int pagesPerTask) {
+            this.pagesPerTask = Math.max(1, pagesPerTask);
+            return this;
+        }
+
+        public PdfSplitter build() {
+            return new PdfSplitter(this);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package ma.emsi.elboudadi.lexical;
+
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.ContentMetadata;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Retriever purement lexical sur un {@link Bm25Index} : aucun appel au modèle d'embedding.
+ */
+public class Bm25ContentRetriever implements ContentRetriever {
+
+    private final Bm25Index index;
+    private final int maxResults;
+
+    public Bm25ContentRetriever(Bm25Index index, int maxResults) {
+        this.index = Objects.requireNonNull(index, "L'index lexical ne peut pas être null");
+        this.maxResults = maxResults;
+    }
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        return toContents(index, index.search(query.text(), maxResults));
+    }
+
+    /**
+     * Convertit des résultats BM25 en contenus, avec le score et l'identifiant du segment.
+     */
+    public static List<Content> toContents(Bm25Index index, List<Bm25Index.Hit> hits) {
+        List<Content> contents = new ArrayList<>(hits.size());
+        for (Bm25Index.Hit hit : hits) {
+            Map<ContentMetadata, Object> metadata = new HashMap<>();
+            metadata.put(ContentMetadata.SCORE, hit.score());
+            String id = index.id(hit.index());
+            if (id != null) {
+                metadata.put(ContentMetadata.EMBEDDING_ID, id);
+            }
+            contents.add(Content.from(index.segment(hit.index()), metadata));
+        }
+        return contents;
+    }
+}
@@ -0,0 +1,300 @@
+package ma.emsi.elboudadi.lexical;
+
+import dev.langchain4j.data.segment.TextSegment;
+import ma.emsi.elboudadi.store.MappedEmbeddingStore;
+import ma.emsi.elboudadi.store.MultiSourceEmbeddingStore;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.IntPredicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Index inversé BM25 sur les segments d'un document.
+ *
+ * Complète la recherche vectorielle là où elle est faible : les identifiants exacts
+ * (noms de classes, de méthodes, sigles) que les embeddings diluent dans le sens
+ * général de la phrase. Chaque terme pointe vers deux tableaux d'entiers triés
+ * (segments contenant le terme, nombre d'occurrences) : pas d'objet par occurrence.
+ *
+ * Un identifiant composé ({@code EmbeddingStoreContentRetriever}, {@code dev.langchain4j})
+ * est indexé tel quel et par ses parties, pour répondre aussi bien à une recherche
+ * exacte qu'à une recherche sur un seul mot.
+ */
+public final class Bm25Index {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private static final Pattern WORD = Pattern.compile("[\\p{L}\\p{N}_]+(?:\\.[\\p{L}\\p{N}_]+)*");
+    private static final Pattern PARTS = Pattern.compile("[._]|(?<=\\p{Ll})(?=\\p{Lu})|(?<=\\p{L})(?=\\p{N})");
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Set<String> STOP_WORDS = Set.of(
+            "le", "la", "les", "un", "une", "des", "de", "du", "et", "ou", "en", "au", "aux", "ce", "ces",
+            "est", "sont", "que", "qui", "quoi", "dans", "par", "pour", "sur", "avec", "pas", "il", "elle",
+            "on", "se", "sa", "son", "ses", "comment", "quel", "quelle", "quels", "quelles", "cette",
+            "the", "a", "an", "of", "to", "in", "is", "are", "and", "or", "for", "with", "what",
+            "how", "which", "it", "be", "as", "by", "this", "that", "from", "at", "does", "do");
+
+    private final List<TextSegment> segments;
+    private final List<String> ids;
+    private final Map<String, Postings> postings;
+    private final int[] lengths;
+    private final double averageLength;
+
+    private Bm25Index(List<TextSegment> segments, List<String> ids) {
+        this.segments = List.copyOf(segments);
+        this.ids = ids;
+        this.lengths = new int[segments.size()];
+
+        Map<String, PostingsBuilder> builders = new HashMap<>();
+        long totalLength = 0;
+        for (int doc = 0; doc < segments.size(); doc++) {
+            List<String> terms = terms(segments.get(doc).text());
+            lengths[doc] = terms.size();
+            totalLength += terms.size();
+            for (String term : terms) {
+                builders.computeIfAbsent(term, t -> new PostingsBuilder()).add(doc);
+            }
+        }
+        this.averageLength = segments.isEmpty() ? 0 : (double) totalLength / segments.size();
+        Map<String, Postings> frozen = new HashMap<>(builders.size() * 2);
+        builders.forEach((term, builder) -> frozen.put(term, builder.build()));
+        this.postings = frozen;
+    }
+
+    /**
+     * Indexe des segments ; l'indice d'un segment dans la liste est son numéro dans l'index.
+     */
+    public static Bm25Index of(List<TextSegment> segments) {
+        return new Bm25Index(Objects.requireNonNull(segments), null);
+    }
+
+    /**
+     * Indexe les segments d'un index vectoriel persistant, avec les mêmes identifiants :
+     * les résultats des deux recherches peuvent ainsi être fusionnés segment par segment.
+     */
+    public static Bm25Index of(MappedEmbeddingStore store) {
+        List<TextSegment> segments = new ArrayList<>(store.size());
+        List<String> ids = new ArrayList<>(store.size());
+        for (int i = 0; i < store.size(); i++) {
+            TextSegment segment = store.segment(i);
+            segments.add(segment != null ? segment : TextSegment.from(""));
+            ids.add(store.id(i));
+        }
+        return new Bm25Index(segments, ids);
+    }
+
+    /**
+     * Indexe les segments de toutes les sources d'un index partagé ; les numéros de
+     * segments sont les rangs de l'index partagé, de sorte qu'un même bitmap de
+     * segments filtre les deux recherches.
+     */
+    public static Bm25Index of(MultiSourceEmbeddingStore store) {
+        List<TextSegment> segments = new ArrayList<>(store.size());
+        List<String> ids = new ArrayList<>(store.size());
+        for (int i = 0; i < store.size(); i++) {
+            segments.add(store.segment(i));
+            ids.add(store.id(i));
+        }
+        return new Bm25Index(segments, ids);
+    }
+
+    /**
+     * @return Les {@code maxResults} segments les mieux classés, par score décroissant
+     */
+    public List<Hit> search(String query, int maxResults) {
+        return search(query, maxResults, null);
+    }
+
+    /**
+     * @param accepted Numéros des segments admis dans les résultats (null : tous)
+     * @return Les {@code maxResults} segments admis les mieux classés, par score décroissant
+     */
+    public List<Hit> search(String query, int maxResults, IntPredicate accepted) {
+        Set<String> queryTerms = new LinkedHashSet<>(terms(query));
+        float[] scores = new float[segments.size()];
+        int[] touched = new int[segments.size()];
+        int touchedCount = 0;
+        for (String term : queryTerms) {
+            Postings list = postings.get(term);
+            if (list == null) {
+                continue;
+            }
+            double idf = idf(list.docs.length);
+            for (int p = 0; p < list.docs.length; p++) {
+                int doc = list.docs[p];
+                int tf = list.frequencies[p];
+                double norm = K1 * (1 - B + B * lengths[doc] / averageLength);
+                if (scores[doc] == 0f) {
+                    touched[touchedCount++] = doc;
+                }
+                scores[doc] += (float) (idf * tf * (K1 + 1) / (tf + norm));
+            }
+        }
+
+        PriorityQueue<Hit> best = new PriorityQueue<>((a, b) -> Double.compare(a.score, b.score));
+        for (int i = 0; i < touchedCount; i++) {
+            int doc = touched[i];
+            if (accepted != null && !accepted.test(doc)) {
+                continue;
+            }
+            if (best.size() < maxResults || scores[doc] > best.peek().score) {
+                best.add(new Hit(doc, scores[doc]));
+                if (best.size() > maxResults) {
+                    best.poll();
+                }
+            }
+        }
+        List<Hit> hits = new ArrayList<>(best);
+        hits.sort((a, b) -> Double.compare(b.score, a.score));
+        return hits;
+    }
+
+    /**
+     * @return Le nombre de segments contenant le terme (après normalisation)
+     */
+    public int documentFrequency(String word) {
+        List<String> terms = terms(word);
+        if (terms.isEmpty()) {
+            return 0;
+        }
+        Postings list = postings.get(terms.get(0));
+        return list == null ? 0 : list.docs.length;
+    }
+
+    /**
+     * @return true pour une question courte (au plus {@code maxWords} mots) citant un
+     *         identifiant présent dans l'index : la recherche lexicale suffit
+     */
+    public boolean isKeywordQuery(String text, int maxWords) {
+        Matcher matcher = WORD.matcher(text);
+        int words = 0;
+        boolean knownIdentifier = false;
+        while (matcher.find()) {
+            if (++words > maxWords) {
+                return false;
+            }
+            String word = matcher.group();
+            knownIdentifier |= isIdentifier(word) && documentFrequency(word) > 0;
+        }
+        return knownIdentifier;
+    }
+
+    public TextSegment segment(int index) {
+        return segments.get(index);
+    }
+
+    /**
+     * @return L'identifiant du segment dans l'index vectoriel d'origine (null si inconnu)
+     */
+    public String id(int index) {
+        return ids == null ? null : ids.get(index);
+    }
+
+    public int size() {
+        return segments.size();
+    }
+
+    private double idf(int documentFrequency) {
+        return Math.log(1 + (segments.size() - documentFrequency + 0.5) / (documentFrequency + 0.5));
+    }
+
+    /**
+     * Découpe un texte en termes normalisés (minuscules, sans accents, sans mots vides) ;
+     * les identifiants composés donnent aussi leurs parties.
+     */
+    public static List<String> terms(String text) {
+        List<String> terms = new ArrayList<>();
+        Matcher matcher = WORD.matcher(text);
+        while (matcher.find()) {
+            String word = matcher.group();
+            String normalized = normalize(word);
+            if (normalized.length() < 2 || STOP_WORDS.contains(normalized)) {
+                continue;
+            }
+            terms.add(normalized);
+            if (isIdentifier(word)) {
+                for (String part : PARTS.split(word)) {
+                    String normalizedPart = normalize(part);
+                    if (normalizedPart.length() >= 2 && !normalizedPart.equals(normalized)
+                            && !STOP_WORDS.contains(normalizedPart)) {
+                        terms.add(normalizedPart);
+                    }
+                }
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * @return true pour un mot qui ressemble à un identifiant de code ou à un sigle :
+     *         casse mixte, majuscules, chiffres, points ou soulignés
+     */
+    public static boolean isIdentifier(String word) {
+        boolean lower = false;
+        boolean upperAfterFirst = false;
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (c == '.' || c == '_' || Character.isDigit(c)) {
+                return word.length() > 1;
+            }
+            lower |= Character.isLowerCase(c);
+            upperAfterFirst |= i > 0 && Character.isUpperCase(c);
+        }
+        return upperAfterFirst && (lower || word.length() > 1);
+    }
+
+    private static String normalize(String word) {
+        String decomposed = Normalizer.normalize(word.toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+        return DIACRITICS.matcher(decomposed).replaceAll("");
+    }
+
+    /**
+     * Résultat d'une recherche lexicale.
+     *
+     * @param index Numéro du segment dans l'index
+     * @param score Score BM25
+     */
+    public record Hit(int index, double score) {
+    }
+
+    private record Postings(int[] docs, int[] frequencies) {
+    }
+
+    /**
+     * Accumule les occurrences d'un terme ; les segments arrivent dans l'ordre croissant.
+     */
+    private static final class PostingsBuilder {
+        private int[] docs = new int[4];
+        private int[] frequencies = new int[4];
+        private int size;
+
+        void add(int doc) {
+            if (size > 0 && docs[size - 1] == doc) {
+                frequencies[size - 1]++;
+                return;
+            }
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            docs[size] = doc;
+            frequencies[size++] = 1;
+        }
+
+        Postings build() {
+            return new Postings(Arrays.copyOf(docs, size), Arrays.copyOf(frequencies, size));
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package ma.emsi.elboudadi.memory;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ChatMessageDeserializer;
+import dev.langchain4j.data.message.ChatMessageSerializer;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Journal d'une session de conversation, en ajout seul.
+ *
+ * Chaque changement de la mémoire est un enregistrement ajouté en fin de fichier
+ * (message ajouté, messages remplacés par un résumé, mémoire vidée) : une écriture
+ * courte par tour, sans réécrire l'historique. À l'ouverture, les enregistrements
+ * sont rejoués pour retrouver l'état ; un dernier enregistrement incomplet (arrêt
+ * pendant l'écriture) est ignoré. Quand les enregistrements périmés dominent, le
+ * journal est réécrit avec le seul état courant (fichier temporaire puis remplacement).
+ */
+final class SessionLog implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(SessionLog.class.getName());
+
+    private static final int MAGIC = 0x4348544C; // "CHTL"
+    private static final int VERSION = 1;
+
+    private static final byte MESSAGE = 1;
+    private static final byte SUMMARY = 2;
+    private static final byte CLEAR = 3;
+
+    private final Path file;
+    private FileChannel channel;
+    private int records;
+
+    private SessionLog(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Ouvre (ou crée) le journal et rejoue son contenu.
+     *
+     * @param messages Reçoit les messages relus
+     * @param summary  Reçoit le résumé relu (case 0), null s'il n'y en a pas
+     */
+    static SessionLog open(Path file, List<ChatMessage> messages, String[] summary) throws IOException {
+        SessionLog log = new SessionLog(file);
+        boolean complete = Files.exists(file) && log.replay(messages, summary);
+        if (!complete || log.needsCompaction(messages.size())) {
+            log.rewrite(summary[0], messages);
+        } else {
+            log.channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        return log;
+    }
+
+    /**
+     * @return false si le fichier est illisible ou se termine par un enregistrement incomplet
+     */
+    private boolean replay(List<ChatMessage> messages, String[] summary) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                LOGGER.warning("Journal de session ignoré (format inconnu) : " + file);
+                return false;
+            }
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    return true;
+                }
+                byte[] payload = in.readNBytes(length);
+                if (payload.length < length) {
+                    LOGGER.warning("Journal de session tronqué, dernier enregistrement ignoré : " + file);
+                    return false;
+                }
+                apply(new DataInputStream(new ByteArrayInputStream(payload)), messages, summary);
+                records++;
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Journal de session illisible, relu partiellement : " + file, e);
+            return false;
+        }
+    }
+
+    private static void apply(DataInputStream in, List<ChatMessage> messages, String[] summary) throws IOException {
+        switch (in.readByte()) {
+            case MESSAGE -> messages.add(ChatMessageDeserializer.messageFromJson(readString(in)));
+            case SUMMARY -> {
+                int count = Math.min(in.readInt(), messages.size());
+                messages.subList(0, count).clear();
+                summary[0] = readString(in);
+            }
+            case CLEAR -> {
+                messages.clear();
+                summary[0] = null;
+            }
+            default -> throw new IOException("Type d'enregistrement inconnu");
+        }
+    }
+
+    void message(ChatMessage message) throws IOException {
+        Record record = new Record(MESSAGE);
+        writeString(record.out, ChatMessageSerializer.messageToJson(message));
+        append(record);
+    }
+
+    /**
+     * Les {@code count} plus anciens messages sont remplacés par {@code summary}.
+     */
+    void summarized(int count, String summary) throws IOException {
+        Record record = new Record(SUMMARY);
+        record.out.writeInt(count);
+        writeString(record.out, summary);
+        append(record);
+    }
+
+    void cleared() throws IOException {
+        append(new Record(CLEAR));
+    }
+
+    /**
+     * @return true si le journal contient beaucoup plus d'enregistrements que l'état courant
+     */
+    boolean needsCompaction(int liveMessages) {
+        return records > 2 * liveMessages + 16;
+    }
+
+    /**
+     * Remplace le journal par l'état courant.
+     */
+    void rewrite(String summary, List<ChatMessage> messages) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path tmp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(8).putInt(MAGIC).putInt(VERSION).flip();
+            while (header.hasRemaining()) {
+                out.write(header);
+            }
+            records = 0;
+            if (summary != null) {
+                Record record = new Record(SUMMARY);
+                record.out.writeInt(0);
+                writeString(record.out, summary);
+                write(out, record);
+            }
+            for (ChatMessage message : messages) {
+                Record record = new Record(MESSAGE);
+                writeString(record.out, ChatMessageSerializer.messageToJson(message));
+                write(out, record);
+            }
+        }
+        close();
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void append(Record record) throws IOException {
+        write(channel, record);
+    }
+
+    private void write(FileChannel target, Record record) throws IOException {
+        byte[] payload = record.bytes.toByteArray();
+        ByteBuffer buffer = ByteBuffer.allocate(4 + payload.length).putInt(payload.length).put(payload).flip();
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+        records++;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        return length < 0 ? null : new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Enregistrement en construction : type puis contenu.
+     */
+    private static final class Record {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+
+        Record(byte type) throws IOException {
+            out.writeByte(type);
+        }
+    }
+}
@@ -0,0 +1,537 @@
+package ma.emsi.elboudadi.memory;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.TextContent;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.model.TokenCountEstimator;
+import dev.langchain4j.model.chat.ChatModel;
+import ma.emsi.elboudadi.metrics.RagMetrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.ToIntFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Mémoire de conversation bornée en jetons, résumée et persistante.
+ *
+ * Remplace {@code MessageWindowChatMemory.withMaxMessages(10)}, qui renvoie au modèle
+ * jusqu'à dix messages complets, y compris les questions augmentées par le RAG :
+ * - le contexte récupéré n'est gardé que pour le tour en cours ; dès la question
+ *   suivante, le message augmenté est ramené à la question posée ;
+ * - seuls les messages les plus récents qui tiennent dans {@code maxTokens} sont
+ *   renvoyés au modèle (la conversation commence toujours par une question) ;
+ * - les messages sortis de cette fenêtre sont résumés par {@code summarizer}, en
+ *   arrière-plan : le tour en cours n'attend jamais le résumé, qui est ajouté au
+ *   message système dès qu'il est prêt (sans résumeur, ils sont simplement oubliés) ;
+ * - avec {@code directory}, chaque session est journalisée dans un fichier en ajout
+ *   seul ({@link SessionLog}) et relue à la création de la mémoire.
+ *
+ * Les accès sont synchronisés : le résumé est intégré depuis un autre thread.
+ */
+public class SummarizingChatMemory implements ChatMemory, AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(SummarizingChatMemory.class.getName());
+
+    public static final String SUMMARIES = "memory.summaries";
+    public static final String SUMMARY_FAILURES = "memory.summary.failures";
+    public static final String EVICTED = "memory.messages.evicted";
+    public static final String RESTORED = "memory.messages.restored";
+    public static final String SUMMARY = "memory.summary";
+
+    /** Marque du {@code DefaultContentInjector} entre la question et le contexte injecté */
+    public static final String DEFAULT_INJECTION_MARKER = "\n\nAnswer using the following information:\n";
+
+    private static final Executor SUMMARIZERS = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("memory-summarizer-", 0).factory());
+    private static final Pattern SAFE_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+    /** Surcoût de chaque message (rôle, séparateurs) */
+    private static final int MESSAGE_OVERHEAD = 4;
+    /** Au-delà, les messages en attente d'un résumé qui échoue sont oubliés */
+    private static final int MAX_PENDING = 64;
+
+    private final Object id;
+    private final int maxTokens;
+    private final int summaryWords;
+    private final String injectionMarker;
+    private final ChatModel summarizer;
+    private final Executor executor;
+    private final ToIntFunction<String> tokenCounter;
+    private final RagMetrics metrics;
+
+    private SystemMessage systemMessage;
+    private String summary;
+    /** Messages non résumés, du plus ancien au plus récent ; les premiers peuvent être hors fenêtre */
+    private final List<Entry> entries = new ArrayList<>();
+    /** Index du premier message renvoyé au modèle */
+    private int windowStart;
+    private boolean summarizing;
+    /** Incrémentée par clear() : un résumé lancé avant est ignoré */
+    private long generation;
+    private SessionLog log;
+
+    private SummarizingChatMemory(Builder builder) {
+        this.id = builder.id;
+        this.maxTokens = builder.maxTokens;
+        this.summaryWords = builder.summaryWords;
+        this.injectionMarker = builder.injectionMarker;
+        this.summarizer = builder.summarizer;
+        this.executor = builder.executor != null ? builder.executor : SUMMARIZERS;
+        this.tokenCounter = builder.tokenCounter;
+        this.metrics = builder.metrics != null ? builder.metrics : RagMetrics.global();
+        if (builder.directory != null) {
+            restore(builder.directory.resolve(fileName(id)));
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Object id() {
+        return id;
+    }
+
+    @Override
+    public synchronized void add(ChatMessage message) {
+        if (message instanceof SystemMessage system) {
+            if (!system.equals(systemMessage)) {
+                systemMessage = system;
+                persist(system);
+            }
+            return;
+        }
+        if (message instanceof UserMessage) {
+            // Le contexte du tour précédent ne sert plus
+            for (int i = entries.size() - 1; i >= 0; i--) {
+                if (entries.get(i).message instanceof UserMessage previous) {
+                    UserMessage stripped = strip(previous);
+                    if (stripped != previous) {
+                        entries.set(i, new Entry(stripped, tokens(stripped)));
+                    }
+                    break;
+                }
+            }
+        }
+        entries.add(new Entry(message, tokens(message)));
+        // Journalisé sans le contexte injecté : il sera récupéré à nouveau au prochain tour
+        persist(message instanceof UserMessage user ? strip(user) : message);
+        slideWindow();
+    }
+
+    @Override
+    public synchronized List<ChatMessage> messages() {
+        List<ChatMessage> messages = new ArrayList<>(entries.size() - windowStart + 1);
+        SystemMessage system = effectiveSystemMessage();
+        if (system != null) {
+            messages.add(system);
+        }
+        for (int i = windowStart; i < entries.size(); i++) {
+            messages.add(entries.get(i).message);
+        }
+        return messages;
+    }
+
+    @Override
+    public synchronized void clear() {
+        entries.clear();
+        summary = null;
+        windowStart = 0;
+        generation++;
+        if (log != null) {
+            try {
+                log.cleared();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Impossible de journaliser la session " + id, e);
+            }
+        }
+    }
+
+    /**
+     * @return Le résumé des échanges sortis de la fenêtre, null s'il n'y en a pas encore
+     */
+    public synchronized String summary() {
+        return summary;
+    }
+
+    /**
+     * @return L'estimation des jetons renvoyés au modèle (message système et résumé compris)
+     */
+    public synchronized int tokenCount() {
+        int total = 0;
+        SystemMessage system = effectiveSystemMessage();
+        if (system != null) {
+            total += tokens(system);
+        }
+        for (int i = windowStart; i < entries.size(); i++) {
+            total += entries.get(i).tokens;
+        }
+        return total;
+    }
+
+    /**
+     * Recule le début de la fenêtre jusqu'à tenir dans le budget, puis confie au
+     * résumeur les messages qui en sont sortis.
+     */
+    private void slideWindow() {
+        int start = fitWindow();
+        if (start > windowStart) {
+            metrics.add(EVICTED, start - windowStart);
+            windowStart = start;
+        }
+        if (windowStart == 0) {
+            return;
+        }
+        if (summarizer == null) {
+            compact(windowStart, summary);
+        } else if (!summarizing) {
+            if (windowStart > MAX_PENDING) {
+                // Le résumeur échoue depuis longtemps : la mémoire reste bornée
+                compact(windowStart - MAX_PENDING, summary);
+            }
+            summarize();
+        }
+    }
+
+    /**
+     * @return Le début de la plus longue fenêtre récente qui tient dans le budget
+     */
+    private int fitWindow() {
+        int budget = maxTokens;
+        SystemMessage system = effectiveSystemMessage();
+        if (system != null) {
+            budget -= tokens(system);
+        }
+        int start = entries.size();
+        int used = 0;
+        while (start > windowStart && used + entries.get(start - 1).tokens <= budget) {
+            used += entries.get(--start).tokens;
+        }
+        // Ne jamais couper un échange : la fenêtre commence par une question
+        while (start < entries.size() && !(entries.get(start).message instanceof UserMessage)) {
+            start++;
+        }
+        if (start == entries.size()) {
+            // La dernière question seule dépasse le budget : elle est envoyée quand même
+            start = lastUserMessage();
+        }
+        return start;
+    }
+
+    private int lastUserMessage() {
+        for (int i = entries.size() - 1; i >= windowStart; i--) {
+            if (entries.get(i).message instanceof UserMessage) {
+                return i;
+            }
+        }
+        return windowStart;
+    }
+
+    private void summarize() {
+        List<ChatMessage> evicted = new ArrayList<>(windowStart);
+        for (int i = 0; i < windowStart; i++) {
+            evicted.add(entries.get(i).message);
+        }
+        String previous = summary;
+        long startedGeneration = generation;
+        summarizing = true;
+        executor.execute(() -> {
+            String updated = null;
+            try {
+                updated = metrics.time(SUMMARY, () -> summarizer.chat(prompt(previous, evicted)));
+                metrics.increment(SUMMARIES);
+            } catch (RuntimeException e) {
+                metrics.increment(SUMMARY_FAILURES);
+                LOGGER.log(Level.WARNING, "Échec du résumé de la session " + id, e);
+            }
+            synchronized (this) {
+                summarizing = false;
+                if (generation != startedGeneration) {
+                    return;
+                }
+                if (updated != null && !updated.isBlank()) {
+                    compact(evicted.size(), updated.strip());
+                    // Le résumé, plus long, peut repousser le début de la fenêtre
+                    int start = fitWindow();
+                    if (start > windowStart) {
+                        metrics.add(EVICTED, start - windowStart);
+                        windowStart = start;
+                    }
+                    // Des messages sont sortis de la fenêtre pendant le résumé
+                    if (windowStart > 0) {
+                        summarize();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Remplace les {@code count} plus anciens messages par {@code newSummary}.
+     */
+    private void compact(int count, String newSummary) {
+        entries.subList(0, count).clear();
+        windowStart -= count;
+        summary = newSummary;
+        if (log == null) {
+            return;
+        }
+        try {
+            log.summarized(count, newSummary);
+            if (log.needsCompaction(entries.size())) {
+                log.rewrite(summary, persistedMessages());
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Impossible de journaliser la session " + id, e);
+        }
+    }
+
+    private String prompt(String previous, List<ChatMessage> evicted) {
+        StringBuilder prompt = new StringBuilder()
+                .append("Mets à jour le résumé d'une conversation entre un utilisateur et un assistant. ")
+                .append("Garde les faits, les préférences et les questions encore ouvertes, ")
+                .append("sans formule d'introduction, en ").append(summaryWords).append(" mots au plus.\n\n");
+        if (previous != null) {
+            prompt.append("Résumé actuel :\n").append(previous).append("\n\n");
+        }
+        prompt.append("Nouveaux échanges :\n");
+        for (ChatMessage message : evicted) {
+            if (message instanceof UserMessage) {
+                prompt.append("Utilisateur : ").append(text(message)).append('\n');
+            } else if (message instanceof AiMessage ai && ai.text() != null) {
+                prompt.append("Assistant : ").append(ai.text()).append('\n');
+            }
+        }
+        return prompt.toString();
+    }
+
+    private SystemMessage effectiveSystemMessage() {
+        if (summary == null) {
+            return systemMessage;
+        }
+        String resume = "Résumé des échanges précédents :\n" + summary;
+        return SystemMessage.from(systemMessage == null ? resume : systemMessage.text() + "\n\n" + resume);
+    }
+
+    /**
+     * @return La question sans le contexte injecté par le RAG (le même message s'il n'y en a pas)
+     */
+    private UserMessage strip(UserMessage message) {
+        if (!message.hasSingleText()) {
+            return message;
+        }
+        String text = message.singleText();
+        int marker = text.indexOf(injectionMarker);
+        if (marker < 0) {
+            return message;
+        }
+        String question = text.substring(0, marker);
+        return message.name() != null ? UserMessage.from(message.name(), question) : UserMessage.from(question);
+    }
+
+    private int tokens(ChatMessage message) {
+        return MESSAGE_OVERHEAD + tokenCounter.applyAsInt(text(message));
+    }
+
+    private static String text(ChatMessage message) {
+        if (message instanceof UserMessage user) {
+            if (user.hasSingleText()) {
+                return user.singleText();
+            }
+            StringBuilder text = new StringBuilder();
+            user.contents().forEach(content -> {
+                if (content instanceof TextContent textContent) {
+                    text.append(textContent.text());
+                }
+            });
+            return text.toString();
+        }
+        if (message instanceof AiMessage ai) {
+            StringBuilder text = new StringBuilder(Objects.requireNonNullElse(ai.text(), ""));
+            ai.toolExecutionRequests().forEach(request -> text.append(request.name()).append(request.arguments()));
+            return text.toString();
+        }
+        if (message instanceof ToolExecutionResultMessage result) {
+            return result.text();
+        }
+        if (message instanceof SystemMessage system) {
+            return system.text();
+        }
+        return message.toString();
+    }
+
+    private void persist(ChatMessage message) {
+        if (log == null) {
+            return;
+        }
+        try {
+            log.message(message);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Impossible de journaliser la session " + id, e);
+        }
+    }
+
+    private List<ChatMessage> persistedMessages() {
+        List<ChatMessage> messages = new ArrayList<>(entries.size() + 1);
+        if (systemMessage != null) {
+            messages.add(systemMessage);
+        }
+        for (Entry entry : entries) {
+            messages.add(entry.message instanceof UserMessage user ? strip(user) : entry.message);
+        }
+        return messages;
+    }
+
+    private void restore(Path file) {
+        List<ChatMessage> restored = new ArrayList<>();
+        String[] restoredSummary = new String[1];
+        try {
+            log = SessionLog.open(file, restored, restoredSummary);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Journal de session indisponible, session non persistée : " + file, e);
+            return;
+        }
+        summary = restoredSummary[0];
+        SessionLog journal = log;
+        log = null; // pas de nouvel enregistrement pendant la relecture
+        synchronized (this) {
+            restored.forEach(this::add);
+        }
+        log = journal;
+        if (!restored.isEmpty()) {
+            metrics.add(RESTORED, restored.size());
+            LOGGER.fine(() -> "Session " + id + " relue : " + restored.size() + " messages");
+        }
+    }
+
+    /**
+     * Nom du journal d'une session : l'identifiant s'il est sûr, sinon son empreinte.
+     */
+    static String fileName(Object id) {
+        String name = String.valueOf(id);
+        if (SAFE_ID.matcher(name).matches()) {
+            return name + ".log";
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(name.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16) + ".log";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (log == null) {
+            return;
+        }
+        try {
+            log.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Impossible de fermer le journal de la session " + id, e);
+        }
+        log = null;
+    }
+
+    private record Entry(ChatMessage message, int tokens) {
+    }
+
+    public static class Builder {
+        private Object id = "default";
+        private int maxTokens = 2_000;
+        private int summaryWords = 150;
+        private String injectionMarker = DEFAULT_INJECTION_MARKER;
+        private ChatModel summarizer;
+        private Executor executor;
+        private ToIntFunction<String> tokenCounter = text -> (text.length() + 3) / 4;
+        private Path directory;
+        private RagMetrics metrics;
+
+        public Builder id(Object id) {
+            this.id = Objects.requireNonNull(id, "L'identifiant de la mémoire ne peut pas être null");
+            return this;
+        }
+
+        /**
+         * @param maxTokens Budget de jetons des messages renvoyés au modèle (résumé compris)
+         */
+        public Builder maxTokens(int maxTokens) {
+            this.maxTokens = Math.max(1, maxTokens);
+            return this;
+        }
+
+        /**
+         * @param summarizer Modèle qui résume les messages sortis de la fenêtre ; sans lui, ils sont oubliés
+         */
+        public Builder summarizer(ChatModel summarizer) {
+            this.summarizer = summarizer;
+            return this;
+        }
+
+        /**
+         * @param summaryWords Longueur maximale demandée pour le résumé, en mots
+         */
+        public Builder summaryWords(int summaryWords) {
+            this.summaryWords = Math.max(10, summaryWords);
+            return this;
+        }
+
+        /**
+         * @param executor Exécute les résumés ; par défaut, un thread virtuel par résumé
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * @param injectionMarker Texte qui sépare la question du contexte injecté par le RAG
+         */
+        public Builder injectionMarker(String injectionMarker) {
+            this.injectionMarker = Objects.requireNonNull(injectionMarker);
+            return this;
+        }
+
+        /**
+         * @param estimator Estimateur de jetons du modèle ; par défaut, 4 caractères par jeton
+         */
+        public Builder tokenCountEstimator(TokenCountEstimator estimator) {
+            this.tokenCounter = Objects.requireNonNull(estimator)::estimateTokenCountInText;
+            return this;
+        }
+
+        /**
+         * @param directory Répertoire des journaux de session (un fichier par identifiant) ;
+         *                  sans répertoire, la mémoire n'est pas persistée
+         */
+        public Builder directory(Path directory) {
+            this.directory = directory;
+            return this;
+        }
+
+        public Builder metrics(RagMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        public SummarizingChatMemory build() {
+            return new SummarizingChatMemory(this);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package ma.emsi.elboudadi.metrics;
+
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Mesure un retriever, et compte les contenus qu'il renvoie.
+ */
+class InstrumentedContentRetriever implements ContentRetriever {
+
+    private final String name;
+    private final String metric;
+    private final ContentRetriever delegate;
+    private final RagMetrics metrics;
+
+    InstrumentedContentRetriever(String name, String metric, ContentRetriever delegate, RagMetrics metrics) {
+        this.name = name;
+        this.metric = metric;
+        this.delegate = Objects.requireNonNull(delegate, "Le retriever ne peut pas être null");
+        this.metrics = metrics;
+    }
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        List<Content> contents = metrics.time(metric, () -> delegate.retrieve(query));
+        metrics.add(metric + ".contents", contents.size());
+        return contents;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,36 @@
+package ma.emsi.elboudadi.metrics;
+
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.rag.query.router.QueryRouter;
+
+import java.util.Collection;
+import java.util.Objects;
+
+/**
+ * Mesure la décision de routage, et compte les questions traitées sans RAG.
+ */
+class InstrumentedQueryRouter implements QueryRouter {
+
+    private final QueryRouter delegate;
+    private final RagMetrics metrics;
+
+    InstrumentedQueryRouter(QueryRouter delegate, RagMetrics metrics) {
+        this.delegate = Objects.requireNonNull(delegate, "Le routeur ne peut pas être null");
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Collection<ContentRetriever> route(Query query) {
+        Collection<ContentRetriever> retrievers = metrics.time(RagMetrics.ROUTING, () -> delegate.route(query));
+        if (retrievers.isEmpty()) {
+            metrics.increment(RagMetrics.ROUTING_NO_RAG);
+        }
+        return retrievers;
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+}
@@ -0,0 +1,31 @@
+package ma.emsi.elboudadi.metrics;
+
+import dev.langchain4j.rag.AugmentationRequest;
+import dev.langchain4j.rag.AugmentationResult;
+import dev.langchain4j.rag.RetrievalAugmentor;
+
+import java.util.Objects;
+
+/**
+ * Mesure l'augmentation complète d'une question : transformation, routage,
+ * recherche dans les sources, agrégation et injection du contenu.
+ */
+class InstrumentedRetrievalAugmentor implements RetrievalAugmentor {
+
+    private final RetrievalAugmentor delegate;
+    private final RagMetrics metrics;
+
+    InstrumentedRetrievalAugmentor(RetrievalAugmentor delegate, RagMetrics metrics) {
+        this.delegate = Objects.requireNonNull(delegate, "L'augmenteur ne peut pas être null");
+        this.metrics = metrics;
+    }
+
+    @Override
+    public AugmentationResult augment(AugmentationRequest request) {
+        AugmentationResult result = metrics.time(RagMetrics.AUGMENTATION, () -> delegate.augment(request));
+        if (result.contents() != null) {
+            metrics.add(RagMetrics.AUGMENTATION_CONTENTS, result.contents().size());
+        }
+        return result;
+    }
+}
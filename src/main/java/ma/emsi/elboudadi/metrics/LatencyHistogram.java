@@ -0,0 +1,125 @@
+package ma.emsi.elboudadi.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogramme de latences à seaux log-linéaires, dans l'esprit de HdrHistogram.
+ *
+ * Les valeurs sont enregistrées en microsecondes. Chaque puissance de deux est
+ * découpée en {@value #SUB_BUCKETS} sous-seaux : l'erreur relative sur un centile
+ * reste inférieure à 1/{@value #SUB_BUCKETS} (≈ 3 %), quelle que soit l'échelle
+ * (de la microseconde à plusieurs heures). L'enregistrement ne prend aucun verrou
+ * et n'alloue rien : il peut rester en permanence sur le chemin de chaque question.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+    static final int SUB_BUCKETS = 1 << SUB_BITS;
+    /** Plus grand exposant suivi : 2^41 µs ≈ 25 jours ; au-delà, les valeurs sont plafonnées */
+    private static final int MAX_EXPONENT = 41;
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray((MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumMicros = new LongAdder();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /**
+     * Enregistre une durée exprimée en nanosecondes.
+     */
+    public void recordNanos(long nanos) {
+        long micros = Math.min(MAX_VALUE, Math.max(0, nanos / 1_000));
+        counts.incrementAndGet(index(micros));
+        count.increment();
+        sumMicros.add(micros);
+        maxMicros.accumulateAndGet(micros, Math::max);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    /**
+     * @param quantile Entre 0 et 1 (0.99 pour le 99e centile)
+     * @return La latence correspondante, en microsecondes (0 si l'histogramme est vide)
+     */
+    public long percentileMicros(double quantile) {
+        long total = count.sum();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestEquivalentValue(i), maxMicros.get());
+            }
+        }
+        return maxMicros.get();
+    }
+
+    /**
+     * @return Un instantané cohérent à quelques enregistrements concurrents près
+     */
+    public Snapshot snapshot() {
+        long total = count.sum();
+        return new Snapshot(total,
+                total == 0 ? 0 : sumMicros.sum() / 1e3 / total,
+                percentileMicros(0.50) / 1e3,
+                percentileMicros(0.90) / 1e3,
+                percentileMicros(0.99) / 1e3,
+                percentileMicros(0.999) / 1e3,
+                maxMicros.get() / 1e3);
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sumMicros.reset();
+        maxMicros.set(0);
+    }
+
+    static int index(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int shift = exponent - SUB_BITS;
+        int subBucket = (int) (micros >>> shift) - SUB_BUCKETS;
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * Résumé d'un histogramme, en millisecondes.
+     *
+     * @param count Nombre de mesures
+     * @param mean Moyenne
+     * @param p50 Médiane
+     * @param p90 90e centile
+     * @param p99 99e centile
+     * @param p999 99,9e centile
+     * @param max Plus grande valeur observée
+     */
+    public record Snapshot(long count, double mean, double p50, double p90, double p99, double p999, double max) {
+
+        @Override
+        public String toString() {
+            return String.format("n=%d moy=%.1f p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f ms",
+                    count, mean, p50, p90, p99, p999, max);
+        }
+    }
+}
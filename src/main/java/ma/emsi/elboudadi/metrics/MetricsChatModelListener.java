@@ -0,0 +1,53 @@
+package ma.emsi.elboudadi.metrics;
+
+import dev.langchain4j.model.chat.listener.ChatModelErrorContext;
+import dev.langchain4j.model.chat.listener.ChatModelListener;
+import dev.langchain4j.model.chat.listener.ChatModelRequestContext;
+import dev.langchain4j.model.chat.listener.ChatModelResponseContext;
+import dev.langchain4j.model.output.TokenUsage;
+
+/**
+ * Mesure chaque appel au modèle de chat (y compris les appels du routeur) :
+ * latence, jetons consommés et produits, erreurs.
+ */
+class MetricsChatModelListener implements ChatModelListener {
+
+    private static final String START = MetricsChatModelListener.class.getName() + ".start";
+
+    private final RagMetrics metrics;
+
+    MetricsChatModelListener(RagMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void onRequest(ChatModelRequestContext context) {
+        context.attributes().put(START, System.nanoTime());
+    }
+
+    @Override
+    public void onResponse(ChatModelResponseContext context) {
+        recordLatency(context.attributes().get(START));
+        TokenUsage usage = context.chatResponse().tokenUsage();
+        if (usage != null) {
+            if (usage.inputTokenCount() != null) {
+                metrics.add(RagMetrics.MODEL_INPUT_TOKENS, usage.inputTokenCount());
+            }
+            if (usage.outputTokenCount() != null) {
+                metrics.add(RagMetrics.MODEL_OUTPUT_TOKENS, usage.outputTokenCount());
+            }
+        }
+    }
+
+    @Override
+    public void onError(ChatModelErrorContext context) {
+        recordLatency(context.attributes().get(START));
+        metrics.increment(RagMetrics.MODEL_ERRORS);
+    }
+
+    private void recordLatency(Object start) {
+        if (start instanceof Long nanos) {
+            metrics.latency(RagMetrics.MODEL).recordNanos(System.nanoTime() - nanos);
+        }
+    }
+}
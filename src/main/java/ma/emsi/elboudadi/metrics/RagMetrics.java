@@ -0,0 +1,220 @@
+package ma.emsi.elboudadi.metrics;
+
+import dev.langchain4j.model.chat.listener.ChatModelListener;
+import dev.langchain4j.rag.RetrievalAugmentor;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.router.QueryRouter;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Registre des métriques du pipeline RAG : histogrammes de latence et compteurs.
+ *
+ * Les étapes s'instrumentent en enveloppant les composants existants :
+ * <pre>
+ * RagMetrics metrics = RagMetrics.global();
+ * ContentRetriever retriever = metrics.retriever("Doc A", EmbeddingStoreContentRetriever.from(store));
+ * DefaultRetrievalAugmentor augmentor = DefaultRetrievalAugmentor.builder()
+ *         .queryRouter(metrics.router(router))
+ *         .build();
+ * AiServices.builder(Assistant.class).retrievalAugmentor(metrics.augmentor(augmentor))...
+ * GoogleAiGeminiChatModel.builder().listeners(List.of(metrics.chatModelListener()))...
+ * </pre>
+ * Les mesures sont lisibles par JMX ({@link #registerMBean()}) ou au format texte
+ * de Prometheus ({@link #report()}, servi sur {@code /metrics} par le serveur).
+ */
+public final class RagMetrics implements RagMetricsMXBean {
+
+    private static final Logger LOGGER = Logger.getLogger(RagMetrics.class.getName());
+
+    public static final String OBJECT_NAME = "ma.emsi.elboudadi:type=RagMetrics";
+
+    // Noms des mesures
+    public static final String ROUTING = "routing";
+    public static final String ROUTING_NO_RAG = "routing.no_rag";
+    public static final String AUGMENTATION = "augmentation";
+    public static final String AUGMENTATION_CONTENTS = "augmentation.contents";
+    public static final String MODEL = "model";
+    public static final String MODEL_ERRORS = "model.errors";
+    public static final String MODEL_INPUT_TOKENS = "model.tokens.input";
+    public static final String MODEL_OUTPUT_TOKENS = "model.tokens.output";
+    public static final String CACHE_HITS = "cache.hits";
+    public static final String CACHE_MISSES = "cache.misses";
+    public static final String RETRIEVER_PREFIX = "retriever.";
+
+    private static final RagMetrics GLOBAL = new RagMetrics();
+
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    /**
+     * @return Le registre partagé par toute l'application
+     */
+    public static RagMetrics global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Journalisation complète des requêtes et réponses du modèle, réservée au
+     * diagnostic : activée par {@code -Drag.debug=true}.
+     */
+    public static boolean payloadLogging() {
+        return Boolean.getBoolean("rag.debug");
+    }
+
+    public LatencyHistogram latency(String name) {
+        return latencies.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    public void increment(String name) {
+        add(name, 1);
+    }
+
+    public void add(String name, long delta) {
+        counters.computeIfAbsent(name, key -> new LongAdder()).add(delta);
+    }
+
+    public long count(String name) {
+        LongAdder counter = counters.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * Exécute l'action et enregistre sa durée, y compris en cas d'exception.
+     */
+    public <T> T time(String name, Supplier<T> action) {
+        LatencyHistogram histogram = latency(name);
+        long start = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            histogram.recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return Le routeur mesuré sous {@value #ROUTING}
+     */
+    public QueryRouter router(QueryRouter router) {
+        return new InstrumentedQueryRouter(router, this);
+    }
+
+    /**
+     * @return Le retriever mesuré sous {@code retriever.<nom>}
+     */
+    public ContentRetriever retriever(String name, ContentRetriever retriever) {
+        return new InstrumentedContentRetriever(name, RETRIEVER_PREFIX + sanitize(name), retriever, this);
+    }
+
+    /**
+     * @return L'augmenteur mesuré sous {@value #AUGMENTATION} (routage et recherche compris)
+     */
+    public RetrievalAugmentor augmentor(RetrievalAugmentor augmentor) {
+        return new InstrumentedRetrievalAugmentor(augmentor, this);
+    }
+
+    /**
+     * @return Un listener à passer au modèle de chat : latence, jetons et erreurs des appels
+     */
+    public ChatModelListener chatModelListener() {
+        return new MetricsChatModelListener(this);
+    }
+
+    /**
+     * Publie ce registre dans le serveur JMX de la plateforme, sous {@value #OBJECT_NAME}.
+     * Sans effet s'il y est déjà.
+     */
+    public RagMetrics registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // Déjà publié
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "Impossible de publier les métriques en JMX", e);
+        }
+        return this;
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        Map<String, Long> snapshot = new TreeMap<>();
+        counters.forEach((name, counter) -> snapshot.put(name, counter.sum()));
+        return snapshot;
+    }
+
+    @Override
+    public Map<String, LatencyHistogram.Snapshot> getLatencies() {
+        Map<String, LatencyHistogram.Snapshot> snapshot = new TreeMap<>();
+        latencies.forEach((name, histogram) -> snapshot.put(name, histogram.snapshot()));
+        return snapshot;
+    }
+
+    @Override
+    public String getReport() {
+        return report();
+    }
+
+    /**
+     * @return Les mesures au format texte d'exposition de Prometheus (latences en secondes)
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        getLatencies().forEach((name, snapshot) -> {
+            String metric = "rag_" + sanitize(name) + "_seconds";
+            report.append("# TYPE ").append(metric).append(" summary\n");
+            quantile(report, metric, "0.5", snapshot.p50());
+            quantile(report, metric, "0.9", snapshot.p90());
+            quantile(report, metric, "0.99", snapshot.p99());
+            quantile(report, metric, "0.999", snapshot.p999());
+            report.append(metric).append("_sum ")
+                    .append(format(snapshot.mean() * snapshot.count() / 1e3)).append('\n');
+            report.append(metric).append("_count ").append(snapshot.count()).append('\n');
+        });
+        getCounters().forEach((name, value) -> {
+            String metric = "rag_" + sanitize(name) + "_total";
+            report.append("# TYPE ").append(metric).append(" counter\n");
+            report.append(metric).append(' ').append(value).append('\n');
+        });
+        return report.toString();
+    }
+
+    @Override
+    public void reset() {
+        latencies.values().forEach(LatencyHistogram::reset);
+        counters.values().forEach(LongAdder::reset);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder("Métriques :");
+        getLatencies().forEach((name, snapshot) ->
+                report.append(String.format("%n  %-28s %s", name, snapshot)));
+        getCounters().forEach((name, value) ->
+                report.append(String.format("%n  %-28s %d", name, value)));
+        return report.toString();
+    }
+
+    private static void quantile(StringBuilder report, String metric, String quantile, double millis) {
+        report.append(metric).append("{quantile=\"").append(quantile).append("\"} ")
+                .append(format(millis / 1e3)).append('\n');
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.6f", value);
+    }
+
+    static String sanitize(String name) {
+        return name.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]+", "_").replaceAll("^_|_$", "");
+    }
+}
@@ -0,0 +1,29 @@
+package ma.emsi.elboudadi.metrics;
+
+import java.util.Map;
+
+/**
+ * Vue JMX des métriques du pipeline RAG (JConsole, VisualVM, jcmd...).
+ */
+public interface RagMetricsMXBean {
+
+    /**
+     * @return Les compteurs, par nom
+     */
+    Map<String, Long> getCounters();
+
+    /**
+     * @return Le résumé de chaque histogramme de latence, par nom (valeurs en millisecondes)
+     */
+    Map<String, LatencyHistogram.Snapshot> getLatencies();
+
+    /**
+     * @return Les mêmes données au format texte de {@code /metrics}
+     */
+    String getReport();
+
+    /**
+     * Remet toutes les mesures à zéro.
+     */
+    void reset();
+}
@@ -0,0 +1,253 @@
+package ma.emsi.elboudadi.model;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import ma.emsi.elboudadi.metrics.RagMetrics;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.regex.Pattern;
+
+/**
+ * Décorateur d'un modèle d'embedding : cache des vecteurs et regroupement des appels.
+ *
+ * Une même question est convertie en embedding à plusieurs endroits du pipeline
+ * (cache sémantique, classifieur, routeur, retriever), puis reposée par d'autres
+ * sessions. Les vecteurs sont mémorisés par texte normalisé (Unicode NFC, espaces
+ * compactés) dans un cache LRU borné, découpé en segments verrouillés séparément
+ * pour que les sessions concurrentes ne se disputent pas un verrou unique.
+ *
+ * Le cache contient des calculs en cours autant que des résultats : deux sessions
+ * qui demandent le même texte au même moment partagent un seul calcul.
+ *
+ * Les textes absents du cache passent par un {@link EmbeddingBatcher} : les demandes
+ * arrivées pendant une courte fenêtre ({@code batchWindow}) sont envoyées au modèle
+ * en un seul appel, ce qui augmente le débit sous charge. Avec une fenêtre nulle,
+ * chaque appel part directement au modèle.
+ */
+public class CachingEmbeddingModel implements EmbeddingModel, AutoCloseable {
+
+    public static final String CACHE_HITS = "embedding.cache.hits";
+    public static final String CACHE_MISSES = "embedding.cache.misses";
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final int STRIPES = 16;
+
+    private final EmbeddingModel delegate;
+    private final EmbeddingBatcher batcher;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final RagMetrics metrics;
+
+    private CachingEmbeddingModel(Builder builder) {
+        this.delegate = Objects.requireNonNull(builder.delegate, "Le modèle d'embedding délégué ne peut pas être null");
+        this.metrics = builder.metrics != null ? builder.metrics : RagMetrics.global();
+        int perStripe = Math.max(1, builder.maxEntries / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(perStripe);
+        }
+        this.batcher = builder.batchWindow.isZero()
+                ? null
+                : new EmbeddingBatcher(delegate, builder.batchWindow, builder.maxBatchSize, metrics);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+        List<CompletableFuture<float[]>> results = new ArrayList<>(segments.size());
+        List<TextSegment> missing = new ArrayList<>();
+        List<CompletableFuture<float[]>> pending = new ArrayList<>();
+
+        for (TextSegment segment : segments) {
+            String key = normalize(segment.text());
+            CompletableFuture<float[]> created = new CompletableFuture<>();
+            CompletableFuture<float[]> existing = stripe(key).putIfAbsent(key, created);
+            if (existing != null) {
+                metrics.increment(CACHE_HITS);
+                results.add(existing);
+            } else {
+                metrics.increment(CACHE_MISSES);
+                missing.add(TextSegment.from(key));
+                pending.add(created);
+                results.add(created);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            compute(missing, pending);
+        }
+
+        List<Embedding> embeddings = new ArrayList<>(results.size());
+        for (CompletableFuture<float[]> result : results) {
+            embeddings.add(Embedding.from(join(result).clone()));
+        }
+        return Response.from(embeddings);
+    }
+
+    /**
+     * Calcule les textes absents du cache ; en cas d'échec, ils sont retirés du cache
+     * pour qu'une demande suivante les recalcule.
+     */
+    private void compute(List<TextSegment> missing, List<CompletableFuture<float[]>> pending) {
+        if (batcher != null) {
+            for (int i = 0; i < missing.size(); i++) {
+                batcher.submit(missing.get(i), pending.get(i));
+            }
+        } else {
+            try {
+                List<Embedding> computed = metrics.time(EmbeddingBatcher.EMBEDDING, () -> delegate.embedAll(missing).content());
+                for (int i = 0; i < missing.size(); i++) {
+                    pending.get(i).complete(computed.get(i).vector());
+                }
+            } catch (RuntimeException e) {
+                pending.forEach(future -> future.completeExceptionally(e));
+            }
+        }
+        for (int i = 0; i < missing.size(); i++) {
+            String key = missing.get(i).text();
+            CompletableFuture<float[]> future = pending.get(i);
+            future.whenComplete((vector, error) -> {
+                if (error != null) {
+                    stripe(key).remove(key, future);
+                }
+            });
+        }
+    }
+
+    @Override
+    public int dimension() {
+        return delegate.dimension();
+    }
+
+    /**
+     * @return Le nombre de textes actuellement en cache
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    /**
+     * Clé de cache : deux textes qui ne diffèrent que par la forme Unicode ou les
+     * espaces donnent le même embedding.
+     */
+    static String normalize(String text) {
+        return WHITESPACE.matcher(Normalizer.normalize(text, Normalizer.Form.NFC)).replaceAll(" ").strip();
+    }
+
+    private Stripe stripe(String key) {
+        return stripes[(key.hashCode() ^ key.hashCode() >>> 16) & (STRIPES - 1)];
+    }
+
+    private static float[] join(CompletableFuture<float[]> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (batcher != null) {
+            batcher.close();
+        }
+    }
+
+    /**
+     * Portion du cache : LRU borné protégé par son propre verrou.
+     */
+    private static final class Stripe {
+        private final LinkedHashMap<String, CompletableFuture<float[]>> entries;
+
+        Stripe(int maxEntries) {
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CompletableFuture<float[]>> eldest) {
+                    return size() > maxEntries;
+                }
+            };
+        }
+
+        synchronized CompletableFuture<float[]> putIfAbsent(String key, CompletableFuture<float[]> value) {
+            CompletableFuture<float[]> existing = entries.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            entries.put(key, value);
+            return null;
+        }
+
+        synchronized void remove(String key, CompletableFuture<float[]> value) {
+            entries.remove(key, value);
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+
+    public static class Builder {
+        private EmbeddingModel delegate;
+        private int maxEntries = 10_000;
+        private Duration batchWindow = Duration.ofMillis(2);
+        private int maxBatchSize = 32;
+        private RagMetrics metrics;
+
+        public Builder delegate(EmbeddingModel delegate) {
+            this.delegate = delegate;
+            return this;
+        }
+
+        /**
+         * @param maxEntries Nombre maximal de textes en cache (éviction LRU au-delà)
+         */
+        public Builder maxEntries(int maxEntries) {
+            this.maxEntries = Math.max(STRIPES, maxEntries);
+            return this;
+        }
+
+        /**
+         * @param batchWindow Attente maximale de demandes concurrentes avant d'appeler le
+         *                    modèle (zéro : pas de regroupement)
+         */
+        public Builder batchWindow(Duration batchWindow) {
+            this.batchWindow = Objects.requireNonNull(batchWindow);
+            return this;
+        }
+
+        /**
+         * @param maxBatchSize Nombre maximal de textes par appel au modèle
+         */
+        public Builder maxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = Math.max(1, maxBatchSize);
+            return this;
+        }
+
+        public Builder metrics(RagMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        public CachingEmbeddingModel build() {
+            return new CachingEmbeddingModel(this);
+        }
+    }
+}
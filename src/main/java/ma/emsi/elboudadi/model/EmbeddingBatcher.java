@@ -0,0 +1,109 @@
+package ma.emsi.elboudadi.model;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import ma.emsi.elboudadi.metrics.RagMetrics;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Regroupe les demandes d'embedding concurrentes en un seul appel au modèle.
+ *
+ * Un thread dédié prend la première demande en attente, puis accumule celles qui
+ * arrivent pendant au plus {@code window} (ou jusqu'à {@code maxBatchSize} textes)
+ * avant d'appeler {@link EmbeddingModel#embedAll(List)} une fois pour tout le lot.
+ * Une demande isolée ne paie que la fenêtre ; sous charge, un appel sert plusieurs
+ * sessions et le coût fixe d'une inférence est partagé.
+ */
+class EmbeddingBatcher implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(EmbeddingBatcher.class.getName());
+
+    static final String EMBEDDING = "embedding";
+    static final String BATCHES = "embedding.batches";
+    static final String BATCHED_TEXTS = "embedding.batched_texts";
+
+    private final EmbeddingModel delegate;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final RagMetrics metrics;
+    private final LinkedBlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final Thread dispatcher;
+
+    EmbeddingBatcher(EmbeddingModel delegate, Duration window, int maxBatchSize, RagMetrics metrics) {
+        this.delegate = delegate;
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        this.metrics = metrics;
+        this.dispatcher = Thread.ofPlatform().daemon().name("embedding-batcher").start(this::dispatch);
+    }
+
+    void submit(TextSegment segment, CompletableFuture<float[]> result) {
+        Request request = new Request(segment, result);
+        queue.add(request);
+        // Arrêté entre-temps : personne ne traitera plus la file
+        if (!dispatcher.isAlive() && queue.remove(request)) {
+            result.completeExceptionally(new IllegalStateException("Le regroupement des embeddings est arrêté"));
+        }
+    }
+
+    private void dispatch() {
+        List<Request> batch = new ArrayList<>(maxBatchSize);
+        try {
+            while (true) {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Request next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                embed(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            IllegalStateException stopped = new IllegalStateException("Le regroupement des embeddings est arrêté");
+            batch.forEach(request -> request.result.completeExceptionally(stopped));
+            queue.forEach(request -> request.result.completeExceptionally(stopped));
+        }
+    }
+
+    private void embed(List<Request> batch) {
+        List<TextSegment> segments = new ArrayList<>(batch.size());
+        for (Request request : batch) {
+            segments.add(request.segment);
+        }
+        metrics.increment(BATCHES);
+        metrics.add(BATCHED_TEXTS, batch.size());
+        try {
+            List<Embedding> embeddings = metrics.time(EMBEDDING, () -> delegate.embedAll(segments).content());
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result.complete(embeddings.get(i).vector());
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Échec du calcul de " + batch.size() + " embeddings", e);
+            batch.forEach(request -> request.result.completeExceptionally(e));
+        }
+    }
+
+    @Override
+    public void close() {
+        dispatcher.interrupt();
+    }
+
+    private record Request(TextSegment segment, CompletableFuture<float[]> result) {
+    }
+}
@@ -0,0 +1,45 @@
+package ma.emsi.elboudadi.model;
+
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.bgesmallenv15q.BgeSmallEnV15QuantizedEmbeddingModel;
+
+/**
+ * Point d'accès unique au modèle d'embedding local (BGE small, quantifié, ONNX).
+ *
+ * C'est le même modèle que celui chargé implicitement par Easy RAG lors de
+ * {@code EmbeddingStoreIngestor.ingest(...)} : les vecteurs calculés ici sont donc
+ * comparables à ceux des index existants. Le modèle est chargé une seule fois.
+ *
+ * Sur le chemin des requêtes, le modèle est servi derrière un {@link CachingEmbeddingModel} :
+ * une question n'est convertie qu'une fois, et les demandes concurrentes sont regroupées.
+ * L'ingestion, dont les textes ne se répètent pas, utilise le modèle direct.
+ */
+public final class EmbeddingModels {
+
+    private EmbeddingModels() {
+    }
+
+    /**
+     * @return Le modèle d'embedding partagé par toute l'application, avec cache et regroupement
+     */
+    public static EmbeddingModel local() {
+        return CachedHolder.INSTANCE;
+    }
+
+    /**
+     * @return Le modèle d'embedding sans cache, pour l'ingestion et les mesures
+     */
+    public static EmbeddingModel uncached() {
+        return Holder.INSTANCE;
+    }
+
+    private static final class Holder {
+        private static final EmbeddingModel INSTANCE = new BgeSmallEnV15QuantizedEmbeddingModel();
+    }
+
+    private static final class CachedHolder {
+        private static final EmbeddingModel INSTANCE = CachingEmbeddingModel.builder()
+                .delegate(Holder.INSTANCE)
+                .build();
+    }
+}
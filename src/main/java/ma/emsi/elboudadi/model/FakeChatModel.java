@@ -0,0 +1,148 @@
+package ma.emsi.elboudadi.model;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.exception.InternalServerException;
+import dev.langchain4j.exception.LangChain4jException;
+import dev.langchain4j.exception.RateLimitException;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Modèle de conversation local, sans réseau : réponse déterministe construite à partir
+ * de la dernière question, latence simulée (avec une part d'appels lents pour créer
+ * une traîne), erreurs passagères aléatoires et panne activable.
+ *
+ * Permet d'exercer {@link ResilientChatModel} (nouvelles tentatives, disjoncteur,
+ * couverture) sans clé Gemini, et de compter les appels réellement reçus.
+ */
+public class FakeChatModel implements ChatModel {
+
+    private final Duration latency;
+    private final double slowRate;
+    private final Duration slowLatency;
+    private final double failureRate;
+    private final double rateLimitShare;
+    private final AtomicBoolean failing = new AtomicBoolean();
+    private final LongAdder calls = new LongAdder();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    private FakeChatModel(Builder builder) {
+        this.latency = builder.latency;
+        this.slowRate = builder.slowRate;
+        this.slowLatency = builder.slowLatency;
+        this.failureRate = builder.failureRate;
+        this.rateLimitShare = builder.rateLimitShare;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public ChatResponse chat(ChatRequest request) {
+        calls.increment();
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            Thread.sleep(random.nextDouble() < slowRate ? slowLatency : latency);
+            if (failing.get()) {
+                throw new InternalServerException("Modèle indisponible (simulé)");
+            }
+            if (random.nextDouble() < failureRate) {
+                throw random.nextDouble() < rateLimitShare
+                        ? new RateLimitException("Quota dépassé (simulé)")
+                        : new InternalServerException("Erreur passagère du modèle (simulée)");
+            }
+            return ChatResponse.builder()
+                    .aiMessage(AiMessage.from("Réponse simulée à : " + lastQuestion(request.messages())))
+                    .build();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LangChain4jException(e);
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private static String lastQuestion(List<ChatMessage> messages) {
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            if (messages.get(i) instanceof UserMessage user && user.hasSingleText()) {
+                return user.singleText();
+            }
+        }
+        return "";
+    }
+
+    /**
+     * @param failing true pour que les appels suivants échouent (erreur 5xx simulée)
+     */
+    public void failing(boolean failing) {
+        this.failing.set(failing);
+    }
+
+    /**
+     * @return Le nombre d'appels reçus
+     */
+    public long calls() {
+        return calls.sum();
+    }
+
+    /**
+     * @return Le plus grand nombre d'appels reçus simultanément
+     */
+    public int maxInFlight() {
+        return maxInFlight.get();
+    }
+
+    public static class Builder {
+        private Duration latency = Duration.ofMillis(50);
+        private double slowRate;
+        private Duration slowLatency = Duration.ofSeconds(1);
+        private double failureRate;
+        private double rateLimitShare = 0.5;
+
+        /**
+         * @param latency Durée d'un appel ordinaire
+         */
+        public Builder latency(Duration latency) {
+            this.latency = Objects.requireNonNull(latency);
+            return this;
+        }
+
+        /**
+         * @param slowRate    Part des appels anormalement lents (entre 0 et 1)
+         * @param slowLatency Durée de ces appels
+         */
+        public Builder slowCalls(double slowRate, Duration slowLatency) {
+            this.slowRate = slowRate;
+            this.slowLatency = Objects.requireNonNull(slowLatency);
+            return this;
+        }
+
+        /**
+         * @param failureRate    Part des appels en échec passager (entre 0 et 1)
+         * @param rateLimitShare Part de ces échecs signalés comme quota dépassé (429), le reste en 5xx
+         */
+        public Builder failures(double failureRate, double rateLimitShare) {
+            this.failureRate = failureRate;
+            this.rateLimitShare = rateLimitShare;
+            return this;
+        }
+
+        public FakeChatModel build() {
+            return new FakeChatModel(this);
+        }
+    }
+}
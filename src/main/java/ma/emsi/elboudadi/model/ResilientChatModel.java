@@ -0,0 +1,795 @@
+package ma.emsi.elboudadi.model;
+
+import dev.langchain4j.exception.HttpException;
+import dev.langchain4j.exception.LangChain4jException;
+import dev.langchain4j.exception.RateLimitException;
+import dev.langchain4j.exception.RetriableException;
+import dev.langchain4j.exception.TimeoutException;
+import dev.langchain4j.model.ModelProvider;
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.CompleteToolCall;
+import dev.langchain4j.model.chat.response.PartialResponse;
+import dev.langchain4j.model.chat.response.PartialResponseContext;
+import dev.langchain4j.model.chat.response.PartialThinking;
+import dev.langchain4j.model.chat.response.PartialThinkingContext;
+import dev.langchain4j.model.chat.response.PartialToolCall;
+import dev.langchain4j.model.chat.response.PartialToolCallContext;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import ma.emsi.elboudadi.metrics.LatencyHistogram;
+import ma.emsi.elboudadi.metrics.RagMetrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Décorateur d'un {@link ChatModel} qui protège l'application (et le quota) des
+ * aléas du fournisseur.
+ *
+ * Chaque appel passe successivement par :
+ * - un seau à jetons ({@code requestsPerSecond}, rafale {@code burst}) qui lisse le
+ *   débit sous le quota au lieu de le dépasser puis d'essuyer des erreurs 429 ;
+ * - un sémaphore qui borne les appels en cours ({@code maxConcurrentCalls}) ;
+ * - un disjoncteur : après {@code failureThreshold} échecs consécutifs, les appels
+ *   échouent immédiatement pendant {@code openDuration}, puis un seul appel d'essai
+ *   décide de la reprise ;
+ * - un délai maximal par tentative ({@code timeout}) ;
+ * - des nouvelles tentatives, pour les seules erreurs passagères (429, 5xx, délai
+ *   dépassé, réseau), espacées d'une attente exponentielle tirée au hasard ("full
+ *   jitter") pour que les sessions ne réessaient pas toutes au même instant ;
+ * - en option, une requête de couverture ("hedging") : si la réponse se fait attendre
+ *   au-delà du 95e centile des latences observées, une seconde requête identique est
+ *   lancée et la première réponse arrivée l'emporte. Elle n'est envoyée que si le seau
+ *   et le sémaphore ont de la place : la couverture ne doit pas aggraver une surcharge.
+ *
+ * Attendre le seau ou le sémaphore au-delà de {@code acquireTimeout} lève une
+ * {@link ThrottledException} ; un disjoncteur ouvert lève une {@link CircuitOpenException}.
+ *
+ * {@link #streaming(StreamingChatModel)} place un modèle en flux derrière le même seau,
+ * le même sémaphore et le même disjoncteur.
+ */
+public class ResilientChatModel implements ChatModel, AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(ResilientChatModel.class.getName());
+
+    public static final String RETRIES = "model.retries";
+    public static final String TIMEOUTS = "model.timeouts";
+    public static final String THROTTLED = "model.throttled";
+    public static final String HEDGES = "model.hedges";
+    public static final String HEDGE_WINS = "model.hedge_wins";
+    public static final String CIRCUIT_OPENED = "model.circuit.opened";
+    public static final String CIRCUIT_REJECTED = "model.circuit.rejected";
+
+    private final ChatModel delegate;
+    private final TokenBucket bucket;
+    private final Semaphore inFlight;
+    private final long acquireTimeoutNanos;
+    private final long timeoutNanos;
+    private final int maxRetries;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+    private final CircuitBreaker breaker;
+    private final boolean hedging;
+    private final double hedgeQuantile;
+    private final int hedgeMinSamples;
+    private final RagMetrics metrics;
+    /** Latences des appels réussis, pour le seuil de couverture */
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("model-call-", 0).factory());
+
+    private ResilientChatModel(Builder builder) {
+        this.delegate = Objects.requireNonNull(builder.delegate, "Le modèle délégué ne peut pas être null");
+        this.bucket = builder.requestsPerSecond > 0 ? new TokenBucket(builder.requestsPerSecond, builder.burst) : null;
+        this.inFlight = new Semaphore(builder.maxConcurrentCalls, true);
+        this.acquireTimeoutNanos = builder.acquireTimeout.toNanos();
+        this.timeoutNanos = builder.timeout.toNanos();
+        this.maxRetries = builder.maxRetries;
+        this.initialBackoffNanos = builder.initialBackoff.toNanos();
+        this.maxBackoffNanos = builder.maxBackoff.toNanos();
+        this.breaker = new CircuitBreaker(builder.failureThreshold, builder.openDuration.toNanos());
+        this.hedging = builder.hedging;
+        this.hedgeQuantile = builder.hedgeQuantile;
+        this.hedgeMinSamples = builder.hedgeMinSamples;
+        this.metrics = builder.metrics != null ? builder.metrics : RagMetrics.global();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public ChatResponse chat(ChatRequest request) {
+        for (int attempt = 0; ; attempt++) {
+            if (!breaker.tryAcquire()) {
+                metrics.increment(CIRCUIT_REJECTED);
+                throw new CircuitOpenException("Modèle indisponible : disjoncteur ouvert après "
+                        + breaker.failureThreshold + " échecs consécutifs");
+            }
+            try {
+                ChatResponse response = attempt(request);
+                breaker.onSuccess();
+                return response;
+            } catch (ThrottledException e) {
+                breaker.release();
+                throw e;
+            } catch (RuntimeException e) {
+                boolean transientFailure = isTransient(e);
+                if (transientFailure) {
+                    if (breaker.onFailure()) {
+                        metrics.increment(CIRCUIT_OPENED);
+                        LOGGER.warning("Disjoncteur ouvert pour " + breaker.openNanos / 1_000_000 + " ms : " + e);
+                    }
+                } else {
+                    // Le fournisseur a répondu : seule la requête est en cause
+                    breaker.onSuccess();
+                }
+                if (!transientFailure || attempt >= maxRetries) {
+                    throw e;
+                }
+                metrics.increment(RETRIES);
+                LOGGER.fine(() -> "Nouvelle tentative après : " + e);
+                sleep(backoff(attempt));
+            }
+        }
+    }
+
+    /**
+     * Protège un modèle en flux avec le seau à jetons, le sémaphore et le disjoncteur de
+     * ce modèle : réponses complètes et réponses en flux partagent le même quota.
+     *
+     * Une réponse en flux occupe sa place d'appel jusqu'à sa fin (ou son erreur) et ne
+     * dispose que de {@code timeout} pour se terminer. Elle n'est ni réessayée ni couverte :
+     * des fragments ont pu être transmis à l'appelant. Les refus (débit, appels simultanés,
+     * disjoncteur) et le délai dépassé arrivent par {@link StreamingChatResponseHandler#onError}.
+     *
+     * @param delegate Modèle en flux du même fournisseur
+     */
+    public StreamingChatModel streaming(StreamingChatModel delegate) {
+        return new GuardedStreamingModel(Objects.requireNonNull(delegate, "Le modèle délégué ne peut pas être null"));
+    }
+
+    /**
+     * Une tentative : la requête, puis éventuellement sa couverture ; la première
+     * réponse réussie l'emporte.
+     */
+    private ChatResponse attempt(ChatRequest request) {
+        long start = System.nanoTime();
+        long deadline = start + timeoutNanos;
+        CompletableFuture<ChatResponse> winner = new CompletableFuture<>();
+        AtomicInteger running = new AtomicInteger(1);
+        List<Call> calls = new ArrayList<>(2);
+        acquire(deadline);
+        // La latence mesurée exclut l'attente du seau et du sémaphore
+        long sent = System.nanoTime();
+        calls.add(start(new Call(request, winner, running, false)));
+        try {
+            long hedgeDelay = hedgeDelayNanos();
+            if (hedgeDelay > 0 && hedgeDelay < timeoutNanos) {
+                ChatResponse early = await(winner, Math.min(hedgeDelay, deadline - System.nanoTime()));
+                if (early != null) {
+                    return recorded(early, sent);
+                }
+                if (!winner.isDone() && tryAcquireNow()) {
+                    running.incrementAndGet();
+                    metrics.increment(HEDGES);
+                    calls.add(start(new Call(request, winner, running, true)));
+                }
+            }
+            ChatResponse response = await(winner, deadline - System.nanoTime());
+            if (response == null) {
+                metrics.increment(TIMEOUTS);
+                throw new TimeoutException("Pas de réponse du modèle après " + timeoutNanos / 1_000_000 + " ms");
+            }
+            return recorded(response, sent);
+        } finally {
+            // La requête perdante (ou hors délai) est interrompue
+            calls.forEach(Call::cancel);
+        }
+    }
+
+    private Call start(Call call) {
+        try {
+            executor.execute(call);
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            throw new IllegalStateException("Le modèle est fermé", e);
+        }
+        return call;
+    }
+
+    private ChatResponse recorded(ChatResponse response, long sent) {
+        latencies.recordNanos(System.nanoTime() - sent);
+        return response;
+    }
+
+    /**
+     * @return La réponse, ou null si elle n'est pas arrivée à temps
+     */
+    private static ChatResponse await(CompletableFuture<ChatResponse> winner, long nanos) {
+        try {
+            return winner.get(Math.max(0, nanos), TimeUnit.NANOSECONDS);
+        } catch (java.util.concurrent.TimeoutException e) {
+            return null;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new LangChain4jException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LangChain4jException(e);
+        }
+    }
+
+    /**
+     * Réserve un jeton de débit et une place d'appel, en attendant au plus
+     * {@code acquireTimeout} (et jamais au-delà de l'échéance de la tentative).
+     */
+    private void acquire(long deadline) {
+        long limit = Math.min(deadline, System.nanoTime() + acquireTimeoutNanos);
+        try {
+            if (bucket != null && !bucket.acquire(limit)) {
+                metrics.increment(THROTTLED);
+                throw new ThrottledException("Débit maximal vers le modèle atteint");
+            }
+            if (!inFlight.tryAcquire(Math.max(0, limit - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                metrics.increment(THROTTLED);
+                throw new ThrottledException("Trop d'appels simultanés au modèle");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LangChain4jException(e);
+        }
+    }
+
+    private boolean tryAcquireNow() {
+        if (!inFlight.tryAcquire()) {
+            return false;
+        }
+        if (bucket != null && !bucket.tryAcquire()) {
+            inFlight.release();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return Le délai avant couverture, 0 si la couverture est désactivée ou sans
+     *         assez de mesures
+     */
+    private long hedgeDelayNanos() {
+        if (!hedging || latencies.count() < hedgeMinSamples) {
+            return 0;
+        }
+        return latencies.percentileMicros(hedgeQuantile) * 1_000;
+    }
+
+    /**
+     * Erreurs passagères, qui valent une nouvelle tentative et comptent pour le disjoncteur.
+     */
+    static boolean isTransient(Throwable error) {
+        if (error instanceof CircuitOpenException || error instanceof ThrottledException) {
+            return false;
+        }
+        if (error instanceof RetriableException || error instanceof UncheckedIOException) {
+            return true;
+        }
+        if (error instanceof HttpException http) {
+            return http.statusCode() == 408 || http.statusCode() == 429 || http.statusCode() >= 500;
+        }
+        return error.getCause() instanceof IOException;
+    }
+
+    private long backoff(int attempt) {
+        long ceiling = Math.min(maxBackoffNanos, initialBackoffNanos << Math.min(attempt, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private static void sleep(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LangChain4jException(e);
+        }
+    }
+
+    /**
+     * @return Le seuil actuel de couverture, en millisecondes (0 tant qu'il n'est pas actif)
+     */
+    public double hedgeThresholdMillis() {
+        return hedgeDelayNanos() / 1e6;
+    }
+
+    /**
+     * @return true si le disjoncteur rejette actuellement les appels
+     */
+    public boolean circuitOpen() {
+        return breaker.isOpen();
+    }
+
+    @Override
+    public ChatRequestParameters defaultRequestParameters() {
+        return delegate.defaultRequestParameters();
+    }
+
+    @Override
+    public ModelProvider provider() {
+        return delegate.provider();
+    }
+
+    @Override
+    public Set<Capability> supportedCapabilities() {
+        return delegate.supportedCapabilities();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Levée sans appeler le modèle quand le disjoncteur est ouvert.
+     */
+    public static class CircuitOpenException extends LangChain4jException {
+        private static final long serialVersionUID = 1L;
+
+        public CircuitOpenException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Levée sans appeler le modèle quand le débit ou les appels simultanés sont à
+     * leur maximum : la saturation est locale, elle ne compte pas pour le disjoncteur
+     * et ne donne pas lieu à une nouvelle tentative.
+     */
+    public static class ThrottledException extends RateLimitException {
+        private static final long serialVersionUID = 1L;
+
+        public ThrottledException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Un appel au modèle, sur son propre thread virtuel ; sa place d'appel est rendue
+     * quoi qu'il arrive, même s'il est annulé avant d'avoir démarré.
+     */
+    private final class Call implements Runnable {
+        private final ChatRequest request;
+        private final CompletableFuture<ChatResponse> winner;
+        private final AtomicInteger running;
+        private final boolean hedge;
+        private volatile Thread thread;
+        private volatile boolean cancelled;
+
+        Call(ChatRequest request, CompletableFuture<ChatResponse> winner, AtomicInteger running, boolean hedge) {
+            this.request = request;
+            this.winner = winner;
+            this.running = running;
+            this.hedge = hedge;
+        }
+
+        @Override
+        public void run() {
+            thread = Thread.currentThread();
+            try {
+                if (cancelled) {
+                    return;
+                }
+                ChatResponse response = delegate.chat(request);
+                if (winner.complete(response) && hedge) {
+                    metrics.increment(HEDGE_WINS);
+                }
+            } catch (RuntimeException e) {
+                // Une erreur ne l'emporte que si plus aucune requête ne peut réussir
+                if (running.decrementAndGet() == 0) {
+                    winner.completeExceptionally(e);
+                }
+            } finally {
+                thread = null;
+                inFlight.release();
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            Thread running = thread;
+            if (running != null) {
+                running.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Modèle en flux derrière le seau, le sémaphore et le disjoncteur de ce modèle.
+     */
+    private final class GuardedStreamingModel implements StreamingChatModel {
+        private final StreamingChatModel delegate;
+
+        GuardedStreamingModel(StreamingChatModel delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void chat(ChatRequest request, StreamingChatResponseHandler handler) {
+            if (!breaker.tryAcquire()) {
+                metrics.increment(CIRCUIT_REJECTED);
+                handler.onError(new CircuitOpenException("Modèle indisponible : disjoncteur ouvert après "
+                        + breaker.failureThreshold + " échecs consécutifs"));
+                return;
+            }
+            try {
+                acquire(System.nanoTime() + timeoutNanos);
+            } catch (RuntimeException e) {
+                breaker.release();
+                handler.onError(e);
+                return;
+            }
+            GuardedHandler guarded = new GuardedHandler(handler);
+            try {
+                delegate.chat(request, guarded);
+            } catch (RuntimeException e) {
+                guarded.onError(e);
+            }
+        }
+
+        @Override
+        public ChatRequestParameters defaultRequestParameters() {
+            return delegate.defaultRequestParameters();
+        }
+
+        @Override
+        public ModelProvider provider() {
+            return delegate.provider();
+        }
+
+        @Override
+        public Set<Capability> supportedCapabilities() {
+            return delegate.supportedCapabilities();
+        }
+    }
+
+    /**
+     * Relaie une réponse en flux et rend sa place d'appel une seule fois : à la fin, à la
+     * première erreur ou à l'échéance. Ce qui arrive après est ignoré.
+     */
+    private final class GuardedHandler implements StreamingChatResponseHandler {
+        private final StreamingChatResponseHandler handler;
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        GuardedHandler(StreamingChatResponseHandler handler) {
+            this.handler = handler;
+            done.orTimeout(timeoutNanos, TimeUnit.NANOSECONDS).whenComplete((ignored, e) -> {
+                if (e instanceof java.util.concurrent.TimeoutException) {
+                    metrics.increment(TIMEOUTS);
+                    onError(new TimeoutException("Réponse en flux inachevée après " + timeoutNanos / 1_000_000 + " ms"));
+                }
+            });
+        }
+
+        @Override
+        public void onPartialResponse(String partialResponse) {
+            if (!finished.get()) {
+                handler.onPartialResponse(partialResponse);
+            }
+        }
+
+        @Override
+        public void onPartialResponse(PartialResponse partialResponse, PartialResponseContext context) {
+            if (!finished.get()) {
+                handler.onPartialResponse(partialResponse, context);
+            }
+        }
+
+        @Override
+        public void onPartialThinking(PartialThinking partialThinking) {
+            if (!finished.get()) {
+                handler.onPartialThinking(partialThinking);
+            }
+        }
+
+        @Override
+        public void onPartialThinking(PartialThinking partialThinking, PartialThinkingContext context) {
+            if (!finished.get()) {
+                handler.onPartialThinking(partialThinking, context);
+            }
+        }
+
+        @Override
+        public void onPartialToolCall(PartialToolCall partialToolCall) {
+            if (!finished.get()) {
+                handler.onPartialToolCall(partialToolCall);
+            }
+        }
+
+        @Override
+        public void onPartialToolCall(PartialToolCall partialToolCall, PartialToolCallContext context) {
+            if (!finished.get()) {
+                handler.onPartialToolCall(partialToolCall, context);
+            }
+        }
+
+        @Override
+        public void onCompleteToolCall(CompleteToolCall completeToolCall) {
+            if (!finished.get()) {
+                handler.onCompleteToolCall(completeToolCall);
+            }
+        }
+
+        @Override
+        public void onCompleteResponse(ChatResponse response) {
+            if (finish()) {
+                breaker.onSuccess();
+                handler.onCompleteResponse(response);
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            if (!finish()) {
+                return;
+            }
+            if (isTransient(error) || error instanceof TimeoutException) {
+                if (breaker.onFailure()) {
+                    metrics.increment(CIRCUIT_OPENED);
+                    LOGGER.warning("Disjoncteur ouvert pour " + breaker.openNanos / 1_000_000 + " ms : " + error);
+                }
+            } else {
+                breaker.onSuccess();
+            }
+            handler.onError(error);
+        }
+
+        private boolean finish() {
+            if (!finished.compareAndSet(false, true)) {
+                return false;
+            }
+            inFlight.release();
+            done.complete(null);
+            return true;
+        }
+    }
+
+    /**
+     * Seau à jetons : {@code rate} jetons par seconde, au plus {@code capacity} en réserve.
+     * Un appelant qui doit attendre réserve son jeton (le solde devient négatif) puis
+     * dort hors du verrou : les suivants attendent leur tour sans se bousculer.
+     */
+    private static final class TokenBucket {
+        private final double ratePerNano;
+        private final double capacity;
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+
+        TokenBucket(double ratePerSecond, int capacity) {
+            this.ratePerNano = ratePerSecond / 1e9;
+            this.capacity = capacity;
+            this.tokens = capacity;
+        }
+
+        boolean acquire(long deadline) throws InterruptedException {
+            long wait;
+            synchronized (this) {
+                long now = refill();
+                wait = tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / ratePerNano);
+                if (now + wait > deadline) {
+                    return false;
+                }
+                tokens -= 1;
+            }
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            return true;
+        }
+
+        synchronized boolean tryAcquire() {
+            refill();
+            if (tokens < 1) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        }
+
+        private long refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * ratePerNano);
+            refilledAt = now;
+            return now;
+        }
+    }
+
+    /**
+     * Disjoncteur fermé / ouvert / semi-ouvert, sur les échecs consécutifs.
+     */
+    private static final class CircuitBreaker {
+        private final int failureThreshold;
+        private final long openNanos;
+        private int consecutiveFailures;
+        private long openedAt;
+        private boolean open;
+        private boolean probing;
+
+        CircuitBreaker(int failureThreshold, long openNanos) {
+            this.failureThreshold = failureThreshold;
+            this.openNanos = openNanos;
+        }
+
+        /**
+         * @return false si l'appel doit être rejeté ; après {@code openDuration}, un seul
+         *         appel d'essai passe
+         */
+        synchronized boolean tryAcquire() {
+            if (!open) {
+                return true;
+            }
+            if (probing || System.nanoTime() - openedAt < openNanos) {
+                return false;
+            }
+            probing = true;
+            return true;
+        }
+
+        /**
+         * L'appel autorisé n'a pas eu lieu : un autre pourra servir d'essai.
+         */
+        synchronized void release() {
+            probing = false;
+        }
+
+        synchronized void onSuccess() {
+            consecutiveFailures = 0;
+            open = false;
+            probing = false;
+        }
+
+        /**
+         * @return true si cet échec ouvre le disjoncteur
+         */
+        synchronized boolean onFailure() {
+            consecutiveFailures++;
+            if (probing || (!open && consecutiveFailures >= failureThreshold)) {
+                open = true;
+                probing = false;
+                openedAt = System.nanoTime();
+                return true;
+            }
+            return false;
+        }
+
+        synchronized boolean isOpen() {
+            return open;
+        }
+    }
+
+    public static class Builder {
+        private ChatModel delegate;
+        private double requestsPerSecond;
+        private int burst = 10;
+        private int maxConcurrentCalls = 16;
+        private Duration acquireTimeout = Duration.ofSeconds(10);
+        private Duration timeout = Duration.ofSeconds(60);
+        private int maxRetries = 2;
+        private Duration initialBackoff = Duration.ofMillis(250);
+        private Duration maxBackoff = Duration.ofSeconds(8);
+        private int failureThreshold = 5;
+        private Duration openDuration = Duration.ofSeconds(30);
+        private boolean hedging;
+        private double hedgeQuantile = 0.95;
+        private int hedgeMinSamples = 20;
+        private RagMetrics metrics;
+
+        public Builder delegate(ChatModel delegate) {
+            this.delegate = delegate;
+            return this;
+        }
+
+        /**
+         * @param requestsPerSecond Débit maximal vers le modèle (0 : pas de limite)
+         * @param burst             Appels possibles d'un coup après une période calme
+         */
+        public Builder rateLimit(double requestsPerSecond, int burst) {
+            this.requestsPerSecond = Math.max(0, requestsPerSecond);
+            this.burst = Math.max(1, burst);
+            return this;
+        }
+
+        /**
+         * @param maxConcurrentCalls Appels au modèle en cours simultanément (couvertures comprises)
+         */
+        public Builder maxConcurrentCalls(int maxConcurrentCalls) {
+            this.maxConcurrentCalls = Math.max(1, maxConcurrentCalls);
+            return this;
+        }
+
+        /**
+         * @param acquireTimeout Attente maximale d'un jeton de débit et d'une place d'appel
+         */
+        public Builder acquireTimeout(Duration acquireTimeout) {
+            this.acquireTimeout = Objects.requireNonNull(acquireTimeout);
+            return this;
+        }
+
+        /**
+         * @param timeout Durée maximale d'une tentative
+         */
+        public Builder timeout(Duration timeout) {
+            this.timeout = Objects.requireNonNull(timeout);
+            return this;
+        }
+
+        /**
+         * @param maxRetries     Nouvelles tentatives après une erreur passagère
+         * @param initialBackoff Attente maximale avant la première ; doublée à chaque tentative
+         * @param maxBackoff     Plafond de l'attente
+         */
+        public Builder retries(int maxRetries, Duration initialBackoff, Duration maxBackoff) {
+            this.maxRetries = Math.max(0, maxRetries);
+            this.initialBackoff = Objects.requireNonNull(initialBackoff);
+            this.maxBackoff = Objects.requireNonNull(maxBackoff);
+            return this;
+        }
+
+        /**
+         * @param failureThreshold Échecs passagers consécutifs qui ouvrent le disjoncteur
+         * @param openDuration     Durée pendant laquelle les appels sont rejetés
+         */
+        public Builder circuitBreaker(int failureThreshold, Duration openDuration) {
+            this.failureThreshold = Math.max(1, failureThreshold);
+            this.openDuration = Objects.requireNonNull(openDuration);
+            return this;
+        }
+
+        /**
+         * @param hedging true pour lancer une requête de couverture au-delà du 95e centile
+         */
+        public Builder hedging(boolean hedging) {
+            this.hedging = hedging;
+            return this;
+        }
+
+        /**
+         * @param quantile   Centile des latences au-delà duquel la couverture part
+         * @param minSamples Appels réussis à observer avant d'activer la couverture
+         */
+        public Builder hedgeAfter(double quantile, int minSamples) {
+            this.hedgeQuantile = Math.min(0.999, Math.max(0.5, quantile));
+            this.hedgeMinSamples = Math.max(1, minSamples);
+            return this;
+        }
+
+        public Builder metrics(RagMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        public ResilientChatModel build() {
+            return new ResilientChatModel(this);
+        }
+    }
+}
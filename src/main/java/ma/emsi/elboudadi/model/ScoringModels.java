@@ -0,0 +1,46 @@
+package ma.emsi.elboudadi.model;
+
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import dev.langchain4j.model.scoring.ScoringModel;
+import dev.langchain4j.model.scoring.onnx.OnnxScoringModel;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Modèles de score (question, passage) pour le reclassement des contenus retrouvés.
+ *
+ * Un cross-encoder ONNX (ms-marco-MiniLM, bge-reranker...) lit la question et le passage
+ * ensemble : c'est le score le plus fiable, mais le modèle n'est pas livré avec
+ * l'application et doit être fourni (fichier {@code .onnx} et {@code tokenizer.json}).
+ * Sans lui, pas de reclassement : comparer les embeddings du modèle BGE ne ferait que
+ * recalculer le score de la recherche vectorielle.
+ */
+public final class ScoringModels {
+
+    /** Longueur maximale (en jetons) d'une paire question + passage pour le cross-encoder */
+    private static final int CROSS_ENCODER_MAX_LENGTH = 512;
+
+    private ScoringModels() {
+    }
+
+    /**
+     * Chaque session ONNX n'utilise qu'un cœur : le parallélisme vient des lots
+     * évalués simultanément par le reclassement, dont le budget de calcul reste ainsi mesurable.
+     *
+     * @return Un cross-encoder ONNX local, scores ramenés entre 0 et 1 (sigmoïde)
+     */
+    public static ScoringModel crossEncoder(Path model, Path tokenizer) {
+        if (!Files.isRegularFile(model) || !Files.isRegularFile(tokenizer)) {
+            throw new IllegalArgumentException("Modèle de reclassement introuvable : " + model + ", " + tokenizer);
+        }
+        try {
+            OrtSession.SessionOptions options = new OrtSession.SessionOptions();
+            options.setIntraOpNumThreads(1);
+            return new OnnxScoringModel(model.toString(), options, tokenizer.toString(), CROSS_ENCODER_MAX_LENGTH, true);
+        } catch (OrtException e) {
+            throw new IllegalStateException("Impossible de configurer la session ONNX du reclassement", e);
+        }
+    }
+}
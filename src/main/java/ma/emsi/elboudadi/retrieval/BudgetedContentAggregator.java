@@ -0,0 +1,263 @@
+package ma.emsi.elboudadi.retrieval;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.TokenCountEstimator;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.aggregator.ContentAggregator;
+import dev.langchain4j.rag.query.Query;
+import ma.emsi.elboudadi.metrics.RagMetrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+import java.util.logging.Logger;
+
+/**
+ * Assemble le contexte injecté dans le prompt sous un budget de jetons.
+ *
+ * Remplace le {@code DefaultContentAggregator} de {@code DefaultRetrievalAugmentor} :
+ * - les listes des retrievers sont fusionnées par rang réciproque (comme par défaut) ;
+ * - les quasi-doublons sont écartés : un contenu dont l'empreinte {@link SimHash} est
+ *   à au plus {@code maxHammingDistance} bits d'un contenu déjà retenu n'apporte rien
+ *   (même passage extrait de deux documents, page Web reprenant le PDF...) ;
+ * - si un {@link ContentReranker} est configuré, les contenus restants sont reclassés
+ *   (et les moins pertinents écartés) avant d'être soumis au budget ;
+ * - les contenus sont retenus dans l'ordre du classement tant qu'ils tiennent dans le
+ *   budget ; un contenu trop long est ignoré au profit des suivants, sauf s'il reste
+ *   assez de place pour en garder le début, coupé à une fin de phrase.
+ *
+ * Chaque requête produit un {@link ContextReport} (jetons récupérés, injectés et
+ * économisés), journalisé au niveau FINE, ajouté aux compteurs de {@link RagMetrics}
+ * et transmis à l'écouteur éventuel.
+ */
+public class BudgetedContentAggregator implements ContentAggregator {
+
+    private static final Logger LOGGER = Logger.getLogger(BudgetedContentAggregator.class.getName());
+
+    public static final String TOKENS_RETRIEVED = "context.tokens.retrieved";
+    public static final String TOKENS_INJECTED = "context.tokens.injected";
+    public static final String TOKENS_SAVED = "context.tokens.saved";
+    public static final String DUPLICATES = "context.duplicates";
+    public static final String DROPPED = "context.dropped";
+
+    private final int maxTokens;
+    private final int maxHammingDistance;
+    private final int minPartialTokens;
+    private final int rrfK;
+    private final ToIntFunction<String> tokenCounter;
+    private final ContentReranker reranker;
+    private final Consumer<ContextReport> listener;
+    private final RagMetrics metrics;
+
+    private BudgetedContentAggregator(Builder builder) {
+        this.maxTokens = builder.maxTokens;
+        this.maxHammingDistance = builder.maxHammingDistance;
+        this.minPartialTokens = builder.minPartialTokens;
+        this.rrfK = builder.rrfK;
+        this.tokenCounter = builder.tokenCounter;
+        this.reranker = builder.reranker;
+        this.listener = builder.listener;
+        this.metrics = builder.metrics != null ? builder.metrics : RagMetrics.global();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public List<Content> aggregate(Map<Query, Collection<List<Content>>> queryToContents) {
+        List<List<Content>> rankings = new ArrayList<>();
+        queryToContents.values().forEach(rankings::addAll);
+        List<Content> ranked = ReciprocalRankFusion.fuse(rrfK, Integer.MAX_VALUE, rankings);
+
+        List<Content> distinct = new ArrayList<>(ranked.size());
+        List<Long> fingerprints = new ArrayList<>(ranked.size());
+        int retrievedTokens = 0;
+        int duplicates = 0;
+        for (Content content : ranked) {
+            String text = content.textSegment().text();
+            retrievedTokens += tokenCounter.applyAsInt(text);
+            long fingerprint = SimHash.of(text);
+            if (isNearDuplicate(fingerprint, fingerprints)) {
+                duplicates++;
+            } else {
+                distinct.add(content);
+                fingerprints.add(fingerprint);
+            }
+        }
+
+        // Doublons écartés d'abord : le modèle de score n'évalue chaque passage qu'une fois
+        List<Content> candidates = distinct;
+        if (reranker != null && !queryToContents.isEmpty()) {
+            candidates = reranker.rerank(queryToContents.keySet().iterator().next().text(), distinct);
+        }
+        int dropped = distinct.size() - candidates.size();
+
+        List<Content> selected = new ArrayList<>(candidates.size());
+        int injectedTokens = 0;
+        for (Content content : candidates) {
+            int tokens = tokenCounter.applyAsInt(content.textSegment().text());
+            int remaining = maxTokens - injectedTokens;
+            if (tokens <= remaining) {
+                selected.add(content);
+                injectedTokens += tokens;
+            } else if (remaining >= minPartialTokens) {
+                Content truncated = truncate(content, remaining, tokens);
+                int truncatedTokens = tokenCounter.applyAsInt(truncated.textSegment().text());
+                if (truncatedTokens <= remaining) {
+                    selected.add(truncated);
+                    injectedTokens += truncatedTokens;
+                } else {
+                    dropped++;
+                }
+            } else {
+                dropped++;
+            }
+        }
+
+        ContextReport report = new ContextReport(ranked.size(), selected.size(), duplicates, dropped,
+                retrievedTokens, injectedTokens);
+        metrics.add(TOKENS_RETRIEVED, retrievedTokens);
+        metrics.add(TOKENS_INJECTED, injectedTokens);
+        metrics.add(TOKENS_SAVED, report.savedTokens());
+        metrics.add(DUPLICATES, duplicates);
+        metrics.add(DROPPED, dropped);
+        LOGGER.fine(report::toString);
+        if (listener != null) {
+            listener.accept(report);
+        }
+        return selected;
+    }
+
+    private boolean isNearDuplicate(long fingerprint, List<Long> fingerprints) {
+        for (long kept : fingerprints) {
+            if (SimHash.distance(fingerprint, kept) <= maxHammingDistance) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Garde le début d'un contenu, proportionnellement à la place restante, coupé à
+     * la dernière fin de phrase si elle n'est pas trop loin.
+     */
+    private static Content truncate(Content content, int remainingTokens, int tokens) {
+        String text = content.textSegment().text();
+        // Marge de deux jetons pour la marque de coupure
+        int length = (int) ((long) text.length() * Math.max(1, remainingTokens - 2) / tokens);
+        int cut = length;
+        for (int i = length - 1; i > length / 2; i--) {
+            char c = text.charAt(i);
+            if (c == '.' || c == '!' || c == '?' || c == '\n') {
+                cut = i + 1;
+                break;
+            }
+        }
+        TextSegment segment = TextSegment.from(text.substring(0, cut).strip() + " […]",
+                content.textSegment().metadata());
+        return Content.from(segment, content.metadata());
+    }
+
+    /**
+     * Bilan de l'assemblage du contexte d'une requête.
+     *
+     * @param retrieved      Contenus distincts renvoyés par les retrievers
+     * @param injected       Contenus retenus dans le prompt
+     * @param duplicates     Quasi-doublons écartés
+     * @param dropped        Contenus écartés faute de place ou par le reclassement
+     * @param retrievedTokens Jetons des contenus renvoyés
+     * @param injectedTokens  Jetons effectivement injectés
+     */
+    public record ContextReport(int retrieved, int injected, int duplicates, int dropped,
+                                int retrievedTokens, int injectedTokens) {
+
+        public int savedTokens() {
+            return retrievedTokens - injectedTokens;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Contexte : %d contenus -> %d (%d doublons, %d écartés), %d jetons -> %d (%d économisés)",
+                    retrieved, injected, duplicates, dropped, retrievedTokens, injectedTokens, savedTokens());
+        }
+    }
+
+    public static class Builder {
+        private int maxTokens = 1_500;
+        private int maxHammingDistance = 10;
+        private int minPartialTokens = 80;
+        private int rrfK = 60;
+        private ToIntFunction<String> tokenCounter = text -> (text.length() + 3) / 4;
+        private ContentReranker reranker;
+        private Consumer<ContextReport> listener;
+        private RagMetrics metrics;
+
+        /**
+         * @param maxTokens Budget de jetons du contexte injecté
+         */
+        public Builder maxTokens(int maxTokens) {
+            this.maxTokens = Math.max(1, maxTokens);
+            return this;
+        }
+
+        /**
+         * @param maxHammingDistance Écart maximal (en bits sur 64) entre deux empreintes
+         *                           considérées comme quasi-doublons ; négatif : pas de dédoublonnage
+         */
+        public Builder maxHammingDistance(int maxHammingDistance) {
+            this.maxHammingDistance = maxHammingDistance;
+            return this;
+        }
+
+        /**
+         * @param minPartialTokens Place restante minimale pour garder le début d'un contenu trop long
+         */
+        public Builder minPartialTokens(int minPartialTokens) {
+            this.minPartialTokens = Math.max(1, minPartialTokens);
+            return this;
+        }
+
+        public Builder rrfK(int rrfK) {
+            this.rrfK = Math.max(0, rrfK);
+            return this;
+        }
+
+        /**
+         * @param estimator Estimateur de jetons du modèle ; par défaut, 4 caractères par jeton
+         */
+        public Builder tokenCountEstimator(TokenCountEstimator estimator) {
+            this.tokenCounter = Objects.requireNonNull(estimator)::estimateTokenCountInText;
+            return this;
+        }
+
+        /**
+         * @param reranker Reclassement des contenus avant le budget (facultatif)
+         */
+        public Builder reranker(ContentReranker reranker) {
+            this.reranker = reranker;
+            return this;
+        }
+
+        /**
+         * @param listener Reçoit le bilan de chaque requête (facultatif)
+         */
+        public Builder listener(Consumer<ContextReport> listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        public Builder metrics(RagMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        public BudgetedContentAggregator build() {
+            return new BudgetedContentAggregator(this);
+        }
+    }
+}
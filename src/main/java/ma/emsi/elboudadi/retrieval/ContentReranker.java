@@ -0,0 +1,271 @@
+package ma.emsi.elboudadi.retrieval;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.scoring.ScoringModel;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.ContentMetadata;
+import ma.emsi.elboudadi.metrics.RagMetrics;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reclasse les contenus retrouvés avec un {@link ScoringModel} (cross-encoder ONNX) pour
+ * n'envoyer au modèle que les meilleurs.
+ *
+ * - seuls les {@code maxCandidates} premiers contenus du classement initial sont évalués ;
+ * - les paires (question, passage) sont évaluées par lots de {@code batchSize}, une vague
+ *   de {@code parallelism} lots à la fois, dans l'ordre du classement initial ;
+ * - arrêt anticipé : si aucun contenu d'une vague n'atteint {@code minScore}, les
+ *   suivants, moins bien classés, sont écartés sans être évalués ;
+ * - budget de calcul par question : une fois la durée cumulée des lots au-delà de
+ *   {@code cpuBudget} (un lot occupe un cœur), les contenus restants gardent leur rang
+ *   initial, derrière ceux déjà évalués ;
+ * - les contenus sous {@code minScore} sont écartés (au moins {@code minResults} gardés),
+ *   puis le résultat est limité à {@code maxResults}.
+ *
+ * Le score retenu est ajouté aux métadonnées ({@link ContentMetadata#RERANKED_SCORE}).
+ * En cas d'échec du modèle, les contenus du lot concerné gardent leur rang initial.
+ */
+public class ContentReranker implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(ContentReranker.class.getName());
+
+    public static final String RERANK = "rerank";
+    public static final String SCORED = "rerank.scored";
+    public static final String DROPPED = "rerank.dropped";
+    public static final String EARLY_EXITS = "rerank.early_exits";
+    public static final String OVER_BUDGET = "rerank.over_budget";
+
+    private final ScoringModel scoringModel;
+    private final int maxCandidates;
+    private final int batchSize;
+    private final int parallelism;
+    private final double minScore;
+    private final int minResults;
+    private final int maxResults;
+    private final long cpuBudgetNanos;
+    private final ExecutorService executor;
+    private final RagMetrics metrics;
+
+    private ContentReranker(Builder builder) {
+        this.scoringModel = Objects.requireNonNull(builder.scoringModel, "Le modèle de score ne peut pas être null");
+        this.maxCandidates = builder.maxCandidates;
+        this.batchSize = builder.batchSize;
+        this.parallelism = builder.parallelism;
+        this.minScore = builder.minScore;
+        this.minResults = builder.minResults;
+        this.maxResults = builder.maxResults;
+        this.cpuBudgetNanos = builder.cpuBudget.toNanos();
+        this.executor = Executors.newFixedThreadPool(parallelism,
+                Thread.ofPlatform().daemon().name("rerank-", 0).factory());
+        this.metrics = builder.metrics != null ? builder.metrics : RagMetrics.global();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @param query      Texte de la question
+     * @param candidates Contenus dans l'ordre du classement initial
+     * @return Les contenus retenus, du plus pertinent au moins pertinent
+     */
+    public List<Content> rerank(String query, List<Content> candidates) {
+        if (candidates.isEmpty()) {
+            return candidates;
+        }
+        return metrics.time(RERANK, () -> doRerank(query, candidates));
+    }
+
+    private List<Content> doRerank(String query, List<Content> candidates) {
+        List<Content> pool = candidates.subList(0, Math.min(maxCandidates, candidates.size()));
+        List<Scored> scored = new ArrayList<>(pool.size());
+        List<Content> unscored = new ArrayList<>();
+        long spentNanos = 0;
+        int next = 0;
+        boolean earlyExit = false;
+
+        while (next < pool.size() && !earlyExit) {
+            if (spentNanos >= cpuBudgetNanos) {
+                unscored.addAll(pool.subList(next, pool.size()));
+                metrics.increment(OVER_BUDGET);
+                break;
+            }
+            List<CompletableFuture<Batch>> wave = new ArrayList<>(parallelism);
+            for (int i = 0; i < parallelism && next < pool.size(); i++) {
+                List<Content> batch = pool.subList(next, Math.min(next + batchSize, pool.size()));
+                wave.add(CompletableFuture.supplyAsync(() -> score(query, batch), executor));
+                next += batch.size();
+            }
+            boolean anyAboveThreshold = false;
+            for (CompletableFuture<Batch> future : wave) {
+                Batch batch = future.join();
+                spentNanos += batch.nanos();
+                if (batch.scores() == null) {
+                    unscored.addAll(batch.contents());
+                    anyAboveThreshold = true;
+                    continue;
+                }
+                for (int i = 0; i < batch.contents().size(); i++) {
+                    double score = batch.scores().get(i);
+                    scored.add(new Scored(batch.contents().get(i), score));
+                    anyAboveThreshold |= score >= minScore;
+                }
+            }
+            if (!anyAboveThreshold && next < pool.size()) {
+                // Le classement initial n'est pas aléatoire : passé une vague entière sous
+                // le seuil, les contenus suivants ont peu de chances de l'atteindre
+                earlyExit = true;
+                metrics.increment(EARLY_EXITS);
+            }
+        }
+
+        scored.sort(Comparator.comparingDouble(Scored::score).reversed());
+        List<Content> kept = new ArrayList<>(Math.min(maxResults, pool.size()));
+        for (Scored candidate : scored) {
+            if (kept.size() >= maxResults || (candidate.score() < minScore && kept.size() >= minResults)) {
+                break;
+            }
+            kept.add(candidate.withScore());
+        }
+        for (Content content : unscored) {
+            if (kept.size() >= maxResults) {
+                break;
+            }
+            kept.add(content);
+        }
+        metrics.add(SCORED, scored.size());
+        metrics.add(DROPPED, candidates.size() - kept.size());
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(String.format("Reclassement : %d contenus -> %d (%d évalués, %.1f ms de calcul%s)",
+                    candidates.size(), kept.size(), scored.size(), spentNanos / 1e6, earlyExit ? ", arrêt anticipé" : ""));
+        }
+        return kept;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private Batch score(String query, List<Content> contents) {
+        long start = System.nanoTime();
+        try {
+            List<TextSegment> segments = contents.stream().map(Content::textSegment).toList();
+            List<Double> scores = scoringModel.scoreAll(segments, query).content();
+            return new Batch(contents, scores, System.nanoTime() - start);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Échec du reclassement d'un lot, rang initial conservé : " + e.getMessage(), e);
+            return new Batch(contents, null, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @param scores Scores du lot, null si le modèle a échoué
+     */
+    private record Batch(List<Content> contents, List<Double> scores, long nanos) {
+    }
+
+    private record Scored(Content content, double score) {
+
+        Content withScore() {
+            Map<ContentMetadata, Object> metadata = new LinkedHashMap<>(content.metadata());
+            metadata.put(ContentMetadata.RERANKED_SCORE, score);
+            return Content.from(content.textSegment(), metadata);
+        }
+    }
+
+    public static class Builder {
+        private ScoringModel scoringModel;
+        private int maxCandidates = 32;
+        private int batchSize = 8;
+        private int parallelism = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        private double minScore = Double.NEGATIVE_INFINITY;
+        private int minResults = 1;
+        private int maxResults = Integer.MAX_VALUE;
+        private Duration cpuBudget = Duration.ofMillis(200);
+        private RagMetrics metrics;
+
+        public Builder scoringModel(ScoringModel scoringModel) {
+            this.scoringModel = scoringModel;
+            return this;
+        }
+
+        /**
+         * @param maxCandidates Contenus du classement initial soumis au modèle de score
+         */
+        public Builder maxCandidates(int maxCandidates) {
+            this.maxCandidates = Math.max(1, maxCandidates);
+            return this;
+        }
+
+        /**
+         * @param batchSize Paires (question, passage) évaluées par appel au modèle
+         */
+        public Builder batchSize(int batchSize) {
+            this.batchSize = Math.max(1, batchSize);
+            return this;
+        }
+
+        /**
+         * @param parallelism Lots évalués simultanément (par défaut, la moitié des cœurs :
+         *                    l'autre reste aux requêtes en cours)
+         */
+        public Builder parallelism(int parallelism) {
+            this.parallelism = Math.max(1, parallelism);
+            return this;
+        }
+
+        /**
+         * @param minScore Score en dessous duquel un contenu est écarté et qui déclenche
+         *                 l'arrêt anticipé (dépend du modèle de score)
+         */
+        public Builder minScore(double minScore) {
+            this.minScore = minScore;
+            return this;
+        }
+
+        /**
+         * @param minResults Contenus gardés même sous {@code minScore}, pour qu'un seuil mal
+         *                   calibré ne supprime pas tout le contexte
+         */
+        public Builder minResults(int minResults) {
+            this.minResults = Math.max(0, minResults);
+            return this;
+        }
+
+        public Builder maxResults(int maxResults) {
+            this.maxResults = Math.max(1, maxResults);
+            return this;
+        }
+
+        /**
+         * @param cpuBudget Temps de calcul cumulé des lots par question, au-delà duquel
+         *                  aucun nouveau lot n'est lancé
+         */
+        public Builder cpuBudget(Duration cpuBudget) {
+            this.cpuBudget = Objects.requireNonNull(cpuBudget);
+            return this;
+        }
+
+        public Builder metrics(RagMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        public ContentReranker build() {
+            return new ContentReranker(this);
+        }
+    }
+}
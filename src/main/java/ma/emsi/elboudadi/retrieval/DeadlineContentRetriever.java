@@ -0,0 +1,74 @@
+package ma.emsi.elboudadi.retrieval;
+
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Retriever soumis à un délai : si la source ne répond pas à temps, elle est
+ * abandonnée pour cette question (liste vide) au lieu de retarder toute la réponse.
+ * Une erreur de la source est traitée de la même façon.
+ */
+public class DeadlineContentRetriever implements ContentRetriever {
+
+    private static final Logger LOGGER = Logger.getLogger(DeadlineContentRetriever.class.getName());
+
+    private final String name;
+    private final ContentRetriever delegate;
+    private final long deadlineNanos;
+    private final ExecutorService executor;
+    private final RetrievalStats stats;
+
+    DeadlineContentRetriever(String name, ContentRetriever delegate, Duration deadline,
+                             ExecutorService executor, RetrievalStats stats) {
+        this.name = Objects.requireNonNull(name);
+        this.delegate = Objects.requireNonNull(delegate);
+        this.deadlineNanos = deadline.toNanos();
+        this.executor = executor;
+        this.stats = stats;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        long start = System.nanoTime();
+        Future<List<Content>> future = executor.submit(() -> delegate.retrieve(query));
+        try {
+            List<Content> contents = future.get(deadlineNanos, TimeUnit.NANOSECONDS);
+            stats.record(name, RetrievalStats.Outcome.OK, System.nanoTime() - start);
+            return contents;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            stats.record(name, RetrievalStats.Outcome.TIMEOUT, System.nanoTime() - start);
+            LOGGER.warning("⏱ Source « " + name + " » abandonnée après " + deadlineNanos / 1_000_000 + " ms");
+            return List.of();
+        } catch (ExecutionException e) {
+            stats.record(name, RetrievalStats.Outcome.ERROR, System.nanoTime() - start);
+            LOGGER.log(Level.WARNING, "Erreur de la source « " + name + " » : " + e.getCause().getMessage(), e.getCause());
+            return List.of();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return List.of();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,67 @@
+package ma.emsi.elboudadi.retrieval;
+
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Interrogation concurrente des sources routées, sur threads virtuels, avec un
+ * délai par source.
+ *
+ * S'installe sur un {@code DefaultRetrievalAugmentor} existant :
+ * <pre>
+ * FanOutRetrieval fanOut = FanOutRetrieval.withDefaultDeadline(Duration.ofSeconds(2));
+ * ContentRetriever web = fanOut.withDeadline("Web", webRetriever, Duration.ofSeconds(3));
+ * DefaultRetrievalAugmentor.builder()
+ *         .queryRouter(router)
+ *         .executor(fanOut.executor())
+ *         .build();
+ * </pre>
+ * L'exécuteur lance chaque retriever routé dans son propre thread virtuel ; chaque
+ * retriever enveloppé abandonne sa source au-delà de son délai, de sorte qu'une
+ * source lente (recherche Web notamment) ne bloque plus la réponse.
+ */
+public class FanOutRetrieval implements AutoCloseable {
+
+    private final Duration defaultDeadline;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final RetrievalStats stats = new RetrievalStats();
+
+    private FanOutRetrieval(Duration defaultDeadline) {
+        this.defaultDeadline = Objects.requireNonNull(defaultDeadline);
+    }
+
+    public static FanOutRetrieval withDefaultDeadline(Duration defaultDeadline) {
+        return new FanOutRetrieval(defaultDeadline);
+    }
+
+    /**
+     * Enveloppe un retriever avec le délai par défaut.
+     */
+    public ContentRetriever withDeadline(String name, ContentRetriever retriever) {
+        return withDeadline(name, retriever, defaultDeadline);
+    }
+
+    public ContentRetriever withDeadline(String name, ContentRetriever retriever, Duration deadline) {
+        return new DeadlineContentRetriever(name, retriever, deadline, executor, stats);
+    }
+
+    /**
+     * @return L'exécuteur à passer à {@code DefaultRetrievalAugmentor.builder().executor(...)}
+     */
+    public ExecutorService executor() {
+        return executor;
+    }
+
+    public RetrievalStats stats() {
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
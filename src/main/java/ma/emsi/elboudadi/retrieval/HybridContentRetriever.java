@@ -0,0 +1,132 @@
+package ma.emsi.elboudadi.retrieval;
+
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import ma.emsi.elboudadi.lexical.Bm25ContentRetriever;
+import ma.emsi.elboudadi.lexical.Bm25Index;
+import ma.emsi.elboudadi.metrics.RagMetrics;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Recherche hybride : vectorielle + lexicale (BM25), fusionnées par rang réciproque (RRF).
+ *
+ * La fusion ({@link ReciprocalRankFusion}) ne compare que des rangs : les scores
+ * cosinus et BM25, d'échelles différentes, n'ont pas à être normalisés.
+ *
+ * Raccourci lexical : une question courte qui cite un identifiant présent dans le
+ * document ({@code EmbeddingStoreContentRetriever}, {@code RAG}...) est servie par
+ * le seul index BM25, sans calcul d'embedding ni recherche vectorielle.
+ */
+public class HybridContentRetriever implements ContentRetriever {
+
+    public static final String FAST_PATH = "hybrid.lexical_fast_path";
+    public static final String FUSED = "hybrid.fused";
+
+    private final ContentRetriever dense;
+    private final Bm25Index lexical;
+    private final int maxResults;
+    private final int candidates;
+    private final int rrfK;
+    private final boolean lexicalFastPath;
+    private final int fastPathMaxWords;
+    private final RagMetrics metrics;
+
+    private HybridContentRetriever(Builder builder) {
+        this.dense = Objects.requireNonNull(builder.dense, "Le retriever vectoriel ne peut pas être null");
+        this.lexical = Objects.requireNonNull(builder.lexical, "L'index lexical ne peut pas être null");
+        this.maxResults = builder.maxResults;
+        this.candidates = Math.max(builder.candidates, builder.maxResults);
+        this.rrfK = builder.rrfK;
+        this.lexicalFastPath = builder.lexicalFastPath;
+        this.fastPathMaxWords = builder.fastPathMaxWords;
+        this.metrics = builder.metrics != null ? builder.metrics : RagMetrics.global();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        List<Bm25Index.Hit> hits = lexical.search(query.text(), candidates);
+        List<Content> lexicalContents = Bm25ContentRetriever.toContents(lexical, hits);
+
+        if (lexicalFastPath && hits.size() >= maxResults && lexical.isKeywordQuery(query.text(), fastPathMaxWords)) {
+            metrics.increment(FAST_PATH);
+            return lexicalContents.subList(0, maxResults);
+        }
+
+        metrics.increment(FUSED);
+        return ReciprocalRankFusion.fuse(rrfK, maxResults, dense.retrieve(query), lexicalContents);
+    }
+
+    public static class Builder {
+        private ContentRetriever dense;
+        private Bm25Index lexical;
+        private int maxResults = 3;
+        private int candidates = 10;
+        private int rrfK = 60;
+        private boolean lexicalFastPath = true;
+        private int fastPathMaxWords = 6;
+        private RagMetrics metrics;
+
+        public Builder dense(ContentRetriever dense) {
+            this.dense = dense;
+            return this;
+        }
+
+        public Builder lexical(Bm25Index lexical) {
+            this.lexical = lexical;
+            return this;
+        }
+
+        public Builder maxResults(int maxResults) {
+            this.maxResults = Math.max(1, maxResults);
+            return this;
+        }
+
+        /**
+         * @param candidates Nombre de résultats lexicaux pris en compte dans la fusion
+         */
+        public Builder candidates(int candidates) {
+            this.candidates = Math.max(1, candidates);
+            return this;
+        }
+
+        /**
+         * @param rrfK Constante de lissage de la fusion (60 dans l'article d'origine)
+         */
+        public Builder rrfK(int rrfK) {
+            this.rrfK = Math.max(0, rrfK);
+            return this;
+        }
+
+        /**
+         * @param lexicalFastPath Servir les questions « mots-clés » par le seul index BM25
+         */
+        public Builder lexicalFastPath(boolean lexicalFastPath) {
+            this.lexicalFastPath = lexicalFastPath;
+            return this;
+        }
+
+        /**
+         * @param fastPathMaxWords Longueur maximale (en mots) d'une question « mots-clés »
+         */
+        public Builder fastPathMaxWords(int fastPathMaxWords) {
+            this.fastPathMaxWords = Math.max(1, fastPathMaxWords);
+            return this;
+        }
+
+        public Builder metrics(RagMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        public HybridContentRetriever build() {
+            return new HybridContentRetriever(this);
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package ma.emsi.elboudadi.retrieval;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.ContentMetadata;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.rag.query.router.QueryRouter;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import ma.emsi.elboudadi.lexical.Bm25ContentRetriever;
+import ma.emsi.elboudadi.lexical.Bm25Index;
+import ma.emsi.elboudadi.metrics.RagMetrics;
+import ma.emsi.elboudadi.store.MultiSourceEmbeddingStore;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Retriever unique pour toutes les sources d'un {@link MultiSourceEmbeddingStore}.
+ *
+ * Les routeurs existants continuent de choisir des retrievers : chaque source est
+ * représentée par un retriever-poignée ({@link #source(String)}). Le routeur enveloppé
+ * par {@link #router(QueryRouter)} remplace les poignées choisies par un seul retriever
+ * limité à l'union de leurs sources : la question est convertie en embedding une fois
+ * et l'index partagé parcouru une fois, quel que soit le nombre de sources routées.
+ * Les autres retrievers (recherche Web...) sont transmis tels quels.
+ *
+ * Avec un index BM25 construit sur le même index partagé ({@link Bm25Index#of(MultiSourceEmbeddingStore)}),
+ * la recherche est hybride comme celle de {@link HybridContentRetriever} : fusion RRF,
+ * et raccourci lexical (sans embedding) pour les questions « mots-clés ». Le même
+ * bitmap de segments filtre les deux recherches.
+ */
+public class MultiSourceRetriever implements ContentRetriever {
+
+    public static final String SEARCHES = "multi_source.searches";
+    public static final String SOURCES = "multi_source.sources";
+
+    private final MultiSourceEmbeddingStore store;
+    private final EmbeddingModel embeddingModel;
+    private final Bm25Index lexical;
+    private final int maxResults;
+    private final double minScore;
+    private final int candidates;
+    private final int rrfK;
+    private final boolean lexicalFastPath;
+    private final int fastPathMaxWords;
+    private final UnaryOperator<ContentRetriever> decorator;
+    private final RagMetrics metrics;
+
+    private final Map<String, SourceRetriever> handles = new LinkedHashMap<>();
+    private final Map<BitSet, ContentRetriever> scoped = new ConcurrentHashMap<>();
+
+    private MultiSourceRetriever(Builder builder) {
+        this.store = Objects.requireNonNull(builder.store, "L'index partagé ne peut pas être null");
+        this.embeddingModel = Objects.requireNonNull(builder.embeddingModel, "Le modèle d'embedding ne peut pas être null");
+        if (builder.lexical != null && builder.lexical.size() != store.size()) {
+            throw new IllegalArgumentException("L'index BM25 doit être construit sur le même index partagé");
+        }
+        this.lexical = builder.lexical;
+        this.maxResults = builder.maxResults;
+        this.minScore = builder.minScore;
+        this.candidates = Math.max(builder.candidates, builder.maxResults);
+        this.rrfK = builder.rrfK;
+        this.lexicalFastPath = builder.lexicalFastPath;
+        this.fastPathMaxWords = builder.fastPathMaxWords;
+        this.decorator = builder.decorator;
+        this.metrics = builder.metrics != null ? builder.metrics : RagMetrics.global();
+        for (String name : store.sourceNames()) {
+            BitSet sources = new BitSet();
+            sources.set(store.sourceIndex(name));
+            handles.put(name, new SourceRetriever(name, sources));
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return Le retriever représentant une source, à passer au routeur
+     */
+    public ContentRetriever source(String name) {
+        SourceRetriever handle = handles.get(name);
+        if (handle == null) {
+            throw new IllegalArgumentException("Source inconnue : " + name);
+        }
+        return handle;
+    }
+
+    /**
+     * Enveloppe un routeur : les sources qu'il choisit sont interrogées en une seule recherche.
+     */
+    public QueryRouter router(QueryRouter delegate) {
+        Objects.requireNonNull(delegate, "Le routeur ne peut pas être null");
+        return query -> {
+            Collection<ContentRetriever> routed = delegate.route(query);
+            List<ContentRetriever> merged = new ArrayList<>(routed.size());
+            BitSet sources = new BitSet();
+            int position = -1;
+            for (ContentRetriever retriever : routed) {
+                if (retriever instanceof SourceRetriever handle && handles.get(handle.name) == handle) {
+                    sources.or(handle.sources);
+                    position = position < 0 ? merged.size() : position;
+                } else {
+                    merged.add(retriever);
+                }
+            }
+            if (position >= 0) {
+                merged.add(position, scoped(sources));
+            }
+            return merged;
+        };
+    }
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        return retrieve(query, store.allSources());
+    }
+
+    /**
+     * Recherche limitée aux sources du bitmap : un seul embedding, un seul parcours.
+     */
+    public List<Content> retrieve(Query query, BitSet sources) {
+        metrics.increment(SEARCHES);
+        metrics.add(SOURCES, sources.cardinality());
+        IntPredicate admitted = sources.cardinality() == store.sourceNames().size()
+                ? null : store.admittedSegments(sources)::get;
+
+        List<Content> lexicalContents = List.of();
+        if (lexical != null) {
+            List<Bm25Index.Hit> hits = lexical.search(query.text(), candidates, admitted);
+            lexicalContents = Bm25ContentRetriever.toContents(lexical, hits);
+            if (lexicalFastPath && hits.size() >= maxResults && lexical.isKeywordQuery(query.text(), fastPathMaxWords)) {
+                metrics.increment(HybridContentRetriever.FAST_PATH);
+                return lexicalContents.subList(0, maxResults);
+            }
+        }
+
+        Embedding embedding = embeddingModel.embed(query.text()).content();
+        EmbeddingSearchRequest request = EmbeddingSearchRequest.builder()
+                .queryEmbedding(embedding)
+                .maxResults(lexical == null ? maxResults : candidates)
+                .minScore(minScore)
+                .build();
+        List<Content> denseContents = new ArrayList<>();
+        for (EmbeddingMatch<TextSegment> match : store.search(request, sources).matches()) {
+            denseContents.add(Content.from(match.embedded(), Map.of(
+                    ContentMetadata.SCORE, match.score(),
+                    ContentMetadata.EMBEDDING_ID, match.embeddingId())));
+        }
+        if (lexical == null) {
+            return denseContents;
+        }
+        metrics.increment(HybridContentRetriever.FUSED);
+        return ReciprocalRankFusion.fuse(rrfK, maxResults, denseContents, lexicalContents);
+    }
+
+    /**
+     * @return Le retriever (décoré) limité à une combinaison de sources, créé une fois par combinaison
+     */
+    private ContentRetriever scoped(BitSet sources) {
+        return scoped.computeIfAbsent(sources, key -> decorator.apply(new ScopedRetriever(key)));
+    }
+
+    /**
+     * Retriever limité à une combinaison de sources ; son nom sert aux métriques.
+     */
+    private final class ScopedRetriever implements ContentRetriever {
+        private final BitSet sources;
+        private final String name;
+
+        ScopedRetriever(BitSet sources) {
+            this.sources = sources;
+            this.name = String.join("+", sources.stream().mapToObj(store.sourceNames()::get).toList());
+        }
+
+        @Override
+        public List<Content> retrieve(Query query) {
+            return MultiSourceRetriever.this.retrieve(query, sources);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * Poignée d'une source : interrogée directement, elle cherche dans sa seule source.
+     */
+    private final class SourceRetriever implements ContentRetriever {
+        private final String name;
+        private final BitSet sources;
+
+        SourceRetriever(String name, BitSet sources) {
+            this.name = name;
+            this.sources = sources;
+        }
+
+        @Override
+        public List<Content> retrieve(Query query) {
+            return MultiSourceRetriever.this.retrieve(query, sources);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    public static class Builder {
+        private MultiSourceEmbeddingStore store;
+        private EmbeddingModel embeddingModel;
+        private Bm25Index lexical;
+        private int maxResults = 3;
+        private double minScore = 0.0;
+        private int candidates = 10;
+        private int rrfK = 60;
+        private boolean lexicalFastPath = true;
+        private int fastPathMaxWords = 6;
+        private UnaryOperator<ContentRetriever> decorator = UnaryOperator.identity();
+        private RagMetrics metrics;
+
+        public Builder store(MultiSourceEmbeddingStore store) {
+            this.store = store;
+            return this;
+        }
+
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        /**
+         * @param lexical Index BM25 de l'index partagé (facultatif : recherche vectorielle seule)
+         */
+        public Builder lexical(Bm25Index lexical) {
+            this.lexical = lexical;
+            return this;
+        }
+
+        public Builder maxResults(int maxResults) {
+            this.maxResults = Math.max(1, maxResults);
+            return this;
+        }
+
+        public Builder minScore(double minScore) {
+            this.minScore = minScore;
+            return this;
+        }
+
+        /**
+         * @param candidates Nombre de résultats de chaque recherche pris en compte dans la fusion
+         */
+        public Builder candidates(int candidates) {
+            this.candidates = Math.max(1, candidates);
+            return this;
+        }
+
+        public Builder rrfK(int rrfK) {
+            this.rrfK = Math.max(0, rrfK);
+            return this;
+        }
+
+        public Builder lexicalFastPath(boolean lexicalFastPath) {
+            this.lexicalFastPath = lexicalFastPath;
+            return this;
+        }
+
+        public Builder fastPathMaxWords(int fastPathMaxWords) {
+            this.fastPathMaxWords = Math.max(1, fastPathMaxWords);
+            return this;
+        }
+
+        /**
+         * @param decorator Enveloppe appliquée au retriever de chaque combinaison de sources
+         *                  routée (délai, métriques...)
+         */
+        public Builder decorator(UnaryOperator<ContentRetriever> decorator) {
+            this.decorator = Objects.requireNonNull(decorator);
+            return this;
+        }
+
+        public Builder metrics(RagMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        public MultiSourceRetriever build() {
+            return new MultiSourceRetriever(this);
+        }
+    }
+}
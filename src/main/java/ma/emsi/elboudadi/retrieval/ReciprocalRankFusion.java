@@ -0,0 +1,55 @@
+package ma.emsi.elboudadi.retrieval;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.ContentMetadata;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fusion de listes classées par rang réciproque (RRF, Cormack et al.).
+ *
+ * Chaque segment reçoit {@code 1 / (k + rang)} pour chaque liste où il apparaît ;
+ * un segment trouvé par plusieurs recherches remonte donc devant un segment trouvé
+ * par une seule. Les segments sont identifiés par leur texte et leurs métadonnées.
+ */
+public final class ReciprocalRankFusion {
+
+    private ReciprocalRankFusion() {
+    }
+
+    /**
+     * @return Les {@code maxResults} meilleurs contenus, le score RRF remplaçant le score d'origine
+     */
+    public static List<Content> fuse(int k, int maxResults, List<Content> first, List<Content> second) {
+        return fuse(k, maxResults, List.of(first, second));
+    }
+
+    public static List<Content> fuse(int k, int maxResults, Collection<List<Content>> rankings) {
+        Map<TextSegment, Double> scores = new LinkedHashMap<>();
+        Map<TextSegment, Content> contents = new LinkedHashMap<>();
+        for (List<Content> ranking : rankings) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                Content content = ranking.get(rank);
+                scores.merge(content.textSegment(), 1.0 / (k + rank + 1), Double::sum);
+                contents.putIfAbsent(content.textSegment(), content);
+            }
+        }
+
+        List<Map.Entry<TextSegment, Double>> ranked = new ArrayList<>(scores.entrySet());
+        ranked.sort(Map.Entry.<TextSegment, Double>comparingByValue().reversed());
+
+        List<Content> fused = new ArrayList<>(Math.min(maxResults, ranked.size()));
+        for (int i = 0; i < ranked.size() && i < maxResults; i++) {
+            Map.Entry<TextSegment, Double> entry = ranked.get(i);
+            Map<ContentMetadata, Object> metadata = new LinkedHashMap<>(contents.get(entry.getKey()).metadata());
+            metadata.put(ContentMetadata.SCORE, entry.getValue());
+            fused.add(Content.from(entry.getKey(), metadata));
+        }
+        return fused;
+    }
+}
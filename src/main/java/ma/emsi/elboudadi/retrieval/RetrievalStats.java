@@ -0,0 +1,60 @@
+package ma.emsi.elboudadi.retrieval;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compteurs par source de contenu : appels, réponses à temps, délais dépassés, erreurs.
+ */
+public class RetrievalStats {
+
+    /**
+     * Issue d'un appel à une source.
+     */
+    public enum Outcome {
+        OK, TIMEOUT, ERROR
+    }
+
+    private final Map<String, Counters> bySource = new ConcurrentHashMap<>();
+
+    void record(String source, Outcome outcome, long nanos) {
+        Counters counters = bySource.computeIfAbsent(source, name -> new Counters());
+        counters.calls.increment();
+        counters.nanos.add(nanos);
+        switch (outcome) {
+            case TIMEOUT -> counters.timeouts.increment();
+            case ERROR -> counters.errors.increment();
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * @return Le nombre de délais dépassés pour la source donnée
+     */
+    public long timeouts(String source) {
+        Counters counters = bySource.get(source);
+        return counters == null ? 0 : counters.timeouts.sum();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder("Sources de contenu :");
+        new TreeMap<>(bySource).forEach((source, counters) -> {
+            long calls = counters.calls.sum();
+            report.append(String.format("%n  %-30s %5d appels, %4d hors délai, %4d erreurs, %6.1f ms en moyenne",
+                    source, calls, counters.timeouts.sum(), counters.errors.sum(),
+                    calls == 0 ? 0.0 : counters.nanos.sum() / 1e6 / calls));
+        });
+        return report.toString();
+    }
+
+    private static final class Counters {
+        final LongAdder calls = new LongAdder();
+        final LongAdder timeouts = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+    }
+}
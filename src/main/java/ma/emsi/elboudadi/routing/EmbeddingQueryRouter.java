@@ -0,0 +1,147 @@
+package ma.emsi.elboudadi.routing;
+
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.rag.query.router.QueryRouter;
+import ma.emsi.elboudadi.store.MappedEmbeddingStore;
+import ma.emsi.elboudadi.store.Vectors;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Routeur multi-sources fondé sur la similarité vectorielle, sans appel au LLM.
+ *
+ * Chaque source est représentée par quelques vecteurs résumés ({@link SourceSummary})
+ * calculés une fois au démarrage. La requête est convertie en embedding une seule
+ * fois puis comparée à ces résumés : le coût ne dépend que du nombre total de
+ * centroïdes, et le prompt ne grossit plus avec le nombre de retrievers.
+ *
+ * Sont retenues la meilleure source et toutes celles dont le score est à moins de
+ * {@code margin} d'elle. Si aucune source n'atteint {@code minSimilarity}, la
+ * question n'est proche d'aucun document et toutes les sources sont interrogées.
+ */
+public class EmbeddingQueryRouter implements QueryRouter {
+
+    private static final Logger LOGGER = Logger.getLogger(EmbeddingQueryRouter.class.getName());
+
+    private final EmbeddingModel embeddingModel;
+    private final List<Source> sources;
+    private final double margin;
+    private final double minSimilarity;
+
+    private EmbeddingQueryRouter(Builder builder) {
+        this.embeddingModel = Objects.requireNonNull(builder.embeddingModel, "Le modèle d'embedding ne peut pas être null");
+        if (builder.sources.isEmpty()) {
+            throw new IllegalArgumentException("Au moins une source est nécessaire");
+        }
+        this.sources = List.copyOf(builder.sources);
+        this.margin = builder.margin;
+        this.minSimilarity = builder.minSimilarity;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public List<ContentRetriever> route(Query query) {
+        return select(query.text()).stream().map(Source::retriever).toList();
+    }
+
+    /**
+     * Clé décrivant les sources choisies pour une question, utilisable comme portée
+     * d'un cache de réponses.
+     */
+    public String scopeOf(String question) {
+        return select(question).stream().map(Source::name).collect(Collectors.joining("+"));
+    }
+
+    private List<Source> select(String question) {
+        float[] vector = Vectors.normalized(embeddingModel.embed(question).content().vector());
+
+        double[] scores = new double[sources.size()];
+        double best = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < sources.size(); i++) {
+            scores[i] = sources.get(i).score(vector);
+            best = Math.max(best, scores[i]);
+        }
+
+        if (best < minSimilarity) {
+            LOGGER.info(String.format("➡ Aucune source proche (%.3f), interrogation de toutes les sources", best));
+            return sources;
+        }
+        List<Source> selected = new ArrayList<>();
+        for (int i = 0; i < sources.size(); i++) {
+            if (scores[i] >= best - margin) {
+                selected.add(sources.get(i));
+            }
+        }
+        LOGGER.info("➡ Sources choisies : " + selected.stream().map(Source::name).toList());
+        return selected;
+    }
+
+    private record Source(String name, ContentRetriever retriever, List<float[]> summary) {
+        double score(float[] vector) {
+            double best = Double.NEGATIVE_INFINITY;
+            for (float[] centroid : summary) {
+                best = Math.max(best, Vectors.dot(vector, centroid));
+            }
+            return best;
+        }
+    }
+
+    public static class Builder {
+        private EmbeddingModel embeddingModel;
+        private final List<Source> sources = new ArrayList<>();
+        private double margin = 0.02;
+        private double minSimilarity = 0.5;
+
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        /**
+         * Ajoute une source résumée par ses {@code k} centroïdes.
+         */
+        public Builder source(String name, ContentRetriever retriever, MappedEmbeddingStore store, int k) {
+            return source(name, retriever, SourceSummary.of(store, k));
+        }
+
+        /**
+         * Ajoute une source à partir de vecteurs résumés déjà calculés.
+         */
+        public Builder source(String name, ContentRetriever retriever, List<float[]> summary) {
+            if (summary.isEmpty()) {
+                throw new IllegalArgumentException("La source " + name + " n'a aucun vecteur résumé");
+            }
+            sources.add(new Source(name, Objects.requireNonNull(retriever), summary.stream().map(Vectors::normalized).toList()));
+            return this;
+        }
+
+        /**
+         * @param margin Écart de score toléré avec la meilleure source pour interroger aussi une autre source
+         */
+        public Builder margin(double margin) {
+            this.margin = margin;
+            return this;
+        }
+
+        /**
+         * @param minSimilarity En dessous de ce score, toutes les sources sont interrogées
+         */
+        public Builder minSimilarity(double minSimilarity) {
+            this.minSimilarity = minSimilarity;
+            return this;
+        }
+
+        public EmbeddingQueryRouter build() {
+            return new EmbeddingQueryRouter(this);
+        }
+    }
+}
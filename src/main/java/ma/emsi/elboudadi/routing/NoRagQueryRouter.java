@@ -0,0 +1,102 @@
+package ma.emsi.elboudadi.routing;
+
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.rag.query.router.QueryRouter;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Implémentation personnalisée de QueryRouter qui décide dynamiquement
+ * s'il faut utiliser le RAG ou non en fonction du contenu de la question.
+ *
+ * Cette classe utilise un modèle de langage pour analyser la question et décider
+ * si elle est liée à l'IA. Si ce n'est pas le cas, elle retourne une liste vide
+ * pour indiquer qu'aucun retriever ne doit être utilisé (pas de RAG).
+ *
+ * Lorsqu'un {@link PrototypeClassifier} est fourni, il est consulté en premier :
+ * le LLM n'est interrogé que pour les questions qu'il juge ambiguës.
+ *
+ * Seule une réponse qui commence par « non » désactive le RAG : « peut-être », une
+ * réponse inattendue ou une erreur du modèle conservent le RAG, plus sûr par défaut.
+ */
+public class NoRagQueryRouter implements QueryRouter {
+
+    private static final Logger LOGGER = Logger.getLogger(NoRagQueryRouter.class.getName());
+
+    private final ChatModel model;
+    private final PrototypeClassifier classifier;
+    private final List<ContentRetriever> retrievers;
+
+    /**
+     * @param model      Modèle de langage, consulté uniquement pour les questions ambiguës
+     * @param classifier Classifieur local (peut être null pour toujours interroger le LLM)
+     * @param retrievers Les retrievers à utiliser lorsque le RAG est activé
+     */
+    public NoRagQueryRouter(ChatModel model, PrototypeClassifier classifier, List<ContentRetriever> retrievers) {
+        this.model = Objects.requireNonNull(model, "Le modèle de langage ne peut pas être null");
+        this.classifier = classifier;
+        this.retrievers = List.copyOf(Objects.requireNonNull(retrievers, "Les retrievers ne peuvent pas être null"));
+    }
+
+    /**
+     * Détermine si le RAG doit être utilisé pour cette requête.
+     *
+     * @param query La requête à analyser
+     * @return Une liste de ContentRetriever à utiliser, ou une liste vide pour désactiver le RAG
+     */
+    @Override
+    public List<ContentRetriever> route(Query query) {
+        try {
+            String question = Objects.requireNonNull(query, "La requête ne peut pas être null").text();
+            if (question == null || question.trim().isEmpty()) {
+                LOGGER.warning("La question est vide, utilisation du RAG par défaut");
+                return retrievers;
+            }
+
+            // Décision locale, sans appel au modèle, quand elle est suffisamment sûre
+            if (classifier != null) {
+                PrototypeClassifier.Classification classification = classifier.classify(question);
+                LOGGER.fine("🔍 Classification locale : " + classification);
+                if (classification.decision() == PrototypeClassifier.Decision.NO_RAG) {
+                    LOGGER.info("➡ Pas de RAG (décision locale).");
+                    return Collections.emptyList();
+                }
+                if (classification.decision() == PrototypeClassifier.Decision.RAG) {
+                    LOGGER.info("➡ Utilisation du RAG (" + retrievers + ", décision locale).");
+                    return retrievers;
+                }
+            }
+
+            // Création du prompt pour déterminer si la question concerne l'IA
+            String prompt = "La question suivante concerne-t-elle l'intelligence artificielle, " +
+                    "le machine learning, le deep learning, les modèles de langage, " +
+                    "ou des sujets techniques similaires ? " +
+                    "Réponds uniquement par 'oui', 'non' ou 'peut-être'.\n\n" +
+                    "Question : " + question;
+
+            // Appel au modèle pour l'analyse
+            String answer = model.chat(prompt).toLowerCase(Locale.ROOT).trim();
+            LOGGER.fine("🔍 Réponse du routeur : " + answer);
+
+            // Décision de routage
+            if (answer.startsWith("non")) {
+                LOGGER.info("➡ Pas de RAG (réponse directe du modèle).");
+                return Collections.emptyList();
+            } else {
+                LOGGER.info("➡ Utilisation du RAG (" + retrievers + ").");
+                return retrievers;
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Erreur lors du routage de la requête : " + e.getMessage(), e);
+            // En cas d'erreur, on utilise le RAG par défaut
+            return retrievers;
+        }
+    }
+}
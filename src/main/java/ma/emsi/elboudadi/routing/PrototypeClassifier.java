@@ -0,0 +1,137 @@
+package ma.emsi.elboudadi.routing;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import ma.emsi.elboudadi.store.Vectors;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Classifieur local « la question concerne-t-elle l'IA ? » fondé sur des prototypes.
+ *
+ * La question est comparée par similarité cosinus à deux ensembles de questions
+ * étiquetées (liées à l'IA / hors sujet). L'écart entre les deux scores est comparé
+ * à une bande de confiance : au-delà, la décision est prise localement, sans appel
+ * au modèle de langage ; à l'intérieur, la question est déclarée ambiguë et le
+ * routeur peut se rabattre sur le LLM.
+ */
+public class PrototypeClassifier {
+
+    /**
+     * Décision du classifieur.
+     */
+    public enum Decision {
+        /** La question concerne l'IA : utiliser le RAG. */
+        RAG,
+        /** La question est hors sujet : réponse directe du modèle. */
+        NO_RAG,
+        /** Écart trop faible : laisser le LLM décider. */
+        AMBIGUOUS
+    }
+
+    /**
+     * @param margin Score « IA » moins score « hors sujet »
+     */
+    public record Classification(Decision decision, double margin) {
+    }
+
+    private static final int TOP_K = 3;
+
+    private final EmbeddingModel embeddingModel;
+    private final List<float[]> positives;
+    private final List<float[]> negatives;
+    private final double confidenceBand;
+
+    /**
+     * @param embeddingModel Modèle d'embedding local
+     * @param positives Exemples de questions liées à l'IA
+     * @param negatives Exemples de questions hors sujet
+     * @param confidenceBand Écart minimal entre les deux scores pour décider sans LLM
+     */
+    public PrototypeClassifier(EmbeddingModel embeddingModel, List<String> positives, List<String> negatives,
+                               double confidenceBand) {
+        this.embeddingModel = Objects.requireNonNull(embeddingModel, "Le modèle d'embedding ne peut pas être null");
+        this.positives = embedAll(embeddingModel, positives);
+        this.negatives = embedAll(embeddingModel, negatives);
+        this.confidenceBand = confidenceBand;
+    }
+
+    /**
+     * Classifieur préconfiguré avec des prototypes en français et en anglais,
+     * correspondant à la question posée par {@code NoRagQueryRouter} au LLM.
+     */
+    public static PrototypeClassifier intelligenceArtificielle(EmbeddingModel embeddingModel) {
+        return new PrototypeClassifier(embeddingModel, Arrays.asList(
+                "Qu'est-ce que le RAG (Retrieval-Augmented Generation) ?",
+                "Comment fonctionnent les embeddings et les bases vectorielles ?",
+                "Explique le fonctionnement d'un grand modèle de langage.",
+                "Quelle est la différence entre machine learning et deep learning ?",
+                "Comment utiliser LangChain4j avec Gemini ?",
+                "Comment découper des documents en segments pour un LLM ?",
+                "What is a transformer neural network?",
+                "How does prompt engineering improve model answers?",
+                "How do I fine-tune a language model?",
+                "What is a content retriever in LangChain4j?"
+        ), Arrays.asList(
+                "Quelle est la capitale du Maroc ?",
+                "Donne-moi une recette de tajine.",
+                "Quel temps fera-t-il demain à Casablanca ?",
+                "Qui a gagné la coupe du monde de football ?",
+                "Bonjour, comment vas-tu ?",
+                "Raconte-moi une blague.",
+                "What is the history of the Roman empire?",
+                "How do I cook pasta?",
+                "Recommend me a good novel to read.",
+                "What time is it in Paris?"
+        ), 0.05);
+    }
+
+    /**
+     * @param question La question de l'utilisateur
+     * @return La décision et l'écart de score qui l'a motivée
+     */
+    public Classification classify(String question) {
+        float[] vector = Vectors.normalized(embeddingModel.embed(question).content().vector());
+        double margin = score(vector, positives) - score(vector, negatives);
+        Decision decision;
+        if (margin >= confidenceBand) {
+            decision = Decision.RAG;
+        } else if (margin <= -confidenceBand) {
+            decision = Decision.NO_RAG;
+        } else {
+            decision = Decision.AMBIGUOUS;
+        }
+        return new Classification(decision, margin);
+    }
+
+    /**
+     * Moyenne des {@value #TOP_K} meilleures similarités : plus robuste qu'un
+     * maximum seul face à un prototype isolé trop proche par hasard.
+     */
+    private static double score(float[] vector, List<float[]> prototypes) {
+        double[] similarities = new double[prototypes.size()];
+        for (int i = 0; i < prototypes.size(); i++) {
+            similarities[i] = Vectors.dot(vector, prototypes.get(i));
+        }
+        Arrays.sort(similarities);
+        int k = Math.min(TOP_K, similarities.length);
+        double sum = 0;
+        for (int i = similarities.length - k; i < similarities.length; i++) {
+            sum += similarities[i];
+        }
+        return k == 0 ? 0 : sum / k;
+    }
+
+    private static List<float[]> embedAll(EmbeddingModel embeddingModel, List<String> texts) {
+        List<TextSegment> segments = texts.stream().map(TextSegment::from).toList();
+        List<float[]> vectors = new ArrayList<>(texts.size());
+        for (Embedding embedding : embeddingModel.embedAll(segments).content()) {
+            vectors.add(Vectors.normalized(embedding.vector()));
+        }
+        return vectors;
+    }
+}
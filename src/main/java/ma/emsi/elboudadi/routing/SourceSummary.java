@@ -0,0 +1,74 @@
+package ma.emsi.elboudadi.routing;
+
+import ma.emsi.elboudadi.store.MappedEmbeddingStore;
+import ma.emsi.elboudadi.store.Vectors;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Résumé vectoriel d'une source : quelques centroïdes calculés une fois pour toutes
+ * à partir des segments du magasin (k-means sphérique).
+ *
+ * Un seul centroïde suffit pour un document homogène ; plusieurs centroïdes
+ * représentent mieux un document couvrant plusieurs thèmes.
+ */
+public final class SourceSummary {
+
+    private static final int ITERATIONS = 10;
+
+    private SourceSummary() {
+    }
+
+    /**
+     * @param store Le magasin de la source
+     * @param k Nombre de vecteurs résumés souhaités
+     * @return Au plus {@code k} centroïdes normalisés
+     */
+    public static List<float[]> of(MappedEmbeddingStore store, int k) {
+        int size = store.size();
+        if (size == 0) {
+            return List.of();
+        }
+        k = Math.max(1, Math.min(k, size));
+        int dimension = store.dimension();
+
+        // Initialisation déterministe : segments régulièrement espacés dans le document
+        List<float[]> centroids = new ArrayList<>(k);
+        for (int c = 0; c < k; c++) {
+            centroids.add(store.vector((int) ((long) c * size / k)));
+        }
+
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            float[][] sums = new float[k][dimension];
+            int[] counts = new int[k];
+            for (int i = 0; i < size; i++) {
+                float[] vector = store.vector(i);
+                int best = nearest(vector, centroids);
+                counts[best]++;
+                for (int j = 0; j < dimension; j++) {
+                    sums[best][j] += vector[j];
+                }
+            }
+            for (int c = 0; c < k; c++) {
+                if (counts[c] > 0) {
+                    centroids.set(c, Vectors.normalized(sums[c]));
+                }
+            }
+        }
+        return centroids;
+    }
+
+    private static int nearest(float[] vector, List<float[]> centroids) {
+        int best = 0;
+        float bestSimilarity = Float.NEGATIVE_INFINITY;
+        for (int c = 0; c < centroids.size(); c++) {
+            float similarity = Vectors.dot(vector, centroids.get(c));
+            if (similarity > bestSimilarity) {
+                bestSimilarity = similarity;
+                best = c;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,311 @@
+package ma.emsi.elboudadi.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import ma.emsi.elboudadi.SessionAssistant;
+import ma.emsi.elboudadi.SessionStreamingAssistant;
+import ma.emsi.elboudadi.metrics.RagMetrics;
+import ma.emsi.elboudadi.model.ResilientChatModel;
+import ma.emsi.elboudadi.streaming.StreamTiming;
+import ma.emsi.elboudadi.streaming.StreamingStats;
+import ma.emsi.elboudadi.streaming.TokenStreams;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Serveur HTTP multi-sessions devant le pipeline RAG.
+ *
+ * Chaque requête est traitée dans son propre thread virtuel : un appel lent au LLM
+ * ne bloque que sa requête. Le nombre de requêtes traitées simultanément est borné ;
+ * au-delà, une requête attend au plus {@code admissionTimeout} puis reçoit un 503
+ * (avec {@code Retry-After}) plutôt que d'allonger indéfiniment la file d'attente.
+ * Un modèle saturé ou indisponible ({@link ResilientChatModel}) donne aussi un 503.
+ *
+ * Points d'entrée :
+ * - {@code POST /chat} : corps = question (texte brut), en-tête {@value #SESSION_HEADER}
+ *   facultatif ; l'identifiant de session est renvoyé dans le même en-tête ;
+ * - {@code POST /chat/stream} : idem, la réponse est diffusée jeton par jeton
+ *   (réponse HTTP en morceaux) si un assistant en flux est configuré ;
+ * - {@code GET /health} : état et compteurs du serveur ;
+ * - {@code GET /metrics} : latences et compteurs du pipeline ({@link RagMetrics}), au
+ *   format texte de Prometheus, si un registre est configuré.
+ */
+public class AssistantServer implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(AssistantServer.class.getName());
+
+    public static final String SESSION_HEADER = "X-Session-Id";
+
+    private final SessionAssistant assistant;
+    private final SessionStreamingAssistant streamingAssistant;
+    private final StreamingStats streamingStats = new StreamingStats();
+    private final SessionChatMemoryProvider memories;
+    private final RagMetrics metrics;
+    private final int maxConcurrentRequests;
+    private final Semaphore admission;
+    private final long admissionTimeoutNanos;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final LongAdder served = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    private AssistantServer(Builder builder) throws IOException {
+        this.assistant = Objects.requireNonNull(builder.assistant, "L'assistant ne peut pas être null");
+        this.streamingAssistant = builder.streamingAssistant;
+        this.memories = Objects.requireNonNull(builder.memories, "Le fournisseur de mémoire ne peut pas être null");
+        this.metrics = builder.metrics;
+        this.maxConcurrentRequests = builder.maxConcurrentRequests;
+        this.admission = new Semaphore(maxConcurrentRequests, true);
+        this.admissionTimeoutNanos = builder.admissionTimeout.toNanos();
+        this.server = HttpServer.create(new InetSocketAddress(builder.port), 0);
+        this.server.createContext("/chat", exchange -> handleChat(exchange, false));
+        if (streamingAssistant != null) {
+            this.server.createContext("/chat/stream", exchange -> handleChat(exchange, true));
+        }
+        this.server.createContext("/health", this::handleHealth);
+        if (metrics != null) {
+            this.server.createContext("/metrics", this::handleMetrics);
+        }
+        this.server.setExecutor(executor);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public AssistantServer start() {
+        server.start();
+        LOGGER.info("Serveur RAG à l'écoute sur le port " + server.getAddress().getPort());
+        return this;
+    }
+
+    /**
+     * Enregistre un point d'entrée supplémentaire (métriques, flux...).
+     */
+    public void addContext(String path, HttpHandler handler) {
+        server.createContext(path, handler);
+    }
+
+    private void handleChat(HttpExchange exchange, boolean streaming) throws IOException {
+        long start = System.nanoTime();
+        try (exchange) {
+            if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                send(exchange, 405, "Utilisez POST /chat avec la question dans le corps");
+                return;
+            }
+            String question = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8).trim();
+            if (question.isEmpty()) {
+                send(exchange, 400, "La question est vide");
+                return;
+            }
+            String sessionId = sessionId(exchange);
+
+            if (!admit()) {
+                rejected.increment();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                send(exchange, 503, "Serveur saturé, réessayez dans un instant");
+                return;
+            }
+            try {
+                if (streaming) {
+                    stream(exchange, start, sessionId, question);
+                } else {
+                    String answer = memories.withSession(sessionId, () -> assistant.chat(sessionId, question));
+                    send(exchange, 200, answer);
+                }
+                served.increment();
+            } catch (ResilientChatModel.ThrottledException | ResilientChatModel.CircuitOpenException e) {
+                // Modèle saturé ou indisponible : le client peut réessayer plus tard
+                failed.increment();
+                LOGGER.warning("Modèle indisponible pour la session " + sessionId + " : " + e.getMessage());
+                if (!streaming) {
+                    exchange.getResponseHeaders().set("Retry-After", "5");
+                    send(exchange, 503, "Modèle momentanément indisponible, réessayez dans un instant");
+                }
+            } catch (RuntimeException e) {
+                failed.increment();
+                LOGGER.log(Level.WARNING, "Erreur pour la session " + sessionId, e);
+                if (!streaming) {
+                    send(exchange, 500, "Erreur : " + e.getMessage());
+                }
+            } finally {
+                admission.release();
+            }
+        }
+    }
+
+    /**
+     * Diffuse la réponse en morceaux HTTP : chaque fragment est écrit et vidé dès sa réception.
+     * Une erreur survenue après l'envoi des en-têtes ne peut plus changer le statut : elle
+     * est signalée à la fin du corps.
+     */
+    private void stream(HttpExchange exchange, long start, String sessionId, String question) {
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        try (OutputStream out = exchange.getResponseBody()) {
+            exchange.sendResponseHeaders(200, 0);
+            try {
+                StreamTiming timing = memories.withSession(sessionId, () -> TokenStreams.consume(start,
+                        streamingAssistant.chat(sessionId, question), fragment -> write(out, fragment), streamingStats));
+                LOGGER.fine("Session " + sessionId + " : " + timing);
+            } catch (RuntimeException e) {
+                write(out, "\n[Erreur : " + e.getMessage() + "]");
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void write(OutputStream out, String fragment) {
+        try {
+            out.write(fragment.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Client déconnecté", e);
+        }
+    }
+
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            send(exchange, 200, String.format(
+                    "sessions=%d%nrequetes_en_cours=%d%nservies=%d%nrejetees=%d%nerreurs=%d%n%s%n",
+                    memories.activeSessions(), inFlight(), served.sum(), rejected.sum(), failed.sum(), streamingStats));
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String report = metrics.report() + String.format(
+                    "# TYPE rag_server_requests_total counter%n"
+                            + "rag_server_requests_total{outcome=\"served\"} %d%n"
+                            + "rag_server_requests_total{outcome=\"rejected\"} %d%n"
+                            + "rag_server_requests_total{outcome=\"failed\"} %d%n"
+                            + "# TYPE rag_server_sessions gauge%nrag_server_sessions %d%n",
+                    served.sum(), rejected.sum(), failed.sum(), memories.activeSessions());
+            send(exchange, 200, report);
+        }
+    }
+
+    /**
+     * @return L'identifiant de session de la requête (créé s'il est absent), recopié dans la réponse
+     */
+    public static String sessionId(HttpExchange exchange) {
+        String sessionId = exchange.getRequestHeaders().getFirst(SESSION_HEADER);
+        if (sessionId == null || sessionId.isBlank()) {
+            sessionId = UUID.randomUUID().toString();
+        }
+        exchange.getResponseHeaders().set(SESSION_HEADER, sessionId);
+        return sessionId;
+    }
+
+    private boolean admit() {
+        try {
+            return admission.tryAcquire(admissionTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private int inFlight() {
+        return maxConcurrentRequests - admission.availablePermits();
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        try {
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdownNow();
+        memories.close();
+    }
+
+    public static class Builder {
+        private int port = 8080;
+        private SessionAssistant assistant;
+        private SessionStreamingAssistant streamingAssistant;
+        private SessionChatMemoryProvider memories;
+        private RagMetrics metrics;
+        private int maxConcurrentRequests = 64;
+        private Duration admissionTimeout = Duration.ofSeconds(2);
+
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        public Builder assistant(SessionAssistant assistant) {
+            this.assistant = assistant;
+            return this;
+        }
+
+        /**
+         * @param streamingAssistant Assistant en flux servant {@code /chat/stream} (facultatif)
+         */
+        public Builder streamingAssistant(SessionStreamingAssistant streamingAssistant) {
+            this.streamingAssistant = streamingAssistant;
+            return this;
+        }
+
+        public Builder memories(SessionChatMemoryProvider memories) {
+            this.memories = memories;
+            return this;
+        }
+
+        /**
+         * @param metrics Registre servi sur {@code /metrics} (facultatif)
+         */
+        public Builder metrics(RagMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * @param maxConcurrentRequests Nombre maximal de questions traitées simultanément
+         */
+        public Builder maxConcurrentRequests(int maxConcurrentRequests) {
+            this.maxConcurrentRequests = Math.max(1, maxConcurrentRequests);
+            return this;
+        }
+
+        /**
+         * @param admissionTimeout Attente maximale d'une place avant de répondre 503
+         */
+        public Builder admissionTimeout(Duration admissionTimeout) {
+            this.admissionTimeout = Objects.requireNonNull(admissionTimeout);
+            return this;
+        }
+
+        public AssistantServer build() throws IOException {
+            return new AssistantServer(this);
+        }
+    }
+}
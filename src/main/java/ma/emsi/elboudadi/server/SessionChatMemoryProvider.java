@@ -0,0 +1,143 @@
+package ma.emsi.elboudadi.server;
+
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.ChatMemoryProvider;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Fournit une mémoire de conversation par session, et libère les sessions inactives.
+ *
+ * Chaque session possède aussi un verrou : deux requêtes simultanées d'une même
+ * session sont sérialisées (leur mémoire ne doit pas s'entremêler), alors que des
+ * sessions différentes avancent en parallèle.
+ *
+ * Une requête épingle sa session ({@link #withSession}) avant même d'attendre son
+ * verrou ; épinglage, désépinglage et éviction passent tous par {@code compute} sur
+ * la même clé. Une session épinglée n'est donc jamais évincée, et {@link #get} renvoie
+ * pendant toute la requête la mémoire de la session verrouillée.
+ */
+public class SessionChatMemoryProvider implements ChatMemoryProvider, AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(SessionChatMemoryProvider.class.getName());
+
+    private final Function<Object, ChatMemory> factory;
+    private final long idleTimeoutNanos;
+    private final ConcurrentHashMap<Object, Session> sessions = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().daemon().name("session-evictor").factory());
+
+    /**
+     * @param factory Crée la mémoire d'une nouvelle session à partir de son identifiant
+     * @param idleTimeout Durée d'inactivité au-delà de laquelle une session est oubliée
+     */
+    public SessionChatMemoryProvider(Function<Object, ChatMemory> factory, Duration idleTimeout) {
+        this.factory = Objects.requireNonNull(factory, "La fabrique de mémoire ne peut pas être null");
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        long period = Math.max(1, idleTimeout.toSeconds() / 4);
+        evictor.scheduleAtFixedRate(this::evictIdleSessions, period, period, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public ChatMemory get(Object memoryId) {
+        return acquire(memoryId, 0).memory;
+    }
+
+    /**
+     * Exécute une action sous le verrou de la session, épinglée jusqu'à la fin de l'action.
+     */
+    public <T> T withSession(Object memoryId, Supplier<T> action) {
+        Session session = acquire(memoryId, 1);
+        try {
+            session.lock.lock();
+            try {
+                return action.get();
+            } finally {
+                session.lock.unlock();
+            }
+        } finally {
+            sessions.computeIfPresent(memoryId, (id, current) -> {
+                current.pins--;
+                current.lastAccess = System.nanoTime();
+                return current;
+            });
+        }
+    }
+
+    /**
+     * @return Le nombre de sessions actuellement en mémoire
+     */
+    public int activeSessions() {
+        return sessions.size();
+    }
+
+    /**
+     * @param pins 1 pour épingler la session (requête en cours), 0 pour un simple accès
+     */
+    private Session acquire(Object memoryId, int pins) {
+        return sessions.compute(memoryId, (id, session) -> {
+            Session current = session != null ? session : new Session(factory.apply(id));
+            current.pins += pins;
+            current.lastAccess = System.nanoTime();
+            return current;
+        });
+    }
+
+    private void evictIdleSessions() {
+        long now = System.nanoTime();
+        for (Object id : sessions.keySet()) {
+            // Fermée sous le même compute : une nouvelle session de cet identifiant
+            // attend que le journal de l'ancienne soit fermé avant de le relire
+            sessions.computeIfPresent(id, (key, session) -> {
+                if (session.pins > 0 || now - session.lastAccess <= idleTimeoutNanos) {
+                    return session;
+                }
+                release(session.memory);
+                LOGGER.fine("Session inactive libérée : " + key);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Ferme la mémoire d'une session qui en a besoin (journal sur disque...).
+     */
+    private static void release(ChatMemory memory) {
+        if (memory instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Impossible de fermer la mémoire " + memory.id(), e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        evictor.shutdownNow();
+        sessions.values().forEach(session -> release(session.memory));
+        sessions.clear();
+    }
+
+    private static final class Session {
+        final ChatMemory memory;
+        final ReentrantLock lock = new ReentrantLock();
+        /** Requêtes en cours (modifié seulement sous {@code compute}) */
+        int pins;
+        volatile long lastAccess = System.nanoTime();
+
+        Session(ChatMemory memory) {
+            this.memory = memory;
+        }
+    }
+}
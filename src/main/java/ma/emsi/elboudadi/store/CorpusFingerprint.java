@@ -0,0 +1,52 @@
+package ma.emsi.elboudadi.store;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Calcule l'empreinte SHA-256 du contenu d'un ensemble de documents.
+ *
+ * L'empreinte sert de clé aux index persistés : tant que les PDF ne changent pas,
+ * la même clé désigne le même index sur disque et l'ingestion peut être évitée.
+ */
+public final class CorpusFingerprint {
+
+    private CorpusFingerprint() {
+    }
+
+    /**
+     * @param documents Les fichiers à prendre en compte (l'ordre compte)
+     * @return L'empreinte hexadécimale du nom et du contenu de chaque fichier
+     */
+    public static String of(Path... documents) {
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[64 * 1024];
+        for (Path document : documents) {
+            digest.update(document.getFileName().toString().getBytes(StandardCharsets.UTF_8));
+            try (InputStream in = Files.newInputStream(document)) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Impossible de lire " + document, e);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponible", e);
+        }
+    }
+}
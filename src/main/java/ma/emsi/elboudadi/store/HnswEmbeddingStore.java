@@ -0,0 +1,543 @@
+package ma.emsi.elboudadi.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntPredicate;
+
+/**
+ * Magasin vectoriel en mémoire à recherche approchée, fondé sur un graphe HNSW
+ * (Hierarchical Navigable Small World, Malkov et Yashunin).
+ *
+ * Une recherche ne parcourt plus tous les vecteurs : elle descend les couches du
+ * graphe depuis le point d'entrée puis explore, sur la couche 0, les {@code ef}
+ * voisins les plus prometteurs. Le coût croît à peu près comme le logarithme du
+ * nombre de segments, au prix d'un rappel légèrement inférieur à 1.
+ *
+ * Réglages :
+ * - {@code m} : nombre de voisins par nœud et par couche (2m sur la couche 0) ;
+ * - {@code efConstruction} : largeur de recherche lors des insertions (qualité du graphe) ;
+ * - {@code efSearch} : largeur de recherche lors des requêtes, modifiable à chaud
+ *   ({@link #efSearch(int)}) pour arbitrer entre rappel et latence.
+ *
+ * Les insertions sont sérialisées par un verrou ; les recherches n'en prennent
+ * aucun et peuvent se dérouler pendant les insertions. Les listes de voisins sont
+ * recopiées à chaque modification (copie sur écriture) et publiées atomiquement :
+ * un lecteur voit toujours une liste complète, ancienne ou nouvelle.
+ *
+ * Chaque segment a un rang, son ordre d'insertion (0, 1, 2...) : les recherches
+ * peuvent être restreintes à un ensemble de rangs ({@link #search(EmbeddingSearchRequest, IntPredicate)},
+ * {@link #exactSearch(EmbeddingSearchRequest, BitSet)}).
+ */
+public class HnswEmbeddingStore implements EmbeddingStore<TextSegment> {
+
+    private static final int MAX_LEVEL = 16;
+
+    private final int m;
+    private final int maxConnections0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private volatile int efSearch;
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final SplittableRandom random;
+
+    private volatile Node[] nodes = new Node[1024];
+    private volatile int size;
+    private volatile int entryPoint = -1;
+    private volatile int dimension;
+
+    private HnswEmbeddingStore(Builder builder) {
+        this.m = builder.m;
+        this.maxConnections0 = 2 * builder.m;
+        this.efConstruction = Math.max(builder.efConstruction, builder.m);
+        this.efSearch = builder.efSearch;
+        this.levelMultiplier = 1 / Math.log(builder.m);
+        this.random = new SplittableRandom(builder.seed);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Construit un index HNSW (réglages par défaut) sur le contenu d'un index persistant.
+     */
+    public static HnswEmbeddingStore indexOf(MappedEmbeddingStore source) {
+        return builder().build().addAllFrom(source);
+    }
+
+    /**
+     * Ajoute tous les segments d'un index persistant, avec leurs identifiants.
+     */
+    public HnswEmbeddingStore addAllFrom(MappedEmbeddingStore source) {
+        for (int i = 0; i < source.size(); i++) {
+            insert(source.id(i), source.vector(i), source.segment(i));
+        }
+        return this;
+    }
+
+    /**
+     * Modifie la largeur de recherche des requêtes suivantes.
+     */
+    public HnswEmbeddingStore efSearch(int efSearch) {
+        this.efSearch = Math.max(1, efSearch);
+        return this;
+    }
+
+    public int efSearch() {
+        return efSearch;
+    }
+
+    /**
+     * @return Le nombre de segments indexés
+     */
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        insert(id, embedding.vector(), null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        String id = UUID.randomUUID().toString();
+        insert(id, embedding.vector(), segment);
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> newIds = generateIds(embeddings.size());
+        addAll(newIds, embeddings, Collections.nCopies(embeddings.size(), null));
+        return newIds;
+    }
+
+    @Override
+    public void addAll(List<String> newIds, List<Embedding> embeddings, List<TextSegment> embedded) {
+        if (newIds.size() != embeddings.size() || embeddings.size() != embedded.size()) {
+            throw new IllegalArgumentException("Les listes d'identifiants, d'embeddings et de segments doivent avoir la même taille");
+        }
+        for (int i = 0; i < embeddings.size(); i++) {
+            insert(newIds.get(i), embeddings.get(i).vector(), embedded.get(i));
+        }
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        Filter filter = request.filter();
+        return search(request, filter == null ? null : index -> accepts(filter, node(index)));
+    }
+
+    /**
+     * Recherche approchée limitée aux segments dont le rang est accepté ; le filtre de
+     * métadonnées de la requête est ignoré.
+     *
+     * @param accepted Rangs admis dans les résultats (null : tous)
+     */
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request, IntPredicate accepted) {
+        int entry = entryPoint;
+        if (entry < 0) {
+            return new EmbeddingSearchResult<>(List.of());
+        }
+        float[] query = Vectors.normalized(request.queryEmbedding().vector());
+        int maxResults = request.maxResults();
+
+        for (int level = node(entry).level; level > 0; level--) {
+            entry = greedyClosest(query, entry, level);
+        }
+        // Avec un filtre, on explore plus large pour garder assez de candidats valides
+        int ef = Math.max(efSearch, accepted == null ? maxResults : 4 * maxResults);
+        List<Candidate> candidates = sortedDescending(searchLayer(query, entry, ef, 0));
+
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(maxResults);
+        // Candidats admis par le filtre, comptés avant le seuil de score
+        int admitted = 0;
+        for (Candidate candidate : candidates) {
+            if (admitted == maxResults) {
+                break;
+            }
+            if (accepted != null && !accepted.test(candidate.index)) {
+                continue;
+            }
+            admitted++;
+            double score = RelevanceScore.fromCosineSimilarity(candidate.similarity);
+            if (score >= request.minScore()) {
+                matches.add(match(node(candidate.index), score));
+            }
+        }
+        // Filtre trop sélectif pour le voisinage exploré : on retombe sur le parcours exact.
+        // Des candidats admis mais sous minScore ne le justifient pas : les segments plus
+        // éloignés que le parcours exact trouverait seraient encore moins bien notés.
+        if (accepted != null && admitted < maxResults && candidates.size() < size) {
+            return exactSearch(request, accepted);
+        }
+        return new EmbeddingSearchResult<>(matches);
+    }
+
+    /**
+     * Recherche exacte par parcours de tous les vecteurs : référence pour mesurer
+     * le rappel de {@link #search(EmbeddingSearchRequest)}.
+     */
+    public EmbeddingSearchResult<TextSegment> exactSearch(EmbeddingSearchRequest request) {
+        Filter filter = request.filter();
+        return exactSearch(request, filter == null ? null : index -> accepts(filter, node(index)));
+    }
+
+    /**
+     * Recherche exacte sur les seuls rangs présents dans le bitmap : le coût est
+     * proportionnel au nombre de segments admis, pas à la taille de l'index.
+     */
+    public EmbeddingSearchResult<TextSegment> exactSearch(EmbeddingSearchRequest request, BitSet accepted) {
+        float[] query = Vectors.normalized(request.queryEmbedding().vector());
+        PriorityQueue<Candidate> best = new PriorityQueue<>(Candidate.ASCENDING);
+        int count = size;
+        for (int i = accepted.nextSetBit(0); i >= 0 && i < count; i = accepted.nextSetBit(i + 1)) {
+            offer(best, i, query, request);
+        }
+        return toResult(best);
+    }
+
+    private EmbeddingSearchResult<TextSegment> exactSearch(EmbeddingSearchRequest request, IntPredicate accepted) {
+        float[] query = Vectors.normalized(request.queryEmbedding().vector());
+        PriorityQueue<Candidate> best = new PriorityQueue<>(Candidate.ASCENDING);
+        int count = size;
+        for (int i = 0; i < count; i++) {
+            if (accepted == null || accepted.test(i)) {
+                offer(best, i, query, request);
+            }
+        }
+        return toResult(best);
+    }
+
+    private void offer(PriorityQueue<Candidate> best, int index, float[] query, EmbeddingSearchRequest request) {
+        float similarity = Vectors.dot(node(index).vector, query);
+        if (RelevanceScore.fromCosineSimilarity(similarity) < request.minScore()) {
+            return;
+        }
+        if (best.size() < request.maxResults() || similarity > best.peek().similarity) {
+            best.add(new Candidate(index, similarity));
+            if (best.size() > request.maxResults()) {
+                best.poll();
+            }
+        }
+    }
+
+    private EmbeddingSearchResult<TextSegment> toResult(PriorityQueue<Candidate> best) {
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(best.size());
+        for (Candidate candidate : sortedDescending(best)) {
+            matches.add(match(node(candidate.index), RelevanceScore.fromCosineSimilarity(candidate.similarity)));
+        }
+        return new EmbeddingSearchResult<>(matches);
+    }
+
+    private static boolean accepts(Filter filter, Node node) {
+        return node.segment != null && filter.test(node.segment.metadata());
+    }
+
+    /**
+     * Insère un segment ; son rang est le nombre de segments déjà indexés.
+     */
+    void insert(String id, float[] vector, TextSegment segment) {
+        float[] normalized = Vectors.normalized(vector);
+        writeLock.lock();
+        try {
+            if (dimension == 0) {
+                dimension = normalized.length;
+            } else if (normalized.length != dimension) {
+                throw new IllegalArgumentException("Dimension " + normalized.length + " au lieu de " + dimension);
+            }
+            int index = size;
+            Node node = new Node(id, normalized, segment, randomLevel());
+            if (index == nodes.length) {
+                nodes = Arrays.copyOf(nodes, index * 2);
+            }
+            nodes[index] = node;
+
+            int entry = entryPoint;
+            if (entry < 0) {
+                size = index + 1;
+                entryPoint = index;
+                return;
+            }
+            int topLevel = node(entry).level;
+            for (int level = topLevel; level > node.level; level--) {
+                entry = greedyClosest(normalized, entry, level);
+            }
+            for (int level = Math.min(topLevel, node.level); level >= 0; level--) {
+                List<Candidate> candidates = sortedDescending(searchLayer(normalized, entry, efConstruction, level));
+                int[] neighbours = selectNeighbours(normalized, candidates, m);
+                node.neighbours.set(level, neighbours);
+                int maxConnections = level == 0 ? maxConnections0 : m;
+                for (int neighbour : neighbours) {
+                    connect(neighbour, index, level, maxConnections);
+                }
+                entry = candidates.get(0).index;
+            }
+            size = index + 1;
+            if (node.level > topLevel) {
+                entryPoint = index;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Ajoute {@code newIndex} aux voisins de {@code index} ; au-delà de la capacité,
+     * la liste est reconstruite par l'heuristique de sélection.
+     */
+    private void connect(int index, int newIndex, int level, int maxConnections) {
+        Node node = node(index);
+        int[] current = node.neighbours.get(level);
+        if (current.length < maxConnections) {
+            int[] extended = Arrays.copyOf(current, current.length + 1);
+            extended[current.length] = newIndex;
+            node.neighbours.set(level, extended);
+            return;
+        }
+        List<Candidate> candidates = new ArrayList<>(current.length + 1);
+        for (int neighbour : current) {
+            candidates.add(new Candidate(neighbour, Vectors.dot(node.vector, node(neighbour).vector)));
+        }
+        candidates.add(new Candidate(newIndex, Vectors.dot(node.vector, node(newIndex).vector)));
+        candidates.sort(Candidate.DESCENDING);
+        node.neighbours.set(level, selectNeighbours(node.vector, candidates, maxConnections));
+    }
+
+    /**
+     * Heuristique de sélection de HNSW : un candidat n'est retenu que s'il est plus proche
+     * de la base que de tous les voisins déjà retenus, ce qui garde des liens dans
+     * plusieurs directions. Les places restantes sont complétées par les candidats écartés.
+     *
+     * @param candidates Candidats triés par similarité décroissante avec la base
+     */
+    private int[] selectNeighbours(float[] base, List<Candidate> candidates, int count) {
+        int[] selected = new int[Math.min(count, candidates.size())];
+        int selectedCount = 0;
+        List<Candidate> discarded = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            if (selectedCount == selected.length) {
+                break;
+            }
+            float[] vector = node(candidate.index).vector;
+            boolean diverse = true;
+            for (int i = 0; i < selectedCount && diverse; i++) {
+                diverse = Vectors.dot(vector, node(selected[i]).vector) < candidate.similarity;
+            }
+            if (diverse) {
+                selected[selectedCount++] = candidate.index;
+            } else {
+                discarded.add(candidate);
+            }
+        }
+        for (int i = 0; selectedCount < selected.length && i < discarded.size(); i++) {
+            selected[selectedCount++] = discarded.get(i).index;
+        }
+        return selected;
+    }
+
+    private int greedyClosest(float[] query, int entry, int level) {
+        int current = entry;
+        float best = Vectors.dot(query, node(current).vector);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int neighbour : node(current).neighbours.get(level)) {
+                float similarity = Vectors.dot(query, node(neighbour).vector);
+                if (similarity > best) {
+                    best = similarity;
+                    current = neighbour;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * @return Les {@code ef} nœuds les plus similaires trouvés sur la couche (tas min)
+     */
+    private PriorityQueue<Candidate> searchLayer(float[] query, int entry, int ef, int level) {
+        IntSet visited = new IntSet(ef * maxConnections0);
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(Candidate.DESCENDING);
+        PriorityQueue<Candidate> results = new PriorityQueue<>(Candidate.ASCENDING);
+
+        Candidate start = new Candidate(entry, Vectors.dot(query, node(entry).vector));
+        visited.add(entry);
+        candidates.add(start);
+        results.add(start);
+        while (!candidates.isEmpty()) {
+            Candidate closest = candidates.poll();
+            if (results.size() >= ef && closest.similarity < results.peek().similarity) {
+                break;
+            }
+            for (int neighbour : node(closest.index).neighbours.get(level)) {
+                if (!visited.add(neighbour)) {
+                    continue;
+                }
+                float similarity = Vectors.dot(query, node(neighbour).vector);
+                if (results.size() < ef || similarity > results.peek().similarity) {
+                    Candidate candidate = new Candidate(neighbour, similarity);
+                    candidates.add(candidate);
+                    results.add(candidate);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    private int randomLevel() {
+        double uniform = 1 - random.nextDouble(); // dans ]0, 1]
+        return Math.min(MAX_LEVEL, (int) (-Math.log(uniform) * levelMultiplier));
+    }
+
+    private Node node(int index) {
+        return nodes[index];
+    }
+
+    private static EmbeddingMatch<TextSegment> match(Node node, double score) {
+        return new EmbeddingMatch<>(score, node.id, Embedding.from(node.vector.clone()), node.segment);
+    }
+
+    private static List<Candidate> sortedDescending(PriorityQueue<Candidate> queue) {
+        List<Candidate> sorted = new ArrayList<>(queue);
+        sorted.sort(Candidate.DESCENDING);
+        return sorted;
+    }
+
+    private static final class Node {
+        final String id;
+        final float[] vector;
+        final TextSegment segment;
+        final int level;
+        /** Voisins par couche, remplacés en bloc à chaque modification */
+        final AtomicReferenceArray<int[]> neighbours;
+
+        Node(String id, float[] vector, TextSegment segment, int level) {
+            this.id = id;
+            this.vector = vector;
+            this.segment = segment;
+            this.level = level;
+            this.neighbours = new AtomicReferenceArray<>(level + 1);
+            for (int i = 0; i <= level; i++) {
+                neighbours.set(i, new int[0]);
+            }
+        }
+    }
+
+    private record Candidate(int index, float similarity) {
+        static final Comparator<Candidate> ASCENDING = Comparator.comparingDouble(Candidate::similarity);
+        static final Comparator<Candidate> DESCENDING = ASCENDING.reversed();
+    }
+
+    /**
+     * Ensemble d'entiers positifs à adressage ouvert : nœuds déjà visités par une recherche.
+     */
+    private static final class IntSet {
+        private int[] table;
+        private int count;
+
+        IntSet(int expected) {
+            table = new int[Integer.highestOneBit(Math.max(16, expected) * 2 - 1) << 1];
+            Arrays.fill(table, -1);
+        }
+
+        /**
+         * @return true si la valeur n'était pas encore présente
+         */
+        boolean add(int value) {
+            int mask = table.length - 1;
+            int slot = (value * 0x9E3779B9) >>> 1 & mask;
+            while (table[slot] != -1) {
+                if (table[slot] == value) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = value;
+            if (++count * 2 > table.length) {
+                grow();
+            }
+            return true;
+        }
+
+        private void grow() {
+            int[] old = table;
+            table = new int[old.length * 2];
+            Arrays.fill(table, -1);
+            count = 0;
+            for (int value : old) {
+                if (value != -1) {
+                    add(value);
+                }
+            }
+        }
+    }
+
+    public static class Builder {
+        private int m = 16;
+        private int efConstruction = 100;
+        private int efSearch = 64;
+        private long seed = 42L;
+
+        /**
+         * @param m Nombre de voisins par nœud sur les couches hautes (le double sur la couche 0)
+         */
+        public Builder m(int m) {
+            this.m = Math.max(2, m);
+            return this;
+        }
+
+        public Builder efConstruction(int efConstruction) {
+            this.efConstruction = Math.max(1, efConstruction);
+            return this;
+        }
+
+        public Builder efSearch(int efSearch) {
+            this.efSearch = Math.max(1, efSearch);
+            return this;
+        }
+
+        /**
+         * @param seed Graine du tirage des niveaux : même graine et même ordre d'insertion, même graphe
+         */
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public HnswEmbeddingStore build() {
+            return new HnswEmbeddingStore(this);
+        }
+    }
+}
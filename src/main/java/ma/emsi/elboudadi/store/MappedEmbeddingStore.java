@@ -0,0 +1,399 @@
+package ma.emsi.elboudadi.store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Magasin vectoriel persistant dont les vecteurs sont projetés en mémoire (mmap).
+ *
+ * Deux fichiers composent un index :
+ * - {@value #VECTORS_FILE} : en-tête (magic, version, dimension, nombre) suivi des
+ *   vecteurs normalisés en float32 little-endian, contigus ;
+ * - {@value #SEGMENTS_FILE} : identifiants, texte et métadonnées des segments.
+ *
+ * Au démarrage à chaud, seul le fichier de vecteurs est projeté : ni analyse des PDF
+ * ni calcul d'embeddings. Les ajouts ultérieurs restent en mémoire jusqu'au prochain
+ * {@link #save(Path)}.
+ */
+public class MappedEmbeddingStore implements EmbeddingStore<TextSegment> {
+
+    /**
+     * Répertoire des index utilisé par les différents tests.
+     */
+    public static final Path DEFAULT_INDEX_ROOT = Path.of(".rag-index");
+
+    public static final String VECTORS_FILE = "vectors.f32";
+    public static final String SEGMENTS_FILE = "segments.bin";
+
+    private static final int MAGIC = 0x52414731; // "RAG1"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 * Integer.BYTES;
+
+    private static final byte TYPE_STRING = 0;
+    private static final byte TYPE_UUID = 1;
+    private static final byte TYPE_INTEGER = 2;
+    private static final byte TYPE_LONG = 3;
+    private static final byte TYPE_FLOAT = 4;
+    private static final byte TYPE_DOUBLE = 5;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final FloatBuffer mapped;
+    private final int mappedCount;
+    private int dimension;
+
+    private final List<float[]> added = new ArrayList<>();
+    private final List<String> ids = new ArrayList<>();
+    private final List<TextSegment> segments = new ArrayList<>();
+
+    /**
+     * Crée un magasin vide, entièrement en mémoire.
+     */
+    public MappedEmbeddingStore() {
+        this(null, 0, 0);
+    }
+
+    private MappedEmbeddingStore(FloatBuffer mapped, int mappedCount, int dimension) {
+        this.mapped = mapped;
+        this.mappedCount = mappedCount;
+        this.dimension = dimension;
+    }
+
+    /**
+     * @return true si le répertoire contient un index complet
+     */
+    public static boolean exists(Path directory) {
+        return Files.isRegularFile(directory.resolve(VECTORS_FILE))
+                && Files.isRegularFile(directory.resolve(SEGMENTS_FILE));
+    }
+
+    /**
+     * Projette en mémoire un index précédemment écrit par {@link #save(Path)}.
+     */
+    public static MappedEmbeddingStore open(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory.resolve(VECTORS_FILE), StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Format d'index inconnu : " + directory);
+            }
+            int dimension = buffer.getInt(8);
+            int count = buffer.getInt(12);
+            FloatBuffer vectors = buffer.position(HEADER_BYTES).slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+
+            MappedEmbeddingStore store = new MappedEmbeddingStore(vectors, count, dimension);
+            store.readSegments(directory.resolve(SEGMENTS_FILE), count);
+            return store;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Impossible d'ouvrir l'index " + directory, e);
+        }
+    }
+
+    /**
+     * Écrit l'index dans le répertoire donné. L'écriture passe par des fichiers
+     * temporaires renommés à la fin, pour ne jamais laisser un index partiel.
+     */
+    public void save(Path directory) {
+        lock.readLock().lock();
+        try {
+            Files.createDirectories(directory);
+            Path vectorsTmp = Files.createTempFile(directory, VECTORS_FILE, ".tmp");
+            Path segmentsTmp = Files.createTempFile(directory, SEGMENTS_FILE, ".tmp");
+            writeVectors(vectorsTmp);
+            writeSegments(segmentsTmp);
+            Files.move(vectorsTmp, directory.resolve(VECTORS_FILE), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(segmentsTmp, directory.resolve(SEGMENTS_FILE), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Impossible d'écrire l'index " + directory, e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Le nombre de segments indexés
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return ids.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    /**
+     * @return Une copie du vecteur normalisé d'indice donné
+     */
+    public float[] vector(int index) {
+        lock.readLock().lock();
+        try {
+            float[] vector = new float[dimension];
+            copyVector(Objects.checkIndex(index, ids.size()), vector);
+            return vector;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public String id(int index) {
+        lock.readLock().lock();
+        try {
+            return ids.get(index);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public TextSegment segment(int index) {
+        lock.readLock().lock();
+        try {
+            return segments.get(index);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), Collections.singletonList(null));
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        String id = UUID.randomUUID().toString();
+        addAll(List.of(id), List.of(embedding), Collections.singletonList(segment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> newIds = generateIds(embeddings.size());
+        addAll(newIds, embeddings, Collections.nCopies(embeddings.size(), null));
+        return newIds;
+    }
+
+    @Override
+    public void addAll(List<String> newIds, List<Embedding> embeddings, List<TextSegment> embedded) {
+        if (newIds.size() != embeddings.size() || embeddings.size() != embedded.size()) {
+            throw new IllegalArgumentException("Les listes d'identifiants, d'embeddings et de segments doivent avoir la même taille");
+        }
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < embeddings.size(); i++) {
+                float[] vector = embeddings.get(i).vector();
+                if (dimension == 0) {
+                    dimension = vector.length;
+                } else if (vector.length != dimension) {
+                    throw new IllegalArgumentException("Dimension " + vector.length + " au lieu de " + dimension);
+                }
+                added.add(Vectors.normalized(vector));
+                ids.add(newIds.get(i));
+                segments.add(embedded.get(i));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        float[] query = Vectors.normalized(request.queryEmbedding().vector());
+        Filter filter = request.filter();
+        int maxResults = request.maxResults();
+        double minScore = request.minScore();
+
+        PriorityQueue<EmbeddingMatch<TextSegment>> best =
+                new PriorityQueue<>(Comparator.comparingDouble(EmbeddingMatch::score));
+        lock.readLock().lock();
+        try {
+            float[] candidate = new float[dimension];
+            for (int i = 0; i < ids.size(); i++) {
+                TextSegment segment = segments.get(i);
+                if (filter != null && (segment == null || !filter.test(segment.metadata()))) {
+                    continue;
+                }
+                double score = RelevanceScore.fromCosineSimilarity(dot(i, query));
+                if (score < minScore) {
+                    continue;
+                }
+                if (best.size() < maxResults || score > best.peek().score()) {
+                    copyVector(i, candidate);
+                    best.add(new EmbeddingMatch<>(score, ids.get(i), Embedding.from(candidate.clone()), segment));
+                    if (best.size() > maxResults) {
+                        best.poll();
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(best);
+        matches.sort(Comparator.comparingDouble((EmbeddingMatch<TextSegment> m) -> m.score()).reversed());
+        return new EmbeddingSearchResult<>(matches);
+    }
+
+    private float dot(int index, float[] query) {
+        if (index >= mappedCount) {
+            return Vectors.dot(added.get(index - mappedCount), query);
+        }
+        int offset = index * dimension;
+        float sum = 0f;
+        for (int j = 0; j < dimension; j++) {
+            sum += mapped.get(offset + j) * query[j];
+        }
+        return sum;
+    }
+
+    private void copyVector(int index, float[] destination) {
+        if (index >= mappedCount) {
+            System.arraycopy(added.get(index - mappedCount), 0, destination, 0, dimension);
+        } else {
+            mapped.get(index * dimension, destination, 0, dimension);
+        }
+    }
+
+    private void writeVectors(Path file) throws IOException {
+        int count = ids.size();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(dimension).putInt(count).flip();
+            channel.write(header);
+
+            ByteBuffer row = ByteBuffer.allocate(dimension * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            float[] vector = new float[dimension];
+            for (int i = 0; i < count; i++) {
+                copyVector(i, vector);
+                row.clear();
+                row.asFloatBuffer().put(vector);
+                channel.write(row);
+            }
+        }
+    }
+
+    private void writeSegments(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                out.writeUTF(ids.get(i));
+                TextSegment segment = segments.get(i);
+                out.writeBoolean(segment != null);
+                if (segment == null) {
+                    continue;
+                }
+                byte[] text = segment.text().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(text.length);
+                out.write(text);
+                Map<String, Object> metadata = segment.metadata().toMap();
+                out.writeInt(metadata.size());
+                for (Map.Entry<String, Object> entry : metadata.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    writeValue(out, entry.getValue());
+                }
+            }
+        }
+    }
+
+    private void readSegments(Path file, int expected) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            int count = in.readInt();
+            if (count != expected) {
+                throw new IOException("Index incohérent : " + count + " segments pour " + expected + " vecteurs");
+            }
+            for (int i = 0; i < count; i++) {
+                ids.add(in.readUTF());
+                if (!in.readBoolean()) {
+                    segments.add(null);
+                    continue;
+                }
+                String text = new String(in.readNBytes(in.readInt()), StandardCharsets.UTF_8);
+                Metadata metadata = new Metadata();
+                int entries = in.readInt();
+                for (int j = 0; j < entries; j++) {
+                    readValue(in, in.readUTF(), metadata);
+                }
+                segments.add(TextSegment.from(text, metadata));
+            }
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof UUID uuid) {
+            out.writeByte(TYPE_UUID);
+            out.writeUTF(uuid.toString());
+        } else if (value instanceof Integer integer) {
+            out.writeByte(TYPE_INTEGER);
+            out.writeInt(integer);
+        } else if (value instanceof Long longValue) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong(longValue);
+        } else if (value instanceof Float floatValue) {
+            out.writeByte(TYPE_FLOAT);
+            out.writeFloat(floatValue);
+        } else if (value instanceof Double doubleValue) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble(doubleValue);
+        } else {
+            out.writeByte(TYPE_STRING);
+            out.writeUTF(String.valueOf(value));
+        }
+    }
+
+    private static void readValue(DataInputStream in, String key, Metadata metadata) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case TYPE_UUID -> metadata.put(key, UUID.fromString(in.readUTF()));
+            case TYPE_INTEGER -> metadata.put(key, in.readInt());
+            case TYPE_LONG -> metadata.put(key, in.readLong());
+            case TYPE_FLOAT -> metadata.put(key, in.readFloat());
+            case TYPE_DOUBLE -> metadata.put(key, in.readDouble());
+            case TYPE_STRING -> metadata.put(key, in.readUTF());
+            default -> throw new IOException("Type de métadonnée inconnu : " + type);
+        }
+    }
+}
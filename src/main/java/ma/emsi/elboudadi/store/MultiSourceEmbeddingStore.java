@@ -0,0 +1,256 @@
+package ma.emsi.elboudadi.store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import ma.emsi.elboudadi.store.QuantizedEmbeddingStore.Quantization;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Un seul index vectoriel pour tous les documents, chaque segment étant marqué de sa source.
+ *
+ * Avec un index par document, une question routée vers n sources est convertie en
+ * embedding et cherchée n fois. Ici, tous les segments sont dans un même graphe HNSW ;
+ * une recherche reçoit le bitmap des sources autorisées et n'admet que leurs segments.
+ * Le coût d'une recherche reste celui d'un seul parcours quel que soit le nombre de
+ * documents.
+ *
+ * Le bitmap des sources est traduit en bitmap des segments (union des bitmaps par
+ * source, mémorisée par combinaison). Quand les segments admis ne représentent qu'une
+ * petite part de l'index, ils sont parcourus directement (pré-filtrage exact) : le
+ * graphe, qui explore surtout des voisins d'autres sources, serait alors moins efficace.
+ *
+ * Avec une {@link Quantization}, aucun graphe n'est construit (ni vecteurs float32 sur
+ * le tas) : chaque source est parcourue par un {@link QuantizedEmbeddingStore} sur ses
+ * codes hors du tas, puis les meilleurs résultats des sources autorisées sont fusionnés.
+ *
+ * Les segments reçoivent la métadonnée {@value #SOURCE_METADATA} (nom de la source).
+ */
+public class MultiSourceEmbeddingStore {
+
+    public static final String SOURCE_METADATA = "source";
+
+    private final List<String> sourceNames;
+    private final Map<String, Integer> sourceIndexes = new LinkedHashMap<>();
+    private final BitSet[] segmentsBySource;
+    private final short[] sourceOf;
+    private final List<TextSegment> segments;
+    private final List<String> ids;
+    /** Graphe partagé, null avec une quantification */
+    private final HnswEmbeddingStore index;
+    /** Index quantifié de chaque source, null sans quantification */
+    private final QuantizedEmbeddingStore[] quantized;
+    private final double exactScanRatio;
+    private final Map<BitSet, BitSet> admittedSegments = new ConcurrentHashMap<>();
+
+    private MultiSourceEmbeddingStore(Builder builder) {
+        if (builder.sources.isEmpty()) {
+            throw new IllegalArgumentException("Au moins une source est nécessaire");
+        }
+        if (builder.sources.size() > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Trop de sources : " + builder.sources.size());
+        }
+        this.sourceNames = List.copyOf(builder.sources.keySet());
+        this.index = builder.quantization == null ? builder.index.build() : null;
+        this.quantized = builder.quantization == null ? null : new QuantizedEmbeddingStore[sourceNames.size()];
+        this.exactScanRatio = builder.exactScanRatio;
+        this.segmentsBySource = new BitSet[sourceNames.size()];
+
+        int total = builder.sources.values().stream().mapToInt(MappedEmbeddingStore::size).sum();
+        this.sourceOf = new short[total];
+        this.segments = new ArrayList<>(total);
+        this.ids = new ArrayList<>(total);
+
+        int ordinal = 0;
+        for (int source = 0; source < sourceNames.size(); source++) {
+            String name = sourceNames.get(source);
+            MappedEmbeddingStore store = builder.sources.get(name);
+            sourceIndexes.put(name, source);
+            segmentsBySource[source] = new BitSet(total);
+            if (quantized != null && store.size() > 0) {
+                quantized[source] = QuantizedEmbeddingStore.builder()
+                        .source(store)
+                        .quantization(builder.quantization)
+                        .build();
+            }
+            for (int i = 0; i < store.size(); i++, ordinal++) {
+                TextSegment segment = tagged(store.segment(i), name);
+                sourceOf[ordinal] = (short) source;
+                segmentsBySource[source].set(ordinal);
+                segments.add(segment);
+                ids.add(store.id(i));
+                if (index != null) {
+                    // Le rang dans le graphe est l'ordre d'insertion : il coïncide avec ordinal
+                    index.insert(store.id(i), store.vector(i), segment);
+                }
+            }
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Recherche parmi les segments des sources autorisées.
+     *
+     * @param sources Numéros des sources autorisées ({@link #sourceIndex(String)})
+     */
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request, BitSet sources) {
+        if (quantized != null) {
+            return quantizedSearch(request, sources);
+        }
+        if (sources.cardinality() == sourceNames.size()) {
+            return index.search(request, null);
+        }
+        if (sources.isEmpty()) {
+            return new EmbeddingSearchResult<>(List.of());
+        }
+        BitSet admitted = admittedSegments(sources);
+        if (admitted.cardinality() <= exactScanRatio * size()) {
+            return index.exactSearch(request, admitted);
+        }
+        return index.search(request, admitted::get);
+    }
+
+    /**
+     * Meilleurs résultats de chaque source autorisée, fusionnés par score.
+     */
+    private EmbeddingSearchResult<TextSegment> quantizedSearch(EmbeddingSearchRequest request, BitSet sources) {
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>();
+        sources.stream().forEach(source -> {
+            if (quantized[source] == null) {
+                return;
+            }
+            String name = sourceNames.get(source);
+            for (EmbeddingMatch<TextSegment> match : quantized[source].search(request).matches()) {
+                matches.add(new EmbeddingMatch<>(match.score(), match.embeddingId(), match.embedding(),
+                        tagged(match.embedded(), name)));
+            }
+        });
+        matches.sort(Comparator.comparingDouble((EmbeddingMatch<TextSegment> m) -> m.score()).reversed());
+        return new EmbeddingSearchResult<>(matches.subList(0, Math.min(request.maxResults(), matches.size())));
+    }
+
+    /**
+     * @return Le bitmap des segments appartenant à l'une des sources (à ne pas modifier)
+     */
+    public BitSet admittedSegments(BitSet sources) {
+        return admittedSegments.computeIfAbsent((BitSet) sources.clone(), key -> {
+            BitSet admitted = new BitSet(size());
+            key.stream().forEach(source -> admitted.or(segmentsBySource[source]));
+            return admitted;
+        });
+    }
+
+    /**
+     * @return Le bitmap contenant toutes les sources
+     */
+    public BitSet allSources() {
+        BitSet all = new BitSet(sourceNames.size());
+        all.set(0, sourceNames.size());
+        return all;
+    }
+
+    /**
+     * @return Le numéro de la source, utilisé dans les bitmaps de sources
+     */
+    public int sourceIndex(String name) {
+        Integer source = sourceIndexes.get(name);
+        if (source == null) {
+            throw new IllegalArgumentException("Source inconnue : " + name);
+        }
+        return source;
+    }
+
+    public List<String> sourceNames() {
+        return sourceNames;
+    }
+
+    /**
+     * @return Le numéro de la source du segment de rang {@code ordinal}
+     */
+    public int sourceOf(int ordinal) {
+        return sourceOf[ordinal];
+    }
+
+    public TextSegment segment(int ordinal) {
+        return segments.get(ordinal);
+    }
+
+    public String id(int ordinal) {
+        return ids.get(ordinal);
+    }
+
+    /**
+     * @return Le nombre total de segments, toutes sources confondues
+     */
+    public int size() {
+        return segments.size();
+    }
+
+    private static TextSegment tagged(TextSegment segment, String source) {
+        if (segment == null) {
+            return TextSegment.from("", new Metadata().put(SOURCE_METADATA, source));
+        }
+        return TextSegment.from(segment.text(), segment.metadata().copy().put(SOURCE_METADATA, source));
+    }
+
+    public static class Builder {
+        private final Map<String, MappedEmbeddingStore> sources = new LinkedHashMap<>();
+        private HnswEmbeddingStore.Builder index = HnswEmbeddingStore.builder();
+        private Quantization quantization;
+        private double exactScanRatio = 0.1;
+
+        /**
+         * Ajoute les segments d'un document sous le nom de sa source.
+         */
+        public Builder source(String name, MappedEmbeddingStore store) {
+            Objects.requireNonNull(name, "Le nom de la source ne peut pas être null");
+            if (sources.putIfAbsent(name, Objects.requireNonNull(store, "L'index de la source ne peut pas être null")) != null) {
+                throw new IllegalArgumentException("Source déjà ajoutée : " + name);
+            }
+            return this;
+        }
+
+        /**
+         * @param index Réglages du graphe HNSW partagé
+         */
+        public Builder index(HnswEmbeddingStore.Builder index) {
+            this.index = Objects.requireNonNull(index);
+            return this;
+        }
+
+        /**
+         * @param quantization Codes compacts parcourus par source à la place du graphe
+         *                     HNSW ; null (par défaut) pour le graphe
+         */
+        public Builder quantization(Quantization quantization) {
+            this.quantization = quantization;
+            return this;
+        }
+
+        /**
+         * @param exactScanRatio Part des segments admis en dessous de laquelle ils sont parcourus
+         *                       directement plutôt que par le graphe
+         */
+        public Builder exactScanRatio(double exactScanRatio) {
+            this.exactScanRatio = exactScanRatio;
+            return this;
+        }
+
+        public MultiSourceEmbeddingStore build() {
+            return new MultiSourceEmbeddingStore(this);
+        }
+    }
+}
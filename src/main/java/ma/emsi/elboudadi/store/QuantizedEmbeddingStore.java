@@ -0,0 +1,361 @@
+package ma.emsi.elboudadi.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Vue quantifiée d'un {@link MappedEmbeddingStore}, stockée hors du tas.
+ *
+ * Chaque vecteur est réduit à un code compact, rangé dans un unique tampon direct
+ * contigu (aucun objet par segment, rien à parcourir pour le GC) :
+ * - {@link Quantization#INT8} : un octet par composante plus un facteur d'échelle (≈ 4x moins) ;
+ * - {@link Quantization#BINARY} : un bit par composante, le signe de l'écart au vecteur
+ *   moyen du corpus (≈ 32x moins). Le centrage compte : les embeddings d'un même
+ *   modèle partagent une forte composante commune, qui donnerait sinon presque
+ *   les mêmes bits à tous les segments.
+ *
+ * Une recherche parcourt les codes pour présélectionner {@code rescoreFactor × k}
+ * candidats, puis recalcule leur score exact sur les vecteurs complets de l'index
+ * source, qui restent dans le fichier projeté en mémoire : seules les pages des
+ * candidats sont lues. La perte de rappel se limite ainsi aux vrais voisins que la
+ * présélection a manqués.
+ *
+ * Les ajouts sont transmis à l'index source puis quantifiés à leur tour.
+ */
+public class QuantizedEmbeddingStore implements EmbeddingStore<TextSegment> {
+
+    /**
+     * Représentation compacte des vecteurs.
+     */
+    public enum Quantization {
+        /** Un octet signé par composante, échelle propre à chaque vecteur (et à la requête) */
+        INT8,
+        /** Un bit par composante (signe), comparaison par distance de Hamming */
+        BINARY
+    }
+
+    private final MappedEmbeddingStore source;
+    private final Quantization quantization;
+    private final int rescoreFactor;
+    private final int dimension;
+    private final int recordBytes;
+    private final float[] mean;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private ByteBuffer codes;
+    private int count;
+
+    private QuantizedEmbeddingStore(Builder builder) {
+        this.source = Objects.requireNonNull(builder.source, "L'index source ne peut pas être null");
+        this.quantization = Objects.requireNonNull(builder.quantization);
+        this.rescoreFactor = builder.rescoreFactor > 0
+                ? builder.rescoreFactor
+                : quantization == Quantization.INT8 ? 3 : 30;
+        this.dimension = source.dimension();
+        if (dimension == 0) {
+            throw new IllegalArgumentException("L'index source est vide : dimension inconnue");
+        }
+        this.recordBytes = quantization == Quantization.INT8
+                ? Float.BYTES + dimension
+                : Long.BYTES * ((dimension + 63) / 64);
+        this.mean = quantization == Quantization.BINARY ? mean(source) : null;
+        this.codes = allocate(Math.max(16, source.size()));
+        for (int i = 0; i < source.size(); i++) {
+            append(source.vector(i));
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public Quantization quantization() {
+        return quantization;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Octets hors tas occupés par les codes
+     */
+    public long offHeapBytes() {
+        return (long) size() * recordBytes;
+    }
+
+    /**
+     * @return Taux de compression des codes par rapport aux vecteurs float32
+     */
+    public double compressionRatio() {
+        return (double) dimension * Float.BYTES / recordBytes;
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        lock.writeLock().lock();
+        try {
+            String id = source.add(embedding);
+            append(Vectors.normalized(embedding.vector()));
+            return id;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        lock.writeLock().lock();
+        try {
+            source.add(id, embedding);
+            append(Vectors.normalized(embedding.vector()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        lock.writeLock().lock();
+        try {
+            String id = source.add(embedding, segment);
+            append(Vectors.normalized(embedding.vector()));
+            return id;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        lock.writeLock().lock();
+        try {
+            List<String> newIds = source.addAll(embeddings);
+            embeddings.forEach(embedding -> append(Vectors.normalized(embedding.vector())));
+            return newIds;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void addAll(List<String> newIds, List<Embedding> embeddings, List<TextSegment> embedded) {
+        lock.writeLock().lock();
+        try {
+            source.addAll(newIds, embeddings, embedded);
+            embeddings.forEach(embedding -> append(Vectors.normalized(embedding.vector())));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        float[] query = Vectors.normalized(request.queryEmbedding().vector());
+        Filter filter = request.filter();
+        int maxResults = request.maxResults();
+        int shortlistSize = maxResults * rescoreFactor;
+
+        lock.readLock().lock();
+        try {
+            // 1. Présélection sur les codes
+            long[] queryBits = quantization == Quantization.BINARY ? signBits(query) : null;
+            byte[] queryCodes = queryBits == null ? new byte[dimension] : null;
+            float queryScale = queryBits == null ? int8Codes(query, queryCodes) : 0f;
+            byte[] scratch = queryBits == null ? new byte[dimension] : null;
+            PriorityQueue<Candidate> shortlist = new PriorityQueue<>(Comparator.comparingDouble(Candidate::score));
+            for (int i = 0; i < count; i++) {
+                if (filter != null) {
+                    TextSegment segment = source.segment(i);
+                    if (segment == null || !filter.test(segment.metadata())) {
+                        continue;
+                    }
+                }
+                float approximate = queryBits != null
+                        ? binaryScore(i, queryBits)
+                        : queryScale * int8Score(i, queryCodes, scratch);
+                if (shortlist.size() < shortlistSize || approximate > shortlist.peek().score) {
+                    shortlist.add(new Candidate(i, approximate));
+                    if (shortlist.size() > shortlistSize) {
+                        shortlist.poll();
+                    }
+                }
+            }
+
+            // 2. Score exact des candidats, sur les vecteurs complets de l'index source
+            PriorityQueue<EmbeddingMatch<TextSegment>> best =
+                    new PriorityQueue<>(Comparator.comparingDouble(EmbeddingMatch::score));
+            for (Candidate candidate : shortlist) {
+                float[] vector = source.vector(candidate.index);
+                double score = RelevanceScore.fromCosineSimilarity(Vectors.dot(vector, query));
+                if (score < request.minScore()) {
+                    continue;
+                }
+                best.add(new EmbeddingMatch<>(score, source.id(candidate.index),
+                        Embedding.from(vector), source.segment(candidate.index)));
+                if (best.size() > maxResults) {
+                    best.poll();
+                }
+            }
+            List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(best);
+            matches.sort(Comparator.comparingDouble((EmbeddingMatch<TextSegment> m) -> m.score()).reversed());
+            return new EmbeddingSearchResult<>(matches);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void append(float[] normalized) {
+        if (normalized.length != dimension) {
+            throw new IllegalArgumentException("Dimension " + normalized.length + " au lieu de " + dimension);
+        }
+        if ((long) (count + 1) * recordBytes > codes.capacity()) {
+            ByteBuffer larger = allocate(count * 2);
+            larger.put(0, codes, 0, count * recordBytes);
+            codes = larger;
+        }
+        int offset = count * recordBytes;
+        if (quantization == Quantization.INT8) {
+            byte[] vectorCodes = new byte[dimension];
+            codes.putFloat(offset, int8Codes(normalized, vectorCodes));
+            codes.put(offset + Float.BYTES, vectorCodes);
+        } else {
+            long[] bits = signBits(normalized);
+            for (int w = 0; w < bits.length; w++) {
+                codes.putLong(offset + w * Long.BYTES, bits[w]);
+            }
+        }
+        count++;
+    }
+
+    /**
+     * Quantifie un vecteur sur [-127, 127] avec une échelle propre.
+     *
+     * @return L'échelle (valeur réelle d'une unité de code)
+     */
+    private static float int8Codes(float[] vector, byte[] destination) {
+        float maxAbs = 0f;
+        for (float value : vector) {
+            maxAbs = Math.max(maxAbs, Math.abs(value));
+        }
+        float scale = maxAbs == 0f ? 1f : maxAbs / 127f;
+        for (int j = 0; j < vector.length; j++) {
+            destination[j] = (byte) Math.round(vector[j] / scale);
+        }
+        return scale;
+    }
+
+    /**
+     * Produit scalaire entier entre les codes de la requête et ceux d'un vecteur,
+     * ramené à l'échelle du vecteur (l'échelle de la requête est appliquée par l'appelant).
+     * La somme entière, contrairement à une somme flottante, est vectorisée par le JIT.
+     *
+     * @param scratch Tampon de travail de {@code dimension} octets : une copie en bloc
+     *                est bien plus rapide que des lectures octet par octet du tampon direct
+     */
+    private float int8Score(int index, byte[] queryCodes, byte[] scratch) {
+        int offset = index * recordBytes;
+        float scale = codes.getFloat(offset);
+        codes.get(offset + Float.BYTES, scratch, 0, dimension);
+        int sum = 0;
+        for (int j = 0; j < dimension; j++) {
+            sum += queryCodes[j] * scratch[j];
+        }
+        return scale * sum;
+    }
+
+    /**
+     * Estimation du cosinus à partir de la proportion de signes concordants.
+     */
+    private float binaryScore(int index, long[] queryBits) {
+        int offset = index * recordBytes;
+        int differences = 0;
+        for (int w = 0; w < queryBits.length; w++) {
+            differences += Long.bitCount(codes.getLong(offset + w * Long.BYTES) ^ queryBits[w]);
+        }
+        return 1f - 2f * differences / dimension;
+    }
+
+    private long[] signBits(float[] vector) {
+        long[] bits = new long[(vector.length + 63) / 64];
+        for (int j = 0; j < vector.length; j++) {
+            if (vector[j] > mean[j]) {
+                bits[j >>> 6] |= 1L << (j & 63);
+            }
+        }
+        return bits;
+    }
+
+    private static float[] mean(MappedEmbeddingStore source) {
+        float[] mean = new float[source.dimension()];
+        int size = source.size();
+        for (int i = 0; i < size; i++) {
+            float[] vector = source.vector(i);
+            for (int j = 0; j < mean.length; j++) {
+                mean[j] += vector[j] / size;
+            }
+        }
+        return mean;
+    }
+
+    private ByteBuffer allocate(int records) {
+        return ByteBuffer.allocateDirect(Math.multiplyExact(records, recordBytes)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private record Candidate(int index, float score) {
+    }
+
+    public static class Builder {
+        private MappedEmbeddingStore source;
+        private Quantization quantization = Quantization.INT8;
+        private int rescoreFactor;
+
+        /**
+         * @param source Index complet : fournit les vecteurs de rescoring et les segments
+         */
+        public Builder source(MappedEmbeddingStore source) {
+            this.source = source;
+            return this;
+        }
+
+        public Builder quantization(Quantization quantization) {
+            this.quantization = quantization;
+            return this;
+        }
+
+        /**
+         * @param rescoreFactor Candidats présélectionnés par résultat demandé
+         *                      (par défaut 3 en INT8, 30 en BINARY : le
+         *                      signe seul départage mal des voisins proches)
+         */
+        public Builder rescoreFactor(int rescoreFactor) {
+            this.rescoreFactor = rescoreFactor;
+            return this;
+        }
+
+        public QuantizedEmbeddingStore build() {
+            return new QuantizedEmbeddingStore(this);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package ma.emsi.elboudadi.store;
+
+/**
+ * Opérations vectorielles élémentaires sur des tableaux de float primitifs.
+ *
+ * Les magasins de ce package stockent des vecteurs normalisés : la similarité
+ * cosinus se réduit alors à un simple produit scalaire.
+ */
+public final class Vectors {
+
+    private Vectors() {
+    }
+
+    public static float dot(float[] a, float[] b) {
+        // Quatre sommes partielles indépendantes : le JIT ne vectorise pas une réduction
+        // flottante séquentielle, mais peut alors enchaîner les multiplications sans attendre
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        int i = 0;
+        for (int bound = a.length & ~3; i < bound; i += 4) {
+            s0 += a[i] * b[i];
+            s1 += a[i + 1] * b[i + 1];
+            s2 += a[i + 2] * b[i + 2];
+            s3 += a[i + 3] * b[i + 3];
+        }
+        for (; i < a.length; i++) {
+            s0 += a[i] * b[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    public static float norm(float[] v) {
+        return (float) Math.sqrt(dot(v, v));
+    }
+
+    /**
+     * @return Une copie normalisée du vecteur (ou une copie telle quelle si sa norme est nulle)
+     */
+    public static float[] normalized(float[] v) {
+        float[] copy = v.clone();
+        float norm = norm(copy);
+        if (norm > 0f) {
+            for (int i = 0; i < copy.length; i++) {
+                copy[i] /= norm;
+            }
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,28 @@
+package ma.emsi.elboudadi.streaming;
+
+import java.time.Duration;
+
+/**
+ * Mesures d'une réponse diffusée en flux.
+ *
+ * @param timeToFirstToken Délai entre l'envoi de la question et le premier jeton reçu
+ *                         (inclut la recherche de contenu)
+ * @param total Durée totale jusqu'à la fin du flux
+ * @param outputTokens Nombre de jetons générés (compté par le fournisseur, sinon nombre de fragments)
+ */
+public record StreamTiming(Duration timeToFirstToken, Duration total, int outputTokens) {
+
+    /**
+     * @return Débit de génération, mesuré à partir du premier jeton
+     */
+    public double tokensPerSecond() {
+        long generationNanos = total.toNanos() - timeToFirstToken.toNanos();
+        return generationNanos <= 0 ? 0 : outputTokens * 1e9 / generationNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("premier jeton %d ms, total %d ms, %d jetons, %.1f jetons/s",
+                timeToFirstToken.toMillis(), total.toMillis(), outputTokens, tokensPerSecond());
+    }
+}
@@ -0,0 +1,33 @@
+package ma.emsi.elboudadi.streaming;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Agrégat des mesures de flux : latence perçue (premier jeton) et débit moyen.
+ */
+public class StreamingStats {
+
+    private final LongAdder responses = new LongAdder();
+    private final LongAdder firstTokenNanos = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAdder tokens = new LongAdder();
+
+    public void record(StreamTiming timing) {
+        responses.increment();
+        firstTokenNanos.add(timing.timeToFirstToken().toNanos());
+        totalNanos.add(timing.total().toNanos());
+        tokens.add(timing.outputTokens());
+    }
+
+    @Override
+    public String toString() {
+        long count = responses.sum();
+        if (count == 0) {
+            return "Flux : aucune réponse";
+        }
+        long generationNanos = totalNanos.sum() - firstTokenNanos.sum();
+        return String.format("Flux : %d réponses, premier jeton en %.0f ms en moyenne, total %.0f ms, %.1f jetons/s",
+                count, firstTokenNanos.sum() / 1e6 / count, totalNanos.sum() / 1e6 / count,
+                generationNanos <= 0 ? 0.0 : tokens.sum() * 1e9 / generationNanos);
+    }
+}
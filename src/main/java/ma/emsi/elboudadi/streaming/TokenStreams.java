@@ -0,0 +1,61 @@
+package ma.emsi.elboudadi.streaming;
+
+import dev.langchain4j.model.output.TokenUsage;
+import dev.langchain4j.service.TokenStream;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Consommation synchrone d'un {@link TokenStream} avec mesure de la latence perçue.
+ */
+public final class TokenStreams {
+
+    private TokenStreams() {
+    }
+
+    /**
+     * Démarre le flux, transmet chaque fragment à {@code sink} dès sa réception et
+     * attend la fin de la réponse.
+     *
+     * @param start Instant ({@link System#nanoTime()}) où la question a été posée
+     * @param stream Le flux renvoyé par l'assistant
+     * @param sink Destination des fragments (console, réponse HTTP...)
+     * @param stats Agrégat à alimenter (peut être null)
+     * @return Les mesures de cette réponse
+     */
+    public static StreamTiming consume(long start, TokenStream stream, Consumer<String> sink, StreamingStats stats) {
+        AtomicLong firstToken = new AtomicLong();
+        AtomicInteger fragments = new AtomicInteger();
+        CompletableFuture<TokenUsage> done = new CompletableFuture<>();
+
+        stream.onPartialResponse(fragment -> {
+                    firstToken.compareAndSet(0, System.nanoTime());
+                    fragments.incrementAndGet();
+                    sink.accept(fragment);
+                })
+                .onCompleteResponse(response -> done.complete(response.tokenUsage()))
+                .onError(done::completeExceptionally)
+                .start();
+
+        TokenUsage usage;
+        try {
+            usage = done.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException runtime ? runtime : e;
+        }
+        long end = System.nanoTime();
+        long first = firstToken.get() == 0 ? end : firstToken.get();
+        int outputTokens = usage != null && usage.outputTokenCount() != null ? usage.outputTokenCount() : fragments.get();
+
+        StreamTiming timing = new StreamTiming(Duration.ofNanos(first - start), Duration.ofNanos(end - start), outputTokens);
+        if (stats != null) {
+            stats.record(timing);
+        }
+        return timing;
+    }
+}
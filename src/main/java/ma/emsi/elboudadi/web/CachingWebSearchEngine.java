@@ -0,0 +1,619 @@
+package ma.emsi.elboudadi.web;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.ContentMetadata;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.content.retriever.WebSearchContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.rag.query.router.QueryRouter;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.web.search.WebSearchEngine;
+import dev.langchain4j.web.search.WebSearchInformationResult;
+import dev.langchain4j.web.search.WebSearchOrganicResult;
+import dev.langchain4j.web.search.WebSearchRequest;
+import dev.langchain4j.web.search.WebSearchResults;
+import ma.emsi.elboudadi.metrics.RagMetrics;
+import ma.emsi.elboudadi.store.HnswEmbeddingStore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Moteur de recherche Web avec cache, placé devant un moteur distant (Tavily...).
+ *
+ * - Les résultats sont mémorisés par requête (termes normalisés + nombre de résultats)
+ *   pendant {@code ttl} ; une recherche déjà en cours est partagée. Passé
+ *   {@code inFlightTimeout}, elle échoue pour ceux qui l'attendent et la requête
+ *   suivante la relance : un appel distant bloqué ne condamne pas la clé.
+ * - Les échecs sont mémorisés aussi (cache négatif, {@code negativeTtl}) : pendant une
+ *   panne du moteur, les questions suivantes échouent immédiatement au lieu d'attendre
+ *   à nouveau le délai de la source.
+ * - Le cache peut être persisté sur disque ({@link Builder#persistence(Path)}) : il
+ *   est relu au démarrage et réécrit par {@link #save()} et {@link #close()}.
+ * - {@link #prefetching(QueryRouter, int)} lance la recherche dès l'arrivée de la
+ *   question, en parallèle de la décision de routage, si l'index local ne peut pas
+ *   y répondre ; le retriever Web trouve ensuite la recherche en cours ou terminée.
+ * - Avec un modèle d'embedding ({@link Builder#localIndex(EmbeddingModel)}), les pages
+ *   obtenues sont indexées localement ; {@link #retriever(int)} les sert comme
+ *   résultats vectoriels pour une question proche, sans appel distant. Chaque page
+ *   garde l'expiration de la recherche qui l'a apportée : une page expirée n'est plus
+ *   servie, et l'index est reconstruit sans les pages expirées quand il atteint
+ *   {@code maxLocalPages} (les pages les plus proches de l'expiration partent d'abord).
+ */
+public class CachingWebSearchEngine implements WebSearchEngine, AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(CachingWebSearchEngine.class.getName());
+
+    public static final String SEARCH = "web.search";
+    public static final String CACHE_HITS = "web.cache.hits";
+    public static final String CACHE_MISSES = "web.cache.misses";
+    public static final String NEGATIVE_HITS = "web.cache.negative_hits";
+    public static final String PREFETCHES = "web.prefetches";
+    public static final String LOCAL_HITS = "web.local_hits";
+
+    private static final int MAGIC = 0x57454243; // "WEBC"
+    private static final int VERSION = 1;
+
+    private final WebSearchEngine delegate;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final int maxEntries;
+    private final long inFlightTimeoutNanos;
+    private final int maxLocalPages;
+    private final Path persistence;
+    private final EmbeddingModel embeddingModel;
+    private final double localMinScore;
+    private final RagMetrics metrics;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    /** Index local et pages correspondantes, remplacés ensemble à chaque reconstruction */
+    private volatile LocalIndex localIndex;
+    private final Object localLock = new Object();
+
+    private CachingWebSearchEngine(Builder builder) {
+        this.delegate = Objects.requireNonNull(builder.delegate, "Le moteur de recherche délégué ne peut pas être null");
+        this.ttlNanos = builder.ttl.toNanos();
+        this.negativeTtlNanos = builder.negativeTtl.toNanos();
+        this.maxEntries = builder.maxEntries;
+        this.inFlightTimeoutNanos = builder.inFlightTimeout.toNanos();
+        this.maxLocalPages = builder.maxLocalPages;
+        this.persistence = builder.persistence;
+        this.embeddingModel = builder.embeddingModel;
+        this.localMinScore = builder.localMinScore;
+        this.metrics = builder.metrics != null ? builder.metrics : RagMetrics.global();
+        this.localIndex = embeddingModel != null ? LocalIndex.empty() : null;
+        if (persistence != null && Files.exists(persistence)) {
+            load();
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public WebSearchResults search(WebSearchRequest request) {
+        String key = key(request);
+        Entry entry;
+        boolean created = false;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry == null || entry.isExpired(System.nanoTime())) {
+                entry = new Entry(inFlightTimeoutNanos);
+                entries.put(key, entry);
+                evictOverflow();
+                created = true;
+            }
+        }
+        if (created) {
+            metrics.increment(CACHE_MISSES);
+            // Sur un thread virtuel : l'appelant, comme les autres, n'attend pas au-delà du délai
+            Entry started = entry;
+            executor.execute(() -> run(request, started));
+        } else if (entry.future.isCompletedExceptionally()) {
+            metrics.increment(NEGATIVE_HITS);
+        } else {
+            metrics.increment(CACHE_HITS);
+        }
+        return join(entry.future);
+    }
+
+    /**
+     * Lance la recherche en arrière-plan si elle n'est ni en cache ni en cours.
+     */
+    public void prefetch(WebSearchRequest request) {
+        String key = key(request);
+        Entry entry;
+        synchronized (entries) {
+            Entry existing = entries.get(key);
+            if (existing != null && !existing.isExpired(System.nanoTime())) {
+                return;
+            }
+            entry = new Entry(inFlightTimeoutNanos);
+            entries.put(key, entry);
+            evictOverflow();
+        }
+        metrics.increment(PREFETCHES);
+        executor.execute(() -> run(request, entry));
+    }
+
+    /**
+     * Enveloppe un routeur : la recherche Web de la question démarre avant le routage.
+     * Si le routeur n'interroge pas le Web, le résultat reste en cache pour plus tard.
+     *
+     * Avec un index local, la recherche n'est lancée que si aucune page indexée ne
+     * répond déjà à la question : le retriever Web servirait ces pages sans appel
+     * distant, la recherche anticipée coûterait une requête au quota pour rien. La
+     * vérification se fait en arrière-plan, sans retarder le routage.
+     *
+     * @param maxResults Nombre de résultats demandé par le retriever Web (même clé de cache)
+     */
+    public QueryRouter prefetching(QueryRouter router, int maxResults) {
+        Objects.requireNonNull(router, "Le routeur ne peut pas être null");
+        return query -> {
+            WebSearchRequest request = WebSearchRequest.from(query.text(), maxResults);
+            if (localIndex == null) {
+                prefetch(request);
+            } else {
+                executor.execute(() -> {
+                    if (searchLocal(query, maxResults).isEmpty()) {
+                        prefetch(request);
+                    }
+                });
+            }
+            return router.route(query);
+        };
+    }
+
+    /**
+     * Retriever Web : sert d'abord les pages déjà indexées localement si l'une d'elles
+     * est assez proche de la question, sinon interroge le moteur (avec cache).
+     */
+    public ContentRetriever retriever(int maxResults) {
+        ContentRetriever remote = WebSearchContentRetriever.builder()
+                .webSearchEngine(this)
+                .maxResults(maxResults)
+                .build();
+        if (localIndex == null) {
+            return remote;
+        }
+        return query -> {
+            List<Content> local = searchLocal(query, maxResults);
+            if (!local.isEmpty()) {
+                metrics.increment(LOCAL_HITS);
+                return local;
+            }
+            return remote.retrieve(query);
+        };
+    }
+
+    private List<Content> searchLocal(Query query, int maxResults) {
+        LocalIndex index = localIndex;
+        if (index.pages().isEmpty()) {
+            return List.of();
+        }
+        Embedding question = embeddingModel.embed(query.text()).content();
+        long now = System.nanoTime();
+        List<Content> contents = new ArrayList<>();
+        // Rangs ajoutés après la publication de cet instantané ou pages expirées : écartés
+        for (EmbeddingMatch<TextSegment> match : index.store().search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(question)
+                .maxResults(maxResults)
+                .minScore(localMinScore)
+                .build(), rank -> rank < index.pages().size() && index.pages().get(rank).isLive(now)).matches()) {
+            contents.add(Content.from(match.embedded(), Map.of(ContentMetadata.SCORE, match.score())));
+        }
+        return contents;
+    }
+
+    private void run(WebSearchRequest request, Entry entry) {
+        try {
+            WebSearchResults results = metrics.time(SEARCH, () -> delegate.search(request));
+            long expiresAt = System.nanoTime() + ttlNanos;
+            // Résultat arrivé après le délai : la clé a déjà été relancée, on l'ignore
+            if (entry.complete(results, expiresAt) && localIndex != null) {
+                executor.execute(() -> index(results, expiresAt));
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.FINE, "Recherche Web en échec, mise en cache négative", e);
+            entry.fail(e, System.nanoTime() + negativeTtlNanos);
+        }
+    }
+
+    /**
+     * Indexe les pages absentes de l'index ou expirées (une par URL). La présence est
+     * vérifiée une seconde fois sous le verrou : deux recherches simultanées qui
+     * rapportent la même page ne l'ajoutent qu'une fois.
+     *
+     * @param expiresAt Expiration de la recherche, reprise par chacune de ses pages
+     */
+    private void index(WebSearchResults results, long expiresAt) {
+        List<TextSegment> segments = new ArrayList<>();
+        List<String> urls = new ArrayList<>();
+        long now = System.nanoTime();
+        LocalIndex current = localIndex;
+        for (WebSearchOrganicResult result : results.results()) {
+            String url = result.url().toString();
+            LocalPage indexed = current.byUrl().get(url);
+            if ((indexed == null || !indexed.isLive(now)) && !urls.contains(url)) {
+                urls.add(url);
+                segments.add(result.toTextSegment());
+            }
+        }
+        if (segments.isEmpty()) {
+            return;
+        }
+        List<Embedding> embeddings;
+        try {
+            embeddings = embeddingModel.embedAll(segments).content();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Impossible d'indexer localement les résultats Web", e);
+            return;
+        }
+        synchronized (localLock) {
+            LocalIndex index = localIndex;
+            long indexedAt = System.nanoTime();
+            List<LocalPage> added = new ArrayList<>(segments.size());
+            for (int i = 0; i < segments.size(); i++) {
+                LocalPage indexed = index.byUrl().get(urls.get(i));
+                if (indexed == null || !indexed.isLive(indexedAt)) {
+                    added.add(new LocalPage(urls.get(i), segments.get(i), embeddings.get(i), expiresAt));
+                }
+            }
+            if (added.isEmpty()) {
+                return;
+            }
+            if (index.pages().size() + added.size() > maxLocalPages) {
+                index = rebuild(index, maxLocalPages - added.size(), indexedAt);
+            }
+            List<LocalPage> pages = new ArrayList<>(index.pages());
+            Map<String, LocalPage> byUrl = new HashMap<>(index.byUrl());
+            for (LocalPage page : added) {
+                index.store().add(page.embedding(), page.segment());
+                pages.add(page);
+                byUrl.put(page.url(), page);
+            }
+            localIndex = new LocalIndex(index.store(), List.copyOf(pages), byUrl);
+        }
+    }
+
+    /**
+     * Nouvel index avec les seules pages non expirées, au plus {@code capacity}
+     * (celles qui expirent le plus tard).
+     */
+    private static LocalIndex rebuild(LocalIndex index, int capacity, long now) {
+        List<LocalPage> live = index.pages().stream()
+                .filter(page -> page.isLive(now))
+                .sorted(Comparator.comparingLong((LocalPage page) -> page.expiresAt() - now).reversed())
+                .limit(Math.max(0, capacity))
+                .toList();
+        HnswEmbeddingStore store = HnswEmbeddingStore.builder().build();
+        Map<String, LocalPage> byUrl = new HashMap<>();
+        for (LocalPage page : live) {
+            store.add(page.embedding(), page.segment());
+            byUrl.put(page.url(), page);
+        }
+        LOGGER.fine(() -> "Index Web local reconstruit : " + index.pages().size() + " -> " + live.size() + " pages");
+        return new LocalIndex(store, live, byUrl);
+    }
+
+    private void evictOverflow() {
+        var iterator = entries.values().iterator();
+        while (entries.size() > maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * @return Le nombre de requêtes en cache (y compris en cours et en échec)
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return Le nombre de pages Web indexées localement (expirées comprises, jusqu'à la reconstruction)
+     */
+    public int localSize() {
+        return localIndex == null ? 0 : localIndex.pages().size();
+    }
+
+    private static String key(WebSearchRequest request) {
+        String terms = request.searchTerms().strip().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+        return request.maxResults() + "|" + terms;
+    }
+
+    private static WebSearchResults join(CompletableFuture<WebSearchResults> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Écrit les résultats valides sur disque (fichier temporaire puis remplacement).
+     */
+    public void save() {
+        if (persistence == null) {
+            return;
+        }
+        Map<String, Entry> snapshot;
+        synchronized (entries) {
+            snapshot = new LinkedHashMap<>(entries);
+        }
+        long now = System.nanoTime();
+        long nowMillis = System.currentTimeMillis();
+        try {
+            Path directory = persistence.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path tmp = Files.createTempFile(directory, persistence.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                List<Map.Entry<String, Entry>> valid = snapshot.entrySet().stream()
+                        .filter(e -> e.getValue().isValid(now))
+                        .toList();
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(valid.size());
+                for (Map.Entry<String, Entry> e : valid) {
+                    writeString(out, e.getKey());
+                    out.writeLong(nowMillis + (e.getValue().expiresAt - now) / 1_000_000);
+                    List<WebSearchOrganicResult> results = e.getValue().future.join().results();
+                    out.writeInt(results.size());
+                    for (WebSearchOrganicResult result : results) {
+                        writeString(out, result.title());
+                        writeString(out, result.url().toString());
+                        writeString(out, result.snippet());
+                        writeString(out, result.content());
+                    }
+                }
+            }
+            Files.move(tmp, persistence, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Impossible d'écrire le cache Web " + persistence, e);
+        }
+    }
+
+    private void load() {
+        long now = System.nanoTime();
+        long nowMillis = System.currentTimeMillis();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(persistence)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                LOGGER.warning("Cache Web ignoré (format inconnu) : " + persistence);
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = readString(in);
+                long remainingMillis = in.readLong() - nowMillis;
+                int size = in.readInt();
+                List<WebSearchOrganicResult> results = new ArrayList<>(size);
+                for (int j = 0; j < size; j++) {
+                    results.add(WebSearchOrganicResult.from(readString(in), URI.create(readString(in)),
+                            readString(in), readString(in)));
+                }
+                if (remainingMillis > 0) {
+                    WebSearchResults cached = WebSearchResults.from(WebSearchInformationResult.from((long) size), results);
+                    long expiresAt = now + remainingMillis * 1_000_000;
+                    Entry entry = new Entry(inFlightTimeoutNanos);
+                    entry.complete(cached, expiresAt);
+                    entries.put(key, entry);
+                    if (localIndex != null) {
+                        executor.execute(() -> index(cached, expiresAt));
+                    }
+                }
+            }
+            LOGGER.info("Cache Web relu : " + entries.size() + " requêtes");
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Cache Web illisible, ignoré : " + persistence, e);
+            entries.clear();
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        return length < 0 ? null : new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        save();
+    }
+
+    /**
+     * Recherche en cache : en cours, réussie ou en échec, avec sa date d'expiration.
+     * Une recherche en cours expire à son délai : elle échoue alors pour ceux qui
+     * l'attendent, et la clé peut être relancée.
+     */
+    private static final class Entry {
+        final CompletableFuture<WebSearchResults> future = new CompletableFuture<>();
+        volatile long expiresAt;
+
+        Entry(long inFlightTimeoutNanos) {
+            this.expiresAt = System.nanoTime() + inFlightTimeoutNanos;
+            future.orTimeout(inFlightTimeoutNanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * @return false si la recherche avait déjà expiré (résultat ignoré)
+         */
+        boolean complete(WebSearchResults results, long expiresAt) {
+            if (!future.complete(results)) {
+                return false;
+            }
+            this.expiresAt = expiresAt;
+            return true;
+        }
+
+        void fail(RuntimeException error, long expiresAt) {
+            if (future.completeExceptionally(error)) {
+                this.expiresAt = expiresAt;
+            }
+        }
+
+        boolean isExpired(long now) {
+            return now - expiresAt > 0;
+        }
+
+        boolean isValid(long now) {
+            return future.isDone() && !future.isCompletedExceptionally() && now - expiresAt < 0;
+        }
+    }
+
+    /**
+     * Page Web indexée localement, valable jusqu'à l'expiration de sa recherche.
+     */
+    private record LocalPage(String url, TextSegment segment, Embedding embedding, long expiresAt) {
+
+        boolean isLive(long now) {
+            return now - expiresAt < 0;
+        }
+    }
+
+    /**
+     * @param pages Pages par rang d'insertion dans {@code store}
+     * @param byUrl Dernière page indexée pour chaque URL
+     */
+    private record LocalIndex(HnswEmbeddingStore store, List<LocalPage> pages, Map<String, LocalPage> byUrl) {
+
+        static LocalIndex empty() {
+            return new LocalIndex(HnswEmbeddingStore.builder().build(), List.of(), Map.of());
+        }
+    }
+
+    public static class Builder {
+        private WebSearchEngine delegate;
+        private Duration ttl = Duration.ofHours(1);
+        private Duration negativeTtl = Duration.ofSeconds(30);
+        private Duration inFlightTimeout = Duration.ofSeconds(30);
+        private int maxEntries = 1_000;
+        private int maxLocalPages = 5_000;
+        private Path persistence;
+        private EmbeddingModel embeddingModel;
+        private double localMinScore = 0.85;
+        private RagMetrics metrics;
+
+        public Builder delegate(WebSearchEngine delegate) {
+            this.delegate = delegate;
+            return this;
+        }
+
+        /**
+         * @param ttl Durée de validité d'un résultat
+         */
+        public Builder ttl(Duration ttl) {
+            this.ttl = Objects.requireNonNull(ttl);
+            return this;
+        }
+
+        /**
+         * @param negativeTtl Durée pendant laquelle un échec est renvoyé sans réessayer
+         */
+        public Builder negativeTtl(Duration negativeTtl) {
+            this.negativeTtl = Objects.requireNonNull(negativeTtl);
+            return this;
+        }
+
+        /**
+         * @param inFlightTimeout Délai au-delà duquel une recherche en cours est abandonnée
+         */
+        public Builder inFlightTimeout(Duration inFlightTimeout) {
+            this.inFlightTimeout = Objects.requireNonNull(inFlightTimeout);
+            return this;
+        }
+
+        public Builder maxEntries(int maxEntries) {
+            this.maxEntries = Math.max(1, maxEntries);
+            return this;
+        }
+
+        /**
+         * @param maxLocalPages Pages gardées dans l'index local
+         */
+        public Builder maxLocalPages(int maxLocalPages) {
+            this.maxLocalPages = Math.max(1, maxLocalPages);
+            return this;
+        }
+
+        /**
+         * @param persistence Fichier du cache, relu au démarrage (facultatif)
+         */
+        public Builder persistence(Path persistence) {
+            this.persistence = persistence;
+            return this;
+        }
+
+        /**
+         * @param embeddingModel Modèle servant à indexer localement les pages obtenues (facultatif)
+         */
+        public Builder localIndex(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        /**
+         * @param localMinScore Score minimal d'une page indexée pour répondre sans appel distant
+         */
+        public Builder localMinScore(double localMinScore) {
+            this.localMinScore = localMinScore;
+            return this;
+        }
+
+        public Builder metrics(RagMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        public CachingWebSearchEngine build() {
+            return new CachingWebSearchEngine(this);
+        }
+    }
+}
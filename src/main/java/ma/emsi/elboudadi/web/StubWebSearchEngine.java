@@ -0,0 +1,73 @@
+package ma.emsi.elboudadi.web;
+
+import dev.langchain4j.web.search.WebSearchEngine;
+import dev.langchain4j.web.search.WebSearchInformationResult;
+import dev.langchain4j.web.search.WebSearchOrganicResult;
+import dev.langchain4j.web.search.WebSearchRequest;
+import dev.langchain4j.web.search.WebSearchResults;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Moteur de recherche local, sans réseau : résultats déterministes construits à
+ * partir de la question, latence simulée, panne activable.
+ *
+ * Permet d'exercer {@link CachingWebSearchEngine} (cache, cache négatif, préchargement)
+ * et {@code RagAvecWeb} sans clé Tavily, et de compter les appels réellement reçus.
+ */
+public class StubWebSearchEngine implements WebSearchEngine {
+
+    private final Duration latency;
+    private final AtomicBoolean failing = new AtomicBoolean();
+    private final LongAdder calls = new LongAdder();
+
+    public StubWebSearchEngine(Duration latency) {
+        this.latency = Objects.requireNonNull(latency);
+    }
+
+    @Override
+    public WebSearchResults search(WebSearchRequest request) {
+        calls.increment();
+        try {
+            Thread.sleep(latency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Recherche interrompue", e);
+        }
+        if (failing.get()) {
+            throw new IllegalStateException("Moteur de recherche indisponible (simulé)");
+        }
+        String terms = request.searchTerms();
+        int count = request.maxResults() != null ? request.maxResults() : 3;
+        List<WebSearchOrganicResult> results = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            URI url = URI.create("https://example.org/search?q="
+                    + URLEncoder.encode(terms, StandardCharsets.UTF_8) + "&r=" + i);
+            results.add(WebSearchOrganicResult.from("Résultat " + i + " : " + terms, url,
+                    "Extrait " + i + " à propos de : " + terms, null));
+        }
+        return WebSearchResults.from(WebSearchInformationResult.from((long) count), results);
+    }
+
+    /**
+     * @param failing true pour que les recherches suivantes échouent
+     */
+    public void failing(boolean failing) {
+        this.failing.set(failing);
+    }
+
+    /**
+     * @return Le nombre de recherches reçues
+     */
+    public long calls() {
+        return calls.sum();
+    }
+}